@@ -0,0 +1,252 @@
+package edu.grinnell.csc207.blockchains;
+
+import edu.grinnell.csc207.util.BloomFilter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The balances of the users of a blockchain. Missing users have a balance
+ * of 0 rather than causing an exception, and each update finds the user's
+ * balance once and changes it in place. Balances are longs, and updates
+ * that would overflow throw an ArithmeticException rather than wrapping
+ * around.
+ *
+ * A Bloom filter over the users answers most lookups of users who were
+ * never in the ledger without touching the map.
+ *
+ * @author Mitch Paiva
+ */
+public class BalanceLedger {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of users the filter starts out sized for.
+   */
+  static final int FILTER_CAPACITY = 1024;
+
+  /**
+   * The chance that the filter lets an unknown user through to the map.
+   */
+  static final double FILTER_FALSE_POSITIVES = 0.01;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The users, in the order they first appeared.
+   */
+  ArrayList<String> users;
+
+  /**
+   * The balance of each user, in a one-element array so that it can be
+   * changed without another lookup.
+   */
+  HashMap<String, long[]> balances;
+
+  /**
+   * The users, for quickly rejecting the rest.
+   */
+  BloomFilter known;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty ledger.
+   */
+  public BalanceLedger() {
+    this.users = new ArrayList<String>();
+    this.balances = new HashMap<String, long[]>();
+    this.known = new BloomFilter(FILTER_CAPACITY, FILTER_FALSE_POSITIVES);
+  } // BalanceLedger()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the cell holding a user's balance.
+   *
+   * @param user the user.
+   * @return the cell, or null if the user is not in the ledger.
+   */
+  long[] cell(String user) {
+    return this.known.mightContain(user) ? this.balances.get(user) : null;
+  } // cell(String)
+
+  /**
+   * Get the cell holding a user's balance, adding the user if needed.
+   *
+   * @param user the user.
+   * @return the cell.
+   */
+  long[] cellFor(String user) {
+    long[] cell = cell(user);
+    if (cell == null) {
+      cell = new long[1];
+      this.balances.put(user, cell);
+      this.users.add(user);
+      remember(user);
+    } // if
+    return cell;
+  } // cellFor(String)
+
+  /**
+   * Add a new user to the filter, resizing it if it is full.
+   *
+   * @param user the user.
+   */
+  void remember(String user) {
+    if (!this.known.isFull()) {
+      this.known.add(user);
+      return;
+    } // if
+    this.known = new BloomFilter(2 * this.users.size(), FILTER_FALSE_POSITIVES);
+    for (String name : this.users) {
+      this.known.add(name);
+    } // for
+  } // remember(String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine whether a user is in the ledger.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return true if they are and false otherwise.
+   */
+  public boolean contains(String user) {
+    return cell(user) != null;
+  } // contains(String)
+
+  /**
+   * Get a user's balance.
+   *
+   * @param user
+   *   The user.
+   * @param otherwise
+   *   What to return if the user is not in the ledger.
+   *
+   * @return the balance, or otherwise.
+   */
+  public long getOrDefault(String user, long otherwise) {
+    long[] cell = cell(user);
+    return (cell == null) ? otherwise : cell[0];
+  } // getOrDefault(String, long)
+
+  /**
+   * Get a user's balance.
+   *
+   * @param user
+   *   The user.
+   *
+   * @return the balance, or 0 if the user is not in the ledger.
+   */
+  public long get(String user) {
+    return getOrDefault(user, 0);
+  } // get(String)
+
+  /**
+   * Set a user's balance, adding the user if needed.
+   *
+   * @param user
+   *   The user.
+   * @param balance
+   *   The new balance.
+   */
+  public void set(String user, long balance) {
+    cellFor(user)[0] = balance;
+  } // set(String, long)
+
+  /**
+   * Add to a user's balance, adding the user if needed.
+   *
+   * @param user
+   *   The user.
+   * @param amount
+   *   The amount to add (negative to take away).
+   *
+   * @throws ArithmeticException
+   *   If the balance would overflow.
+   */
+  public void addTo(String user, long amount) {
+    long[] cell = cellFor(user);
+    cell[0] = Math.addExact(cell[0], amount);
+  } // addTo(String, long)
+
+  /**
+   * Add to a user's balance, but only if the user is in the ledger.
+   *
+   * @param user
+   *   The user.
+   * @param amount
+   *   The amount to add (negative to take away).
+   *
+   * @return true if the user was in the ledger and false otherwise.
+   *
+   * @throws ArithmeticException
+   *   If the balance would overflow.
+   */
+  public boolean addIfPresent(String user, long amount) {
+    long[] cell = cell(user);
+    if (cell == null) {
+      return false;
+    } // if
+    cell[0] = Math.addExact(cell[0], amount);
+    return true;
+  } // addIfPresent(String, long)
+
+  /**
+   * Apply the net changes of a batch of transactions, touching each
+   * balance once however many transactions it was in. Nothing changes
+   * unless every balance can be updated.
+   *
+   * @param newUsers
+   *   The users first seen in the batch, in the order they were seen.
+   * @param deltas
+   *   The net change to each user's balance.
+   *
+   * @throws ArithmeticException
+   *   If a balance would overflow.
+   */
+  public void applyAll(List<String> newUsers, Map<String, long[]> deltas) {
+    for (Map.Entry<String, long[]> delta : deltas.entrySet()) {
+      // Only check for now, so that an overflow leaves the ledger alone.
+      Math.addExact(getOrDefault(delta.getKey(), 0), delta.getValue()[0]);
+    } // for
+    for (String user : newUsers) {
+      cellFor(user);
+    } // for
+    for (Map.Entry<String, long[]> delta : deltas.entrySet()) {
+      cellFor(delta.getKey())[0] += delta.getValue()[0];
+    } // for
+  } // applyAll(List<String>, Map<String, long[]>)
+
+  /**
+   * Get the users, in the order they first appeared.
+   *
+   * @return the users. The list should not be changed.
+   */
+  public List<String> users() {
+    return this.users;
+  } // users()
+
+  /**
+   * Determine how many users are in the ledger.
+   *
+   * @return the number of users.
+   */
+  public int size() {
+    return this.users.size();
+  } // size()
+} // class BalanceLedger
@@ -1,8 +1,10 @@
 package edu.grinnell.csc207.blockchains;
 
+import edu.grinnell.csc207.metrics.Metrics;
+import edu.grinnell.csc207.metrics.MineEvent;
 import java.nio.ByteBuffer;
 import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.util.function.BooleanSupplier;
 
 /**
  * Blocks to be stored in blockchains.
@@ -46,9 +48,9 @@ public class Block {
   HashValidator validator;
 
   /**
-   * Pointer to the next block in the blockchain.
+   * How the block is hashed.
    */
-  Block next;
+  DigestProvider digests;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -70,12 +72,34 @@ public class Block {
    */
   public Block(int num, Transaction transaction, Hash prevHash,
       HashValidator check) {
+    this(num, transaction, prevHash, check, DigestProviders.SHA256);
+  } // Block(int, Transaction, Hash, HashValidator)
+
+  /**
+   * Create a new block from the specified block number, transaction, and
+   * previous hash, mining with a particular hash to choose a nonce that
+   * meets the requirements of the validator.
+   *
+   * @param num
+   *   The number of the block.
+   * @param transaction
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param check
+   *   The validator used to check the block.
+   * @param digests
+   *   How to hash the block.
+   */
+  public Block(int num, Transaction transaction, Hash prevHash,
+      HashValidator check, DigestProvider digests) {
     this.blockNum = num;
     this.transaction = transaction;
     this.prevBlockHash = prevHash;
     this.validator = check;
+    this.digests = digests;
     mine();
-  } // Block(int, Transaction, Hash, HashValidator)
+  } // Block(int, Transaction, Hash, HashValidator, DigestProvider)
 
   /**
    * Create a new block, computing the hash for the block.
@@ -90,62 +114,231 @@ public class Block {
    *   The nonce of the block.
    */
   public Block(int num, Transaction transaction, Hash prevHash, long nonce) {
+    this(num, transaction, prevHash, nonce, DigestProviders.SHA256);
+  } // Block(int, Transaction, Hash, long)
+
+  /**
+   * Create a new block, computing the hash for the block with a particular
+   * hash.
+   *
+   * @param num
+   *   The number of the block.
+   * @param transaction
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param nonce
+   *   The nonce of the block.
+   * @param digests
+   *   How to hash the block.
+   */
+  public Block(int num, Transaction transaction, Hash prevHash, long nonce,
+      DigestProvider digests) {
     this.blockNum = num;
     this.transaction = transaction;
     this.prevBlockHash = prevHash;
     this.nonce = nonce;
-    try {
-      this.blockHash = computeHash();
-    } catch (NoSuchAlgorithmException e) {
-      // Does Nothing
-    } // try/catch
-  } // Block(int, Transaction, Hash, long)
+    this.digests = digests;
+    this.blockHash = computeHash();
+  } // Block(int, Transaction, Hash, long, DigestProvider)
+
+  /**
+   * Create a block whose hash is already known, such as one read back from
+   * storage. The hash is not recomputed, so it should be checked (e.g., by
+   * appending the block to a chain) before the block is trusted.
+   *
+   * @param num
+   *   The number of the block.
+   * @param transaction
+   *   The transaction for the block.
+   * @param prevHash
+   *   The hash of the previous block.
+   * @param nonce
+   *   The nonce of the block.
+   * @param hash
+   *   The hash of the block.
+   */
+  Block(int num, Transaction transaction, Hash prevHash, long nonce, Hash hash) {
+    this.blockNum = num;
+    this.transaction = transaction;
+    this.prevBlockHash = prevHash;
+    this.nonce = nonce;
+    this.blockHash = hash;
+    this.digests = DigestProviders.SHA256;
+  } // Block(int, Transaction, Hash, long, Hash)
 
   /**
    * Looks for a valid nonce given the hashValidator check. Sets the block nonce
    * and the block hash to the values that pass the check.
    */
   public void mine() {
-    for (long tempNonce = 0; tempNonce < Long.MAX_VALUE; tempNonce++) {
-      try {
+    MineEvent event = new MineEvent();
+    event.begin();
+    boolean timed = Metrics.on();
+    long start = timed ? System.nanoTime() : 0;
+    MessageDigest prefix = headerDigest(this.digests, this.blockNum, this.transaction);
+    if (this.prevBlockHash != null) {
+      prefix.update(this.prevBlockHash.getBytes());
+    } // if
+    byte[] nonceBytes = new byte[Long.BYTES];
+    long tempNonce;
+    for (tempNonce = 0; tempNonce < Long.MAX_VALUE; tempNonce++) {
+      Hash temp = finishHash(this.digests, prefix, tempNonce, nonceBytes);
+      if (validator.isValid(temp)) {
         this.nonce = tempNonce;
-        Hash temp = computeHash();
-        if (validator.isValid(temp)) {
-          this.blockHash = temp;
-          break;
-        } // if
-        this.nonce = 0;
-      } catch (NoSuchAlgorithmException e) {
-        // Does Nothing
-      } // try/catch
+        this.blockHash = temp;
+        break;
+      } // if
     } // for
+    if (timed) {
+      Metrics.HASHES.add(tempNonce + 1);
+      Metrics.ATTEMPTS.record(tempNonce + 1);
+      Metrics.MINE_TIME.record(System.nanoTime() - start);
+    } // if
+    if (event.shouldCommit()) {
+      event.blockNum = this.blockNum;
+      event.attempts = tempNonce + 1;
+      event.nonce = this.nonce;
+      event.commit();
+    } // if
   } // mine()
 
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Search a range of nonces for one that gives a block a valid hash, so
+   * that the search for a block can be shared out in ranges.
+   *
+   * @param digests
+   *   How to hash the block.
+   * @param num
+   *   The number of the block.
+   * @param transaction
+   *   The transaction in the block.
+   * @param prevHash
+   *   The hash of the block before it.
+   * @param check
+   *   The validator the hash must pass.
+   * @param from
+   *   The first nonce to try.
+   * @param to
+   *   One past the last nonce to try.
+   * @param stop
+   *   Checked now and then; the search gives up once it returns true.
+   *
+   * @return the first valid nonce in the range, or -1 if there is none
+   *   or the search gave up.
+   */
+  public static long searchNonces(DigestProvider digests, int num, Transaction transaction,
+      Hash prevHash, HashValidator check, long from, long to, BooleanSupplier stop) {
+    MessageDigest prefix = headerDigest(digests, num, transaction);
+    prefix.update(prevHash.getBytes());
+    byte[] scratch = new byte[Long.BYTES];
+    for (long nonce = from; nonce < to; nonce++) {
+      if ((nonce & 0xFFF) == 0 && stop.getAsBoolean()) {
+        return -1;
+      } // if
+      if (check.isValid(finishHash(digests, prefix, nonce, scratch))) {
+        return nonce;
+      } // if
+    } // for
+    return -1;
+  } // searchNonces(DigestProvider, int, Transaction, Hash, HashValidator, long, long, ...)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
 
+  /**
+   * Fill in the header fields of a block (its number and transaction) in a
+   * digest. The sequence number of the transaction is only hashed when it
+   * is set, so blocks without one keep the hashes they always had.
+   *
+   * @param md the digest.
+   * @param num the number of the block.
+   * @param transaction the transaction in the block.
+   */
+  static void updateHeader(MessageDigest md, int num, Transaction transaction) {
+    md.update(ByteBuffer.allocate(Integer.BYTES).putInt(num).array());
+    md.update(transaction.sourceBytes());
+    md.update(transaction.targetBytes());
+    md.update(ByteBuffer.allocate(Integer.BYTES).putInt(transaction.getAmount()).array());
+    if (transaction.getSeq() != 0) {
+      md.update(ByteBuffer.allocate(Long.BYTES).putLong(transaction.getSeq()).array());
+    } // if
+  } // updateHeader(MessageDigest, int, Transaction)
+
+  /**
+   * Start the hash of a block: a digest that has seen the block number and
+   * the transaction, but not yet the previous hash or the nonce. Since it
+   * does not depend on the previous block, it can be prepared before that
+   * block has been mined.
+   *
+   * @param digests how to hash the block.
+   * @param num the number of the block.
+   * @param transaction the transaction in the block.
+   * @return the partly-updated digest, which belongs to the caller.
+   */
+  static MessageDigest headerDigest(DigestProvider digests, int num, Transaction transaction) {
+    MessageDigest md = digests.newDigest();
+    updateHeader(md, num, transaction);
+    return md;
+  } // headerDigest(DigestProvider, int, Transaction)
+
+  /**
+   * Finish the hash of a block whose other fields are already in a digest.
+   * The digest itself is left unchanged, so it can be reused for the next
+   * nonce.
+   *
+   * @param digests how to hash the block.
+   * @param prefix the digest of everything but the nonce.
+   * @param nonce the nonce.
+   * @param scratch eight bytes to hold the nonce.
+   * @return the hash of the block.
+   */
+  static Hash finishHash(DigestProvider digests, MessageDigest prefix, long nonce,
+      byte[] scratch) {
+    MessageDigest md;
+    try {
+      md = (MessageDigest) prefix.clone();
+    } catch (CloneNotSupportedException e) {
+      throw new IllegalStateException("Digests must be cloneable to mine.", e);
+    } // try/catch
+    for (int i = Long.BYTES - 1; i >= 0; i--) {
+      scratch[i] = (byte) nonce;
+      nonce >>>= Byte.SIZE;
+    } // for
+    md.update(scratch);
+    return Hash.wrap(digests.finish(md));
+  } // finishHash(DigestProvider, MessageDigest, long, byte[])
+
   /**
    * Compute the hash of the block given all the other info already
    * stored in the block.
    * @return the computed hash.
    */
-  Hash computeHash() throws NoSuchAlgorithmException {
-    byte[] blockNumBytes = ByteBuffer.allocate(Integer.BYTES).putInt(this.blockNum).array();
-    byte[] amountBytes = ByteBuffer.allocate(Integer.BYTES).putInt(
-        this.transaction.getAmount()).array();
-    MessageDigest md = MessageDigest.getInstance("sha-256");
-    md.update(blockNumBytes);
-    md.update(this.transaction.getSource().getBytes());
-    md.update(this.transaction.getTarget().getBytes());
-    md.update(amountBytes);
+  Hash computeHash() {
+    return computeHash(this.digests);
+  } // computeHash()
+
+  /**
+   * Compute the hash of the block with a particular hash, given all the
+   * other info already stored in the block.
+   * @param with how to hash the block.
+   * @return the computed hash.
+   */
+  Hash computeHash(DigestProvider with) {
+    MessageDigest md = with.threadDigest();
+    updateHeader(md, this.blockNum, this.transaction);
     if (prevBlockHash != null) {
       md.update(this.prevBlockHash.getBytes());
     } // if
     byte[] nonceBytes = ByteBuffer.allocate(Long.BYTES).putLong(this.getNonce()).array();
     md.update(nonceBytes);
-    return new Hash(md.digest());
-  } // computeHash()
+    return Hash.wrap(with.finish(md));
+  } // computeHash(DigestProvider)
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -0,0 +1,285 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A directory of compressed segments holding the blocks pruned from a
+ * chain. Each segment is a run of at most a fixed number of consecutive
+ * blocks encoded as a BlockSegment, and is named for the number of its
+ * first block, so reading any one block decodes a bounded amount. When the
+ * archive is opened, only the headers of the segments are read, to index
+ * them by their first block and number of blocks; a segment is only
+ * decompressed when one of its blocks is asked for, and the last one
+ * decompressed is kept in memory.
+ *
+ * @author Mitch Paiva
+ */
+public class BlockArchive {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The start of the name of each segment.
+   */
+  static final String PREFIX = "segment-";
+
+  /**
+   * The end of the name of each segment.
+   */
+  static final String SUFFIX = ".seg";
+
+  /**
+   * The most blocks in a segment, by default.
+   */
+  public static final int DEFAULT_SEGMENT_BLOCKS = 4096;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where the segments go.
+   */
+  Path dir;
+
+  /**
+   * The most blocks in a segment.
+   */
+  int segmentBlocks;
+
+  /**
+   * The segments, by the number of their first block.
+   */
+  TreeMap<Integer, Path> segments;
+
+  /**
+   * The number of blocks in each segment, by the number of its first block.
+   */
+  HashMap<Integer, Integer> counts;
+
+  /**
+   * The number of the first block of the segment in memory, or -1.
+   */
+  int cachedFirst;
+
+  /**
+   * The blocks of the segment in memory.
+   */
+  List<Block> cached;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open an archive with the default segment size, finding the segments
+   * already in it.
+   *
+   * @param dir
+   *   Where the segments go. It is created if needed.
+   *
+   * @throws IOException
+   *   If the directory cannot be created or read.
+   */
+  public BlockArchive(Path dir) throws IOException {
+    this(dir, DEFAULT_SEGMENT_BLOCKS);
+  } // BlockArchive(Path)
+
+  /**
+   * Open an archive, finding the segments already in it.
+   *
+   * @param dir
+   *   Where the segments go. It is created if needed.
+   * @param perSegment
+   *   The most blocks to write in a segment.
+   *
+   * @throws IOException
+   *   If the directory cannot be created or read.
+   * @throws IllegalArgumentException
+   *   If segments could not hold a block.
+   */
+  public BlockArchive(Path dir, int perSegment) throws IOException {
+    if (perSegment < 1) {
+      throw new IllegalArgumentException("Segments must hold a block.");
+    } // if
+    this.dir = Files.createDirectories(dir);
+    this.segmentBlocks = perSegment;
+    this.segments = new TreeMap<Integer, Path>();
+    this.counts = new HashMap<Integer, Integer>();
+    this.cachedFirst = -1;
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+      for (Path entry : entries) {
+        int[] header = readHeader(entry);
+        this.segments.put(header[0], entry);
+        this.counts.put(header[0], header[1]);
+      } // for
+    } // try
+  } // BlockArchive(Path, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the name of the segment starting at a block.
+   *
+   * @param first the number of the first block.
+   * @return the file name.
+   */
+  static String fileName(int first) {
+    return String.format("%s%010d%s", PREFIX, first, SUFFIX);
+  } // fileName(int)
+
+  /**
+   * Read the header of a segment.
+   *
+   * @param file the segment.
+   * @return the number of its first block and its number of blocks.
+   * @throws IOException if it cannot be read or is not a segment.
+   */
+  static int[] readHeader(Path file) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(BlockSegment.HEADER_SIZE);
+    try (FileChannel channel = FileChannel.open(file)) {
+      while (header.hasRemaining() && channel.read(header) >= 0) {
+        // Keep reading.
+      } // while
+    } // try
+    try {
+      return BlockSegment.readHeader(header.flip());
+    } catch (IllegalArgumentException e) {
+      throw new IOException("The segment " + file.getFileName() + " is corrupt.");
+    } // try/catch
+  } // readHeader(Path)
+
+  /**
+   * Read a segment.
+   *
+   * @param file the segment.
+   * @return its blocks.
+   * @throws IOException if it cannot be read or is corrupt.
+   */
+  static List<Block> readSegment(Path file) throws IOException {
+    try {
+      return BlockSegment.decode(Files.readAllBytes(file));
+    } catch (IllegalArgumentException e) {
+      throw new IOException("The segment " + file.getFileName() + " is corrupt.");
+    } // try/catch
+  } // readSegment(Path)
+
+  /**
+   * Write a run of consecutive blocks as one new segment. The segment is
+   * written under another name and moved into place once it is complete.
+   *
+   * @param blocks
+   *   The blocks, in order. There must be at least one.
+   *
+   * @throws IOException
+   *   If the segment cannot be written.
+   */
+  synchronized void writeSegment(List<Block> blocks) throws IOException {
+    int first = blocks.get(0).getNum();
+    Path file = dir.resolve(fileName(first));
+    Path temp = dir.resolve(fileName(first) + ".tmp");
+    Files.write(temp, BlockSegment.encode(blocks));
+    try {
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    } // try/catch
+    segments.put(first, file);
+    counts.put(first, blocks.size());
+    if (first == cachedFirst) {
+      cachedFirst = -1;
+    } // if
+  } // writeSegment(List<Block>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Write a run of consecutive blocks as new segments, each holding at
+   * most the archive's segment size.
+   *
+   * @param blocks
+   *   The blocks, in order.
+   *
+   * @throws IOException
+   *   If a segment cannot be written, in which case the segments before it
+   *   stay written.
+   */
+  public synchronized void write(List<Block> blocks) throws IOException {
+    for (int from = 0; from < blocks.size(); from += segmentBlocks) {
+      writeSegment(blocks.subList(from, Math.min(blocks.size(), from + segmentBlocks)));
+    } // for
+  } // write(List<Block>)
+
+  /**
+   * Get an archived block.
+   *
+   * @param num
+   *   The number of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If the block is not in the archive.
+   * @throws UncheckedIOException
+   *   If its segment cannot be read.
+   */
+  public synchronized Block get(int num) {
+    Map.Entry<Integer, Path> segment = segments.floorEntry(num);
+    if (segment == null || num >= segment.getKey() + counts.get(segment.getKey())) {
+      throw new IndexOutOfBoundsException(num);
+    } // if
+    if (segment.getKey() != cachedFirst) {
+      try {
+        cached = readSegment(segment.getValue());
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      } // try/catch
+      cachedFirst = segment.getKey();
+    } // if
+    return cached.get(num - cachedFirst);
+  } // get(int)
+
+  /**
+   * Get the number of segments in the archive.
+   *
+   * @return the number of segments.
+   */
+  public synchronized int segments() {
+    return segments.size();
+  } // segments()
+
+  /**
+   * Read every block in the archive, in order.
+   *
+   * @return the blocks.
+   *
+   * @throws IOException
+   *   If a segment cannot be read.
+   */
+  public synchronized ArrayList<Block> readAll() throws IOException {
+    ArrayList<Block> blocks = new ArrayList<Block>();
+    for (Path file : segments.values()) {
+      blocks.addAll(readSegment(file));
+    } // for
+    return blocks;
+  } // readAll()
+} // class BlockArchive
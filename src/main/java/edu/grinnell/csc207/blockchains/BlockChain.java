@@ -1,12 +1,22 @@
 package edu.grinnell.csc207.blockchains;
 
-import java.security.NoSuchAlgorithmException;
-import edu.grinnell.csc207.util.AssociativeArray;
-import edu.grinnell.csc207.util.KeyNotFoundException;
-import edu.grinnell.csc207.util.NullKeyException;
+import edu.grinnell.csc207.metrics.AppendEvent;
+import edu.grinnell.csc207.metrics.BalanceUpdateEvent;
+import edu.grinnell.csc207.metrics.Metrics;
+import edu.grinnell.csc207.metrics.RemoveEvent;
+import edu.grinnell.csc207.metrics.VerifyEvent;
+import edu.grinnell.csc207.util.BloomFilter;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * A full blockchain.
@@ -15,19 +25,29 @@ import java.util.Iterator;
  * @author Mitch Paiva
  */
 public class BlockChain implements Iterable<Transaction> {
-  // +--------+------------------------------------------------------
-  // | Fields |
-  // +--------+
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
 
   /**
-   * The first block in the blockchain.
+   * The number of transactions the filter starts out sized for.
    */
-  Block firstBlock;
+  static final int FILTER_CAPACITY = 1024;
 
   /**
-   * The last block in the blockchain.
+   * The chance that the filter lets an unknown transaction through to the
+   * blocks.
    */
-  Block lastBlock;
+  static final double FILTER_FALSE_POSITIVES = 0.01;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks in the blockchain, indexed by block number.
+   */
+  BlockStore store;
 
   // HashValidator simpleValidator;
 
@@ -41,26 +61,55 @@ public class BlockChain implements Iterable<Transaction> {
   HashValidator validator;
 
   /**
-   * Stores all the usernames being used in a blockchain.
+   * How the blocks are hashed.
    */
-  ArrayList<String> userNames;
+  DigestProvider digests;
 
   /**
-   * Stores all the transactions made in the blockchain.
+   * Stores the users of the blockchain, in the order they first appeared,
+   * with the available balance of each.
    */
-  ArrayList<Transaction> allTransactions;
+  BalanceLedger balances;
 
   /**
-   * Stores the number of blocks in the blockchain, inclduing the first block
-   * created in the constructor.
+   * The blocks whose hashes are known to match their contents.
    */
-  int numBlocks;
+  ValidationCache verified;
 
   /**
-   * Stores the balances of each user in the blockchain in key, value pairs.
-   * The key is the user's name and the value is the available balance.
+   * Where appended blocks are persisted, or null if they are not.
    */
-  AssociativeArray<String, Integer> userBalances;
+  BlockJournal journal;
+
+  /**
+   * The balances before the first block whose body is kept, or null if
+   * the chain has not been pruned.
+   */
+  Checkpoint base;
+
+  /**
+   * The fingerprints of the transactions in the chain, for quickly
+   * rejecting the rest.
+   */
+  BloomFilter known;
+
+  /**
+   * Whether the filter needs to be rebuilt before it is used, because
+   * blocks were removed or it is full.
+   */
+  boolean knownStale;
+
+  /**
+   * The block number of each transaction in the chain, by id, or null if
+   * replays are allowed.
+   */
+  HashMap<Hash, Integer> seen;
+
+  /**
+   * The indices for range and aggregate queries, or null if no one has
+   * asked for them yet.
+   */
+  ChainIndex queries;
 
   // +--------------+------------------------------------------------
   // | Constructors |
@@ -73,62 +122,97 @@ public class BlockChain implements Iterable<Transaction> {
    *   The validator used to check elements.
    */
   public BlockChain(HashValidator check) {
-    this.firstBlock = new Block(0, new Transaction("", "", 0),
-        new Hash(new byte[] {}), check);
-    this.userNames = new ArrayList<String>();
-    allTransactions = new ArrayList<Transaction>();
-    userBalances = new AssociativeArray<String, Integer>();
-    numBlocks = 1;
-    firstBlock.next = null;
-    this.lastBlock = firstBlock;
-    this.validator = check;
+    this(check, new ListBlockStore());
   } // BlockChain(HashValidator)
 
+  /**
+   * Create a new blockchain that keeps its blocks in a particular store.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param blocks
+   *   The empty store to keep the blocks in.
+   */
+  public BlockChain(HashValidator check, BlockStore blocks) {
+    this(check, blocks, DigestProviders.SHA256);
+  } // BlockChain(HashValidator, BlockStore)
+
+  /**
+   * Create a new blockchain that keeps its blocks in a particular store
+   * and hashes them in a particular way.
+   *
+   * @param check
+   *   The validator used to check elements.
+   * @param blocks
+   *   The empty store to keep the blocks in.
+   * @param hashing
+   *   How to hash the blocks.
+   */
+  public BlockChain(HashValidator check, BlockStore blocks, DigestProvider hashing) {
+    this.digests = hashing;
+    this.store = blocks;
+    this.store.add(new Block(0, new Transaction("", "", 0), new Hash(new byte[] {}), check,
+        hashing));
+    this.balances = new BalanceLedger();
+    this.validator = check;
+    this.verified = new ValidationCache();
+    this.known = new BloomFilter(FILTER_CAPACITY, FILTER_FALSE_POSITIVES);
+  } // BlockChain(HashValidator, BlockStore, DigestProvider)
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
 
   /**
    * Checks if a given transaction is valid based on available users and
-   * user balances.
+   * user balances (and, with replay protection, that it is not already in
+   * the chain).
    * @param transaction the transaction to be checked.
    * @return true if the transaction is valid, false if not.
    */
   public boolean validTransaction(Transaction transaction) {
+    return !isReplay(transaction) && validTransaction(this.balances, transaction);
+  } // validTransaction(Transaction)
+
+  /**
+   * Checks if a transaction is valid given a set of balances: the amount
+   * must not be negative and, unless the transaction is a deposit, the
+   * source must be in the system and have at least the amount.
+   * @param ledger the balances before the transaction.
+   * @param transaction the transaction to be checked.
+   * @return true if the transaction is valid, false if not.
+   */
+  static boolean validTransaction(BalanceLedger ledger, Transaction transaction) {
     if (transaction.getAmount() < 0) {
       return false;
     } else if (transaction.getSource().equals("")) {
       return true;
-    } else if (!userNames.contains(transaction.getSource())) {
-      return false;
-    } else if ((balance(transaction.getSource()) + transaction.getAmount())
-        < transaction.getAmount()) {
-      return false;
     } // if
-    return true;
-  } // validTransaction(Transaction)
+    // A source that is not in the system fails like a negative balance.
+    return ledger.getOrDefault(transaction.getSource(), -1) >= transaction.getAmount();
+  } // validTransaction(BalanceLedger, Transaction)
 
   /**
    * Checks if a hash contains the correct bytes according to the data in its block.
    * Creates a correct hash value for the block and checks if it is equal to the
-   * block's actual Hash.
+   * block's actual Hash. Blocks that have passed before, and have not
+   * changed since, are not hashed again.
    * @param blk The block containing the hash to be checked.
    * @return true if the hash contains the correct contents, false if not.
    */
   public boolean validHashContents(Block blk) {
-    try {
-      Hash correctHash = blk.computeHash();
-      if (!blk.getHash().equals(correctHash)) {
-        return false;
-      } // if
-    } catch (NoSuchAlgorithmException e) {
-      // Does nothing
-    } // try/catch
+    if (verified.contains(blk)) {
+      return true;
+    } // if
+    if (!blk.getHash().equals(blk.computeHash(this.digests))) {
+      return false;
+    } // if
+    verified.add(blk);
     return true;
   } // validHashContents(Block)
 
   /**
-   * Updates the user balances associative array based on the values in the
+   * Updates the user balances in the ledger based on the values in the
    * given transaction. Changes the source and target's user balances based
    * on the order of the transactions in the blockchain and the amount of
    * the transaction.
@@ -136,71 +220,141 @@ public class BlockChain implements Iterable<Transaction> {
    * based upon.
    */
   public void updateUserBalances(Transaction transaction) {
-    if (transaction.getSource().equals("")) {
-      if (!userNames.contains(transaction.getTarget())) {
-        userNames.add(transaction.getTarget());
-        try {
-          userBalances.set(transaction.getTarget(), transaction.getAmount());
-        } catch (NullKeyException e) {
-          // Does nothing.
-        } // try/catch
-      } else {
-        try {
-          int updatedBalance = userBalances.get(transaction.getTarget())
-              + transaction.getAmount();
-          userBalances.set(transaction.getTarget(), updatedBalance);
-        } catch (Exception e) {
-          // Does nothing.
-        } // try/catch
-      } // if
-    } else {
-      if (!userNames.contains(transaction.getTarget())) {
-        userNames.add(transaction.getTarget());
-        try {
-          userBalances.set(transaction.getTarget(), transaction.getAmount());
-          int updatedSourceBalance = userBalances.get(transaction.getSource())
-              - transaction.getAmount();
-          userBalances.set(transaction.getSource(), updatedSourceBalance);
-        } catch (Exception e) {
-          // Does nothing.
-        } //
-      } else {
-        try {
-          int updatedSourceBalance = userBalances.get(transaction.getSource())
-              - transaction.getAmount();
-          userBalances.set(transaction.getSource(), updatedSourceBalance);
-          int updatedTargetBalance = userBalances.get(transaction.getTarget())
-              + transaction.getAmount();
-          userBalances.set(transaction.getTarget(), updatedTargetBalance);
-        } catch (Exception e) {
-          // Does Nothing.
-        } // try/catch
-      } // if
+    BalanceUpdateEvent event = new BalanceUpdateEvent();
+    event.begin();
+    applyTransaction(this.balances, transaction);
+    if (event.shouldCommit()) {
+      event.transactions = 1;
+      event.accounts = transaction.getSource().equals("") ? 1 : 2;
+      event.commit();
     } // if
   } // updateUserBalances(Transaction)
 
+  /**
+   * Make sure a transaction can be applied to a set of balances without
+   * overflowing any of them. The balances are not changed.
+   * @param ledger the balances.
+   * @param transaction the transaction.
+   * @throws ArithmeticException if a balance would overflow.
+   */
+  static void checkTransaction(BalanceLedger ledger, Transaction transaction) {
+    String source = transaction.getSource();
+    long amount = transaction.getAmount();
+    if (!source.equals("") && ledger.contains(source)) {
+      Math.addExact(ledger.get(source), -amount);
+    } // if
+    Math.addExact(ledger.get(transaction.getTarget()), amount);
+  } // checkTransaction(BalanceLedger, Transaction)
+
+  /**
+   * Apply one transaction to a set of balances. A transfer from a source
+   * that is not in the system changes nothing, except that a new target
+   * is still credited. Either the whole transaction is applied or, if a
+   * balance would overflow, none of it.
+   * @param ledger the balances to update.
+   * @param transaction the transaction.
+   * @throws ArithmeticException if a balance would overflow.
+   */
+  static void applyTransaction(BalanceLedger ledger, Transaction transaction) {
+    checkTransaction(ledger, transaction);
+    String source = transaction.getSource();
+    String target = transaction.getTarget();
+    int amount = transaction.getAmount();
+    if (source.equals("")) {
+      ledger.addTo(target, amount);
+    } else if (ledger.addIfPresent(source, -amount)) {
+      ledger.addTo(target, amount);
+    } else if (!ledger.contains(target)) {
+      ledger.addTo(target, amount);
+    } // if
+  } // applyTransaction(BalanceLedger, Transaction)
+
   /**
    * Helper method used in finding the previous block of a given block.
-   * Returns the block with the given blockNum by iterating through the blockchain
-   * and finding the block with the given blockNum.
+   * Returns the block with the given blockNum by looking it up in the store.
    * @param blockNum the number of the block.
-   * @return the block with the given blockNum.
+   * @return the block with the given blockNum, or null if there is none.
    */
   public Block getBlock(int blockNum) {
-    Iterator<Block> iterator = this.blocks();
-    if (firstBlock.blockNum == blockNum) {
-      return firstBlock;
+    if (blockNum < 0 || blockNum >= store.size()) {
+      return null;
     } // if
-    Block block = null;
-    while (iterator.hasNext()) {
-      Block next = iterator.next();
-      if (next.blockNum == blockNum) {
-        block = next;
+    return store.get(blockNum);
+  } // getBlock(int)
+
+  /**
+   * Find the first block in a batch that could not be appended after the
+   * blocks before it. The prevHash links (and, with replay protection, the
+   * transactions seen so far) are checked in order, since each depends on
+   * the blocks before it, while the hashes themselves are checked in
+   * parallel.
+   *
+   * @param blks the batch of blocks, in the order they would be appended.
+   * @return the index of the first bad block, or -1 if every block is fine.
+   */
+  int firstInvalid(List<Block> blks) {
+    int firstBadLink = -1;
+    Hash prevHash = getHash();
+    HashSet<Hash> batch = (seen == null) ? null : new HashSet<Hash>();
+    for (int i = 0; i < blks.size(); i++) {
+      Transaction transaction = blks.get(i).getTransaction();
+      if (!blks.get(i).getPrevHash().equals(prevHash)
+          || (batch != null && (isReplay(transaction) || !batch.add(transaction.id())))) {
+        firstBadLink = i;
         break;
       } // if
-    } // while
-    return block;
-  } // getPreviousBlock(int)
+      prevHash = blks.get(i).getHash();
+    } // for
+    int limit = (firstBadLink < 0) ? blks.size() : firstBadLink;
+    return IntStream.range(0, limit).parallel()
+        .filter((i) -> !validator.isValid(blks.get(i).getHash())
+            || !validHashContents(blks.get(i)))
+        .min()
+        .orElse(firstBadLink);
+  } // firstInvalid(List<Block>)
+
+  /**
+   * Stage the net balance changes for one transaction of a batch,
+   * following the same rules as applyTransaction.
+   *
+   * @param deltas the net change to each user's balance so far in the batch.
+   * @param newUsers the users first seen in the batch, in order.
+   * @param transaction the transaction to stage.
+   */
+  void stageUserBalances(HashMap<String, long[]> deltas, ArrayList<String> newUsers,
+      Transaction transaction) {
+    String source = transaction.getSource();
+    String target = transaction.getTarget();
+    int amount = transaction.getAmount();
+    boolean newTarget = !deltas.containsKey(target) && !balances.contains(target);
+    if (newTarget) {
+      newUsers.add(target);
+    } // if
+    if (source.equals("")) {
+      stagedDelta(deltas, target)[0] += amount;
+    } else if (deltas.containsKey(source) || balances.contains(source)) {
+      stagedDelta(deltas, source)[0] -= amount;
+      stagedDelta(deltas, target)[0] += amount;
+    } else if (newTarget) {
+      stagedDelta(deltas, target)[0] += amount;
+    } // if
+  } // stageUserBalances(HashMap<String, long[]>, ArrayList<String>, Transaction)
+
+  /**
+   * Get the staged change to a user's balance, starting it at 0 if needed.
+   *
+   * @param deltas the net change to each user's balance so far in the batch.
+   * @param user the user.
+   * @return the one-element array holding the change.
+   */
+  long[] stagedDelta(HashMap<String, long[]> deltas, String user) {
+    long[] delta = deltas.get(user);
+    if (delta == null) {
+      delta = new long[1];
+      deltas.put(user, delta);
+    } // if
+    return delta;
+  } // stagedDelta(HashMap<String, long[]>, String)
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -216,16 +370,169 @@ public class BlockChain implements Iterable<Transaction> {
    * @return a new block with correct number, hashes, and such.
    */
   public Block mine(Transaction t) {
-    return new Block(this.numBlocks, t, getHash(), this.validator);
+    return new Block(getSize(), t, getHash(), this.validator, this.digests);
   } // mine(Transaction)
 
+  /**
+   * Get the way the blocks in the chain are hashed.
+   *
+   * @return the digest provider.
+   */
+  public DigestProvider getDigests() {
+    return this.digests;
+  } // getDigests()
+
+  /**
+   * Persist the blocks appended from now on (and the removals) to a
+   * journal. The journal is not closed by the chain. While it is attached,
+   * the chain only removes blocks the journal holds, so blocks appended
+   * before it was attached stay put.
+   *
+   * @param blocks
+   *   The journal, or null to stop persisting blocks.
+   */
+  public void setJournal(BlockJournal blocks) {
+    this.journal = blocks;
+  } // setJournal(BlockJournal)
+
+  /**
+   * Make sure the journal, if any, can still take records, so that the
+   * chain is not changed for a block or removal that cannot be persisted.
+   *
+   * @throws IllegalStateException if the journal is closed.
+   */
+  void checkJournal() {
+    if (journal != null && journal.isClosed()) {
+      throw new IllegalStateException("The journal is closed.");
+    } // if
+  } // checkJournal()
+
+  /**
+   * Persist an appended block, if the chain has a journal.
+   *
+   * @param blk the block.
+   * @return a future completed once the block is persisted.
+   */
+  CompletableFuture<Void> journal(Block blk) {
+    return (journal == null) ? CompletableFuture.completedFuture(null) : journal.write(blk);
+  } // journal(Block)
+
+  /**
+   * Add a transaction to the filter, unless it is going to be rebuilt.
+   *
+   * @param transaction the transaction.
+   */
+  void remember(Transaction transaction) {
+    if (known.isFull()) {
+      knownStale = true;
+    } else if (!knownStale) {
+      known.add(transaction.fingerprint());
+    } // if
+  } // remember(Transaction)
+
+  /**
+   * Rebuild the filter from the transactions in the chain.
+   */
+  void rebuildKnown() {
+    known = new BloomFilter(Math.max(FILTER_CAPACITY, 2 * getSize()), FILTER_FALSE_POSITIVES);
+    transactionStream().forEach((transaction) -> known.add(transaction.fingerprint()));
+    knownStale = false;
+  } // rebuildKnown()
+
+  /**
+   * Determine whether a transaction is in the chain (or, if the bodies of
+   * the older blocks were pruned and discarded, in the blocks still held).
+   * Most transactions that are not are rejected by a Bloom filter without
+   * looking at the blocks.
+   *
+   * @param transaction
+   *   The transaction.
+   *
+   * @return true if it is and false otherwise.
+   */
+  public boolean containsTransaction(Transaction transaction) {
+    if (knownStale) {
+      rebuildKnown();
+    } // if
+    return known.mightContain(transaction.fingerprint())
+        && transactionStream().anyMatch(transaction::equals);
+  } // containsTransaction(Transaction)
+
+  /**
+   * Turn replay protection on or off. While it is on, a transaction that
+   * is already in the chain (the same source, target, amount, and sequence
+   * number) is not valid, and a block holding one cannot be appended; the
+   * transactions are indexed by id, so the check takes constant time.
+   * Turning it on indexes the transactions already held.
+   *
+   * @param on
+   *   Whether to reject replays.
+   */
+  public void setReplayProtection(boolean on) {
+    if (!on) {
+      seen = null;
+    } else if (seen == null) {
+      seen = new HashMap<Hash, Integer>();
+      for (int i = Math.max(1, store.first()); i < getSize(); i++) {
+        seen.putIfAbsent(store.get(i).getTransaction().id(), i);
+      } // for
+    } // if
+  } // setReplayProtection(boolean)
+
+  /**
+   * Determine whether a transaction would be a replay.
+   *
+   * @param transaction
+   *   The transaction.
+   *
+   * @return true if replay protection is on and the transaction is already
+   *   in the chain, and false otherwise.
+   */
+  public boolean isReplay(Transaction transaction) {
+    return seen != null && seen.containsKey(transaction.id());
+  } // isReplay(Transaction)
+
+  /**
+   * Add an appended block to the replay index and the query indices, if
+   * the chain keeps them.
+   *
+   * @param blk the block.
+   */
+  void index(Block blk) {
+    if (seen != null) {
+      seen.putIfAbsent(blk.getTransaction().id(), blk.getNum());
+    } // if
+    if (queries != null) {
+      queries.add(blk);
+    } // if
+  } // index(Block)
+
+  /**
+   * Get the indices for range and aggregate queries over the chain, such
+   * as the volume between two block heights or the top receivers. They
+   * are built from the blocks held the first time they are asked for,
+   * and kept up to date as blocks are appended and removed.
+   *
+   * @return the indices.
+   */
+  public ChainIndex queries() {
+    if (queries == null) {
+      ChainIndex built = new ChainIndex();
+      for (int i = Math.max(1, store.first()); i < getSize(); i++) {
+        built.add(store.get(i));
+      } // for
+      queries = built;
+    } // if
+    return queries;
+  } // queries()
+
   /**
    * Get the number of blocks curently in the chain.
    *
    * @return the number of blocks in the chain, including the initial block.
    */
   public int getSize() {
-    return this.numBlocks;
+    return store.size();
   } // getSize()
 
   /**
@@ -235,53 +542,226 @@ public class BlockChain implements Iterable<Transaction> {
    *   The block to add to the end of the chain.
    *
    * @throws IllegalArgumentException if (a) the hash is not valid, (b)
-   *   the hash is not appropriate for the contents, or (c) the previous
-   *   hash is incorrect.
+   *   the hash is not appropriate for the contents, (c) the previous
+   *   hash is incorrect, or (d) the transaction is a replay and replay
+   *   protection is on.
+   * @throws IllegalStateException if the chain's journal is closed, in
+   *   which case the chain is left unchanged.
+   * @throws ArithmeticException if a balance would overflow, in which
+   *   case the chain is left unchanged.
    */
   public void append(Block blk) throws IllegalArgumentException {
-    if (!validator.isValid(blk.getHash()) || !validHashContents(blk)
-        || !blk.getPrevHash().equals(getHash())) {
+    appendDurably(blk);
+  } // append()
+
+  /**
+   * Add a block to the end of the chain and persist it to the journal.
+   *
+   * @param blk
+   *   The block to add to the end of the chain.
+   *
+   * @return a future completed once the block is as durable as the
+   *   journal promises (or at once, if the chain has no journal).
+   *
+   * @throws IllegalArgumentException if (a) the hash is not valid, (b)
+   *   the hash is not appropriate for the contents, (c) the previous
+   *   hash is incorrect, or (d) the transaction is a replay and replay
+   *   protection is on.
+   * @throws IllegalStateException if the chain's journal is closed, in
+   *   which case the chain is left unchanged.
+   * @throws ArithmeticException if a balance would overflow, in which
+   *   case the chain is left unchanged.
+   */
+  public CompletableFuture<Void> appendDurably(Block blk) throws IllegalArgumentException {
+    AppendEvent event = new AppendEvent();
+    event.begin();
+    boolean timed = Metrics.on();
+    long start = timed ? System.nanoTime() : 0;
+    boolean appended = validator.isValid(blk.getHash()) && validHashContents(blk)
+        && blk.getPrevHash().equals(getHash()) && !isReplay(blk.getTransaction());
+    CompletableFuture<Void> durable = null;
+    if (appended) {
+      durable = appendUnchecked(blk);
+    } // if
+    if (timed) {
+      if (!appended) {
+        Metrics.APPEND_FAILURES.increment();
+      } // if
+      Metrics.APPEND_TIME.record(System.nanoTime() - start);
+    } // if
+    if (event.shouldCommit()) {
+      event.blockNum = blk.getNum();
+      event.appended = appended;
+      event.commit();
+    } // if
+    if (!appended) {
       throw new IllegalArgumentException();
     } // if
-    this.lastBlock.next = blk;
-    this.lastBlock = blk;
+    return durable;
+  } // appendDurably(Block)
+
+  /**
+   * Add a block to the end of the chain without checking it. Only for
+   * blocks that are already known to be good.
+   *
+   * @param blk
+   *   The block to add to the end of the chain.
+   *
+   * @return a future completed once the block is persisted.
+   *
+   * @throws IllegalStateException if the journal is closed, in which case
+   *   the chain is left unchanged.
+   * @throws ArithmeticException if a balance would overflow, in which case
+   *   the chain is left unchanged.
+   */
+  CompletableFuture<Void> appendUnchecked(Block blk) {
+    checkJournal();
+    checkTransaction(this.balances, blk.getTransaction());
+    store.add(blk);
     updateUserBalances(blk.getTransaction());
-    allTransactions.add(blk.getTransaction());
-    numBlocks++;
-  } // append()
+    remember(blk.getTransaction());
+    index(blk);
+    if (Metrics.on()) {
+      Metrics.CHAIN_HEIGHT.set(getSize());
+    } // if
+    return journal(blk);
+  } // appendUnchecked(Block)
+
+  /**
+   * Add a batch of blocks to the end of the chain. Every block is checked
+   * before any of them is added, so either the whole batch is appended or
+   * the chain is left unchanged. The balances are then updated once per
+   * user rather than once per transaction.
+   *
+   * @param blks
+   *   The blocks to add to the end of the chain, in order.
+   *
+   * @throws IllegalArgumentException if any block in the batch would fail
+   *   append. The message gives the index of the first such block.
+   * @throws IllegalStateException if the chain's journal is closed, in
+   *   which case the chain is left unchanged.
+   */
+  public void appendAll(List<Block> blks) throws IllegalArgumentException {
+    int bad = firstInvalid(blks);
+    if (bad >= 0) {
+      throw new IllegalArgumentException("Invalid block at index " + bad + " of the batch.");
+    } // if
+    appendAllUnchecked(blks);
+  } // appendAll(List<Block>)
+
+  /**
+   * Add a batch of blocks to the end of the chain without checking them.
+   * Only for blocks that are already known to be good.
+   *
+   * @param blks
+   *   The blocks to add to the end of the chain, in order.
+   *
+   * @return a future completed once all the blocks are persisted.
+   *
+   * @throws IllegalStateException if the journal is closed, in which case
+   *   the chain is left unchanged.
+   */
+  CompletableFuture<Void> appendAllUnchecked(List<Block> blks) {
+    checkJournal();
+    BalanceUpdateEvent event = new BalanceUpdateEvent();
+    event.begin();
+    HashMap<String, long[]> deltas = new HashMap<String, long[]>();
+    ArrayList<String> newUsers = new ArrayList<String>();
+    for (Block blk : blks) {
+      stageUserBalances(deltas, newUsers, blk.getTransaction());
+    } // for
+    balances.applyAll(newUsers, deltas);
+    CompletableFuture<Void> durable = CompletableFuture.completedFuture(null);
+    for (Block blk : blks) {
+      store.add(blk);
+      remember(blk.getTransaction());
+      index(blk);
+      durable = journal(blk);
+    } // for
+    if (event.shouldCommit()) {
+      event.transactions = blks.size();
+      event.accounts = deltas.size();
+      event.commit();
+    } // if
+    if (Metrics.on()) {
+      Metrics.CHAIN_HEIGHT.set(getSize());
+    } // if
+    return durable;
+  } // appendAllUnchecked(List<Block>)
+
+  /**
+   * Add blocks to the end of the chain without checking them and replace
+   * the balances, rather than replaying the blocks. Only for restoring a
+   * chain from a checkpoint of the state after those blocks.
+   *
+   * @param blks
+   *   The blocks to add to the end of the chain, in order.
+   * @param ledger
+   *   The balances after the blocks.
+   */
+  void restore(List<Block> blks, BalanceLedger ledger) {
+    for (Block blk : blks) {
+      store.add(blk);
+      remember(blk.getTransaction());
+      index(blk);
+    } // for
+    this.balances = ledger;
+    if (Metrics.on()) {
+      Metrics.CHAIN_HEIGHT.set(getSize());
+    } // if
+  } // restore(List<Block>, BalanceLedger)
 
   /**
    * Attempt to remove the last block from the chain.
    *
-   * @return false if the chain has only one block (in which case it's
-   *   not removed) or true otherwise (in which case the last block
-   *   is removed).
+   * @return false if the chain has only one block, or only one block
+   *   after those pruned, or its journal does not hold the last block
+   *   (because it was appended before the journal was attached), in which
+   *   case it's not removed, or true otherwise (in which case the last
+   *   block is removed).
+   *
+   * @throws IllegalStateException if the chain's journal is closed, in
+   *   which case the chain is left unchanged.
    */
   public boolean removeLast() {
-    if (numBlocks == 1) {
+    RemoveEvent event = new RemoveEvent();
+    event.begin();
+    if (getSize() == 1 || (base != null && getSize() == base.height() + 1)
+        || (journal != null && journal.held() == 0)) {
+      if (event.shouldCommit()) {
+        event.blockNum = -1;
+        event.commit();
+      } // if
       return false;
     } // if
-    // Sets the user in the last block's balance to 0.
-    try {
-      if (lastBlock.getTransaction().getSource().equals("")) {
-        int userBalance = userBalances.get(lastBlock.getTransaction().getTarget());
-        userBalances.set(lastBlock.getTransaction().getTarget(), userBalance - userBalance);
-      } else {
-        int newSourceBalance = userBalances.get(lastBlock.getTransaction().getSource())
-            + lastBlock.getTransaction().getAmount();
-        userBalances.set(lastBlock.getTransaction().getSource(), newSourceBalance);
-        int newTargetBalance = userBalances.get(lastBlock.getTransaction().getTarget())
-            - lastBlock.getTransaction().getAmount();
-        userBalances.set(lastBlock.getTransaction().getTarget(), newTargetBalance);
-      } // if
-    } catch (Exception e) {
-      // Does nothing.
-    } // try/catch
-
-    Block prevBlock = getBlock(numBlocks - 2);
-    lastBlock = prevBlock;
-    lastBlock.next = null;
-    numBlocks--;
+    checkJournal();
+    Block lastBlock = store.get(getSize() - 1);
+    Transaction transaction = lastBlock.getTransaction();
+    if (transaction.getSource().equals("")) {
+      balances.addIfPresent(transaction.getTarget(), -transaction.getAmount());
+    } else if (balances.addIfPresent(transaction.getSource(), transaction.getAmount())) {
+      balances.addIfPresent(transaction.getTarget(), -transaction.getAmount());
+    } // if
+
+    store.removeLast();
+    verified.remove(lastBlock);
+    knownStale = true;
+    if (seen != null) {
+      seen.remove(transaction.id(), lastBlock.getNum());
+    } // if
+    if (queries != null) {
+      queries.removeLast(lastBlock);
+    } // if
+    if (journal != null) {
+      journal.remove();
+    } // if
+    if (Metrics.on()) {
+      Metrics.CHAIN_HEIGHT.set(getSize());
+    } // if
+    if (event.shouldCommit()) {
+      event.blockNum = getSize();
+      event.commit();
+    } // if
     return true;
   } // removeLast()
 
@@ -291,46 +771,74 @@ public class BlockChain implements Iterable<Transaction> {
    * @return the hash of the last block in the chain.
    */
   public Hash getHash() {
-    return lastBlock.getHash();
+    return store.get(getSize() - 1).getHash();
   } // getHash()
 
   /**
    * Determine if the blockchain is correct in that (a) the balances are
    * legal/correct at every step, (b) that every block has a correct
    * previous hash field, (c) that every block has a hash that is correct
-   * for its contents, and (d) that every block has a valid hash.
+   * for its contents, and (d) that every block has a valid hash. The
+   * balances are replayed from the start, so each transaction is checked
+   * against the balances just before it.
    *
    * @return true if the blockchain is correct and false otherwise.
    */
   public boolean isCorrect() {
-    if (this.numBlocks == 1) {
-      return true;
+    VerifyEvent event = new VerifyEvent();
+    event.begin();
+    boolean timed = Metrics.on();
+    long start = timed ? System.nanoTime() : 0;
+    boolean correct = correct();
+    if (timed) {
+      Metrics.VERIFY_TIME.record(System.nanoTime() - start);
     } // if
-    Iterator<Block> iterator = this.blocks();
-    Block next = firstBlock;
-    next = iterator.next();
-    int blockNum = 0;
-    boolean secondBlockCheck = true;
+    if (event.shouldCommit()) {
+      event.method = "isCorrect";
+      event.blocks = getSize();
+      event.correct = correct;
+      event.commit();
+    } // if
+    return correct;
+  } // isCorrect()
+
+  /**
+   * Do the work of isCorrect.
+   *
+   * @return true if the blockchain is correct and false otherwise.
+   */
+  boolean correct() {
+    // A pruned chain starts from the balances at the first kept block.
+    int first = (base == null) ? 0 : base.height() - 1;
+    Iterator<Block> iterator =
+        Spliterators.iterator(new BlockSpliterator(store, first + 1, getSize()));
+    Hash prevHash = (base == null) ? store.get(0).getHash() : base.tipHash();
+    Block next;
+    int blockNum = first;
+    boolean secondBlockCheck = (first == 0);
+    BalanceLedger replay = (base == null) ? new BalanceLedger() : base.ledger();
     while (iterator.hasNext()) {
       next = iterator.next();
       blockNum++;
       if (secondBlockCheck) {
         secondBlockCheck = false;
         if (!next.getTransaction().getSource().equals("")
-            || !next.getPrevHash().equals(firstBlock.getHash())
+            || !next.getPrevHash().equals(prevHash)
             || !validHashContents(next) || !this.validator.isValid(next.getHash())) {
           return false;
         } // if
       } else {
-        if (!validTransaction(next.getTransaction())
-            || !next.getPrevHash().equals(getBlock(blockNum - 1).getHash())
+        if (!validTransaction(replay, next.getTransaction())
+            || !next.getPrevHash().equals(prevHash)
             || !validHashContents(next) || !this.validator.isValid(next.getHash())) {
           return false;
         } // if
       } // if
+      applyTransaction(replay, next.getTransaction());
+      prevHash = next.getHash();
     } // while
     return true;
-  } // isCorrect()
+  } // correct()
 
   /**
    * Determine if the blockchain is correct in that (a) the balances are
@@ -342,14 +850,43 @@ public class BlockChain implements Iterable<Transaction> {
    *   If things are wrong at any block.
    */
   public void check() throws Exception {
-    if (this.numBlocks == 1) {
-      return;
-    } // if
-    Iterator<Block> iterator = this.blocks();
-    Block next = firstBlock;
-    next = iterator.next();
-    int blockNum = 0;
-    boolean secondBlockCheck = true;
+    VerifyEvent event = new VerifyEvent();
+    event.begin();
+    boolean timed = Metrics.on();
+    long start = timed ? System.nanoTime() : 0;
+    boolean correct = false;
+    try {
+      checkBlocks();
+      correct = true;
+    } finally {
+      if (timed) {
+        Metrics.VERIFY_TIME.record(System.nanoTime() - start);
+      } // if
+      if (event.shouldCommit()) {
+        event.method = "check";
+        event.blocks = getSize();
+        event.correct = correct;
+        event.commit();
+      } // if
+    } // try/finally
+  } // check()
+
+  /**
+   * Do the work of check.
+   *
+   * @throws Exception
+   *   If things are wrong at any block.
+   */
+  void checkBlocks() throws Exception {
+    // A pruned chain starts from the balances at the first kept block.
+    int first = (base == null) ? 0 : base.height() - 1;
+    Iterator<Block> iterator =
+        Spliterators.iterator(new BlockSpliterator(store, first + 1, getSize()));
+    Hash prevHash = (base == null) ? store.get(0).getHash() : base.tipHash();
+    Block next;
+    int blockNum = first;
+    boolean secondBlockCheck = (first == 0);
+    BalanceLedger replay = (base == null) ? new BalanceLedger() : base.ledger();
     while (iterator.hasNext()) {
       next = iterator.next();
       blockNum++;
@@ -357,7 +894,7 @@ public class BlockChain implements Iterable<Transaction> {
         secondBlockCheck = false;
         if (!next.getTransaction().getSource().equals("")) {
           throw new Exception("The first block added to the chain should not have a source name.");
-        } else if (!next.getPrevHash().equals(this.firstBlock.getHash())) {
+        } else if (!next.getPrevHash().equals(prevHash)) {
           throw new Exception(
             "The first block added to the chain has an invalid prevHash value.");
         } else if (!validHashContents(next)) {
@@ -367,9 +904,9 @@ public class BlockChain implements Iterable<Transaction> {
           throw new Exception("The first block added to the chain has an invalid hash value.");
         } // if
       } else {
-        if (!validTransaction(next.getTransaction())) {
+        if (!validTransaction(replay, next.getTransaction())) {
           throw new Exception("Block number " + blockNum + "'s transaction is incorrect.");
-        } else if (!next.getPrevHash().equals(getBlock(blockNum - 1).getHash())) {
+        } else if (!next.getPrevHash().equals(prevHash)) {
           throw new Exception("Block number " + blockNum + "'s prevHash value does not match block"
               + (blockNum - 1) + "'s hash value.");
         } else if (!validHashContents(next)) {
@@ -379,8 +916,10 @@ public class BlockChain implements Iterable<Transaction> {
           throw new Exception("Block number " + blockNum + "'s hash value is invalid.");
         } // if
       } // if
+      applyTransaction(replay, next.getTransaction());
+      prevHash = next.getHash();
     } // while
-  } // check()
+  } // checkBlocks()
 
   /**
    * Return an iterator of all the people who participated in the
@@ -389,16 +928,7 @@ public class BlockChain implements Iterable<Transaction> {
    * @return an iterator of all the people in the system.
    */
   public Iterator<String> users() {
-    return new Iterator<String>() {
-      int index = 0;
-      public boolean hasNext() {
-        return (userNames.size() >= index + 1);
-      } // hasNext()
-
-      public String next() {
-        return userNames.get(index++);
-      } // next()
-    };
+    return userStream().iterator();
   } // users()
 
   /**
@@ -409,37 +939,21 @@ public class BlockChain implements Iterable<Transaction> {
    *
    * @return that user's balance (or 0, if the user is not in the system).
    */
-  public int balance(String user) {
-    int balance = 0;
-    try {
-      balance = userBalances.get(user);
-    } catch (KeyNotFoundException e) {
-      // Do nothing.
-    } // try/catch
-    return balance;
+  public long balance(String user) {
+    if (Metrics.on()) {
+      Metrics.BALANCE_QUERIES.increment();
+    } // if
+    return balances.get(user);
   } // balance()
 
   /**
-   * Get an interator for all the blocks in the chain.
+   * Get an interator for all the blocks in the chain (or, if the bodies of
+   * the older blocks were pruned and discarded, all the blocks still held).
    *
    * @return an iterator for all the blocks in the chain.
    */
   public Iterator<Block> blocks() {
-    return new Iterator<Block>() {
-      Block current = firstBlock;
-      public boolean hasNext() {
-        if (current == null) {
-          return false;
-        } // if
-        return true;
-      } // hasNext()
-
-      public Block next() {
-        Block temp = current;
-        current = current.next;
-        return temp;
-      } // next()
-    };
+    return Spliterators.iterator(new BlockSpliterator(store, store.first(), getSize()));
   } // blocks()
 
   /**
@@ -448,16 +962,38 @@ public class BlockChain implements Iterable<Transaction> {
    * @return an iterator for all the blocks in the chain.
    */
   public Iterator<Transaction> iterator() {
-    return new Iterator<Transaction>() {
-      int index = 0;
-      public boolean hasNext() {
-        return (allTransactions.size() >= index + 1);
-      } // hasNext()
-
-      public Transaction next() {
-        return allTransactions.get(index++);
-      } // next()
-    };
+    return transactionStream().iterator();
   } // iterator()
 
+  /**
+   * Get a stream of all the blocks in the chain. The stream splits evenly,
+   * so it may be used in parallel.
+   *
+   * @return a stream of the blocks, including the initial block.
+   */
+  public Stream<Block> blockStream() {
+    return StreamSupport.stream(new BlockSpliterator(store, store.first(), getSize()), false);
+  } // blockStream()
+
+  /**
+   * Get a stream of all the transactions in the chain. The stream splits
+   * evenly, so it may be used in parallel.
+   *
+   * @return a stream of the transactions, not including the initial block's.
+   */
+  public Stream<Transaction> transactionStream() {
+    return StreamSupport.stream(
+        new BlockSpliterator(store, Math.max(1, store.first()), getSize()), false)
+        .map(Block::getTransaction);
+  } // transactionStream()
+
+  /**
+   * Get a stream of all the people who participated in the system.
+   *
+   * @return a stream of the users.
+   */
+  public Stream<String> userStream() {
+    return balances.users().stream();
+  } // userStream()
+
 } // class BlockChain
@@ -0,0 +1,395 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * A compact binary format for blocks, transactions, and hashes.
+ *
+ * A stream starts with a header (the four bytes of MAGIC and one version
+ * byte). Each block is then written as its number (varint), transaction,
+ * previous hash, nonce (varint), and hash. A transaction is a source
+ * reference, a target reference, a zig-zag varint amount, and (from
+ * version 2) a varint sequence number. A hash is a varint length followed
+ * by its raw bytes. Version 1 streams can still be read.
+ *
+ * User names go into a dictionary as they are first seen. A reference is
+ * the varint index of the name in the dictionary; the index one past the
+ * end introduces a new name, followed by its varint length and UTF-8
+ * bytes. Because of this, a codec keeps state, and the blocks of a stream
+ * must be read with a fresh codec in the same order they were written.
+ *
+ * @author Mitch Paiva
+ * @author Jafar Jarrar
+ */
+public class BlockCodec {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The magic number at the start of every encoded stream ("BLKC").
+   */
+  public static final int MAGIC = 0x424C4B43;
+
+  /**
+   * The current version of the format.
+   */
+  public static final byte VERSION = 2;
+
+  /**
+   * The first version with sequence numbers.
+   */
+  static final byte SEQ_VERSION = 2;
+
+  /**
+   * The initial size of the buffer used by encode.
+   */
+  static final int INITIAL_BUFFER_SIZE = 256;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The user names seen so far, with ids in the order they were seen.
+   */
+  UserDictionary users;
+
+  /**
+   * The version of the stream being read or written.
+   */
+  byte version;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new codec with an empty dictionary.
+   */
+  public BlockCodec() {
+    this.users = new UserDictionary();
+    this.version = VERSION;
+  } // BlockCodec()
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Write a non-negative long as a varint (seven bits per byte, low bits
+   * first, with the high bit set on every byte but the last).
+   *
+   * @param buf the buffer to write to.
+   * @param val the value to write.
+   */
+  static void putVarLong(ByteBuffer buf, long val) {
+    while ((val & ~0x7FL) != 0) {
+      buf.put((byte) ((val & 0x7F) | 0x80));
+      val >>>= 7;
+    } // while
+    buf.put((byte) val);
+  } // putVarLong(ByteBuffer, long)
+
+  /**
+   * Read a varint written by putVarLong.
+   *
+   * @param buf the buffer to read from.
+   * @return the value read.
+   * @throws IllegalArgumentException if the varint is too long.
+   */
+  static long getVarLong(ByteBuffer buf) {
+    long result = 0;
+    for (int shift = 0; shift < Long.SIZE; shift += 7) {
+      byte b = buf.get();
+      result |= (long) (b & 0x7F) << shift;
+      if ((b & 0x80) == 0) {
+        return result;
+      } // if
+    } // for
+    throw new IllegalArgumentException("Malformed varint.");
+  } // getVarLong(ByteBuffer)
+
+  /**
+   * Read the length of something that follows in the buffer.
+   *
+   * @param buf the buffer to read from.
+   * @return the length read.
+   * @throws IllegalArgumentException if the length is negative or runs
+   *   past the end of the buffer.
+   */
+  static int getLength(ByteBuffer buf) {
+    long length = getVarLong(buf);
+    if (length < 0 || length > buf.remaining()) {
+      throw new IllegalArgumentException("Malformed length " + length + ".");
+    } // if
+    return (int) length;
+  } // getLength(ByteBuffer)
+
+  /**
+   * Write a possibly-negative int as a zig-zag varint, so that small
+   * negative numbers stay short.
+   *
+   * @param buf the buffer to write to.
+   * @param val the value to write.
+   */
+  static void putSignedVarInt(ByteBuffer buf, int val) {
+    putVarLong(buf, Integer.toUnsignedLong((val << 1) ^ (val >> 31)));
+  } // putSignedVarInt(ByteBuffer, int)
+
+  /**
+   * Read an int written by putSignedVarInt.
+   *
+   * @param buf the buffer to read from.
+   * @return the value read.
+   */
+  static int getSignedVarInt(ByteBuffer buf) {
+    int zigzag = (int) getVarLong(buf);
+    return (zigzag >>> 1) ^ -(zigzag & 1);
+  } // getSignedVarInt(ByteBuffer)
+
+  /**
+   * Write a hash.
+   *
+   * @param buf the buffer to write to.
+   * @param hash the hash to write.
+   */
+  public static void writeHash(ByteBuffer buf, Hash hash) {
+    putVarLong(buf, hash.length());
+    for (int i = 0; i < hash.length(); i++) {
+      buf.put(hash.get(i));
+    } // for
+  } // writeHash(ByteBuffer, Hash)
+
+  /**
+   * Read a hash.
+   *
+   * @param buf the buffer to read from.
+   * @return the hash read.
+   * @throws IllegalArgumentException if the length of the hash is bad.
+   */
+  public static Hash readHash(ByteBuffer buf) {
+    byte[] data = new byte[getLength(buf)];
+    buf.get(data);
+    return Hash.wrap(data);
+  } // readHash(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write a reference to a user, adding the user to the dictionary if
+   * this is the first time we've seen them.
+   *
+   * @param buf the buffer to write to.
+   * @param user the user's name.
+   */
+  void writeUser(ByteBuffer buf, String user) {
+    int id = users.idOf(user);
+    if (id >= 0) {
+      putVarLong(buf, id);
+      return;
+    } // if
+    id = users.intern(user);
+    byte[] name = users.encoding(id);
+    putVarLong(buf, id);
+    putVarLong(buf, name.length);
+    buf.put(name);
+  } // writeUser(ByteBuffer, String)
+
+  /**
+   * Read a reference to a user, adding the user to the dictionary if
+   * this is the first time we've seen them.
+   *
+   * @param buf the buffer to read from.
+   * @return the user's id in the dictionary.
+   * @throws IllegalArgumentException if the reference is not in the dictionary
+   *   or the length of the name is bad.
+   */
+  int readUser(ByteBuffer buf) {
+    long id = getVarLong(buf);
+    if (id >= 0 && id < users.size()) {
+      return (int) id;
+    } else if (id != users.size()) {
+      throw new IllegalArgumentException("Unknown user reference " + id + ".");
+    } // if
+    int length = getLength(buf);
+    String user;
+    if (buf.hasArray()) {
+      user = new String(buf.array(), buf.arrayOffset() + buf.position(), length,
+          StandardCharsets.UTF_8);
+      buf.position(buf.position() + length);
+    } else {
+      byte[] name = new byte[length];
+      buf.get(name);
+      user = new String(name, StandardCharsets.UTF_8);
+    } // if
+    return users.intern(user);
+  } // readUser(ByteBuffer)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Write the stream header.
+   *
+   * @param buf the buffer to write to.
+   */
+  public void writeHeader(ByteBuffer buf) {
+    buf.putInt(MAGIC);
+    buf.put(this.version);
+  } // writeHeader(ByteBuffer)
+
+  /**
+   * Read and check the stream header. The codec then reads (and writes)
+   * blocks in the version of the stream.
+   *
+   * @param buf the buffer to read from.
+   * @throws IllegalArgumentException if the header is not one we can read.
+   */
+  public void readHeader(ByteBuffer buf) {
+    if (buf.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not an encoded block stream.");
+    } // if
+    byte version = buf.get();
+    if (version < 1 || version > VERSION) {
+      throw new IllegalArgumentException("Unsupported block stream version " + version + ".");
+    } // if
+    this.version = version;
+  } // readHeader(ByteBuffer)
+
+  /**
+   * Write a transaction.
+   *
+   * @param buf the buffer to write to.
+   * @param transaction the transaction to write.
+   * @throws IllegalArgumentException if the transaction has a sequence
+   *   number and the stream is too old to hold one.
+   */
+  public void writeTransaction(ByteBuffer buf, Transaction transaction) {
+    if (this.version < SEQ_VERSION && transaction.getSeq() != 0) {
+      throw new IllegalArgumentException("Version " + this.version
+          + " block streams cannot hold sequence numbers.");
+    } // if
+    writeUser(buf, transaction.getSource());
+    writeUser(buf, transaction.getTarget());
+    putSignedVarInt(buf, transaction.getAmount());
+    if (this.version >= SEQ_VERSION) {
+      putVarLong(buf, transaction.getSeq());
+    } // if
+  } // writeTransaction(ByteBuffer, Transaction)
+
+  /**
+   * Read a transaction.
+   *
+   * @param buf the buffer to read from.
+   * @return the transaction read.
+   */
+  public Transaction readTransaction(ByteBuffer buf) {
+    int source = readUser(buf);
+    int target = readUser(buf);
+    int amount = getSignedVarInt(buf);
+    long seq = (this.version >= SEQ_VERSION) ? getVarLong(buf) : 0;
+    return new Transaction(users, source, target, amount, seq);
+  } // readTransaction(ByteBuffer)
+
+  /**
+   * Write a block. If the buffer fills up, the dictionary is left as it
+   * was before the call, so the block can be written again to a bigger
+   * buffer.
+   *
+   * @param buf the buffer to write to.
+   * @param blk the block to write.
+   * @throws BufferOverflowException if the block does not fit in the buffer.
+   */
+  public void writeBlock(ByteBuffer buf, Block blk) {
+    int numUsers = users.size();
+    try {
+      putVarLong(buf, blk.getNum());
+      writeTransaction(buf, blk.getTransaction());
+      writeHash(buf, blk.getPrevHash());
+      putVarLong(buf, blk.getNonce());
+      writeHash(buf, blk.getHash());
+    } catch (BufferOverflowException e) {
+      users.truncate(numUsers);
+      throw e;
+    } // try/catch
+  } // writeBlock(ByteBuffer, Block)
+
+  /**
+   * Read a block. The hash is taken as written, not recomputed. If the
+   * block is malformed, the dictionary is left as it was before the call.
+   *
+   * @param buf the buffer to read from.
+   * @return the block read.
+   * @throws IllegalArgumentException if the block is malformed or cut short.
+   */
+  public Block readBlock(ByteBuffer buf) {
+    int numUsers = users.size();
+    try {
+      long num = getVarLong(buf);
+      if (num < 0 || num > Integer.MAX_VALUE) {
+        throw new IllegalArgumentException("Block number " + num + " is out of range.");
+      } // if
+      Transaction transaction = readTransaction(buf);
+      Hash prevHash = readHash(buf);
+      long nonce = getVarLong(buf);
+      return new Block((int) num, transaction, prevHash, nonce, readHash(buf));
+    } catch (BufferUnderflowException e) {
+      users.truncate(numUsers);
+      throw new IllegalArgumentException("The block is cut short.");
+    } catch (IllegalArgumentException e) {
+      users.truncate(numUsers);
+      throw e;
+    } // try/catch
+  } // readBlock(ByteBuffer)
+
+  /**
+   * Encode a header followed by a sequence of blocks.
+   *
+   * @param blocks the blocks to encode.
+   * @return a buffer, ready for reading, holding the encoded blocks.
+   */
+  public ByteBuffer encode(Iterator<Block> blocks) {
+    ByteBuffer buf = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    writeHeader(buf);
+    while (blocks.hasNext()) {
+      Block blk = blocks.next();
+      int start = buf.position();
+      while (true) {
+        try {
+          writeBlock(buf, blk);
+          break;
+        } catch (BufferOverflowException e) {
+          buf.position(start);
+          buf.flip();
+          buf = ByteBuffer.allocate(buf.capacity() * 2).put(buf);
+        } // try/catch
+      } // while
+    } // while
+    return buf.flip();
+  } // encode(Iterator<Block>)
+
+  /**
+   * Decode a header followed by blocks, up to the end of the buffer.
+   *
+   * @param buf the buffer to read from.
+   * @return the blocks, in order.
+   * @throws IllegalArgumentException if the header or a block is malformed.
+   */
+  public ArrayList<Block> decode(ByteBuffer buf) {
+    ArrayList<Block> blocks = new ArrayList<Block>();
+    readHeader(buf);
+    while (buf.hasRemaining()) {
+      blocks.add(readBlock(buf));
+    } // while
+    return blocks;
+  } // decode(ByteBuffer)
+} // class BlockCodec
@@ -0,0 +1,645 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only file of the blocks added to (and removed from) a chain,
+ * written with group commit. Blocks are encoded with a BlockCodec as they
+ * arrive and buffered; a flusher thread writes the buffer once enough
+ * blocks are waiting or the oldest has waited long enough, forces the
+ * file to the disk once for the whole batch, and then completes the
+ * futures of the writes in it. How and when writes are acknowledged
+ * depends on the journal's Durability.
+ *
+ * The file is the codec's header followed by frames, each an int length,
+ * the int CRC-32 of the record, and a record: a kind byte and, for added
+ * blocks, the block. A frame cut short by a crash is ignored when the
+ * journal is read and dropped when it is reopened.
+ *
+ * @author Mitch Paiva
+ */
+public class BlockJournal implements Closeable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The kind of record for a block added to the chain.
+   */
+  static final byte RECORD_BLOCK = 1;
+
+  /**
+   * The kind of record for the last block being removed from the chain.
+   */
+  static final byte RECORD_REMOVE = 2;
+
+  /**
+   * The number of bytes in the codec's header.
+   */
+  static final int HEADER_SIZE = Integer.BYTES + 1;
+
+  /**
+   * The number of bytes in a frame before the record.
+   */
+  static final int FRAME_OVERHEAD = 2 * Integer.BYTES;
+
+  /**
+   * The number of waiting blocks that triggers a flush, by default.
+   */
+  public static final int DEFAULT_BATCH_BLOCKS = 256;
+
+  /**
+   * The longest a block waits for a flush, in nanoseconds, by default.
+   */
+  public static final long DEFAULT_MAX_DELAY_NANOS = 2_000_000;
+
+  /**
+   * The initial size of the buffers.
+   */
+  static final int INITIAL_BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The initial size of the frame we encode each record into.
+   */
+  static final int INITIAL_FRAME_SIZE = 256;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The journal file.
+   */
+  FileChannel channel;
+
+  /**
+   * When writes are acknowledged.
+   */
+  Durability durability;
+
+  /**
+   * The number of waiting blocks that triggers a flush.
+   */
+  int batchBlocks;
+
+  /**
+   * The longest a block waits for a flush, in nanoseconds.
+   */
+  long maxDelay;
+
+  /**
+   * The codec for the blocks, which remembers the users already written.
+   */
+  BlockCodec codec;
+
+  /**
+   * Where each record is encoded before it is added to the buffer.
+   */
+  ByteBuffer frame;
+
+  /**
+   * The checksum of each record.
+   */
+  CRC32 crc;
+
+  /**
+   * The frames waiting to be written.
+   */
+  ByteBuffer buffer;
+
+  /**
+   * The futures to complete once the buffer is on the disk.
+   */
+  ArrayList<CompletableFuture<Void>> waiting;
+
+  /**
+   * The number of records in the buffer.
+   */
+  int pendingBlocks;
+
+  /**
+   * When the oldest record in the buffer was added, from System.nanoTime.
+   */
+  long oldest;
+
+  /**
+   * Whether someone wants the buffer flushed now.
+   */
+  boolean flushRequested;
+
+  /**
+   * Whether the journal has been closed.
+   */
+  boolean closed;
+
+  /**
+   * Why writing failed, or null if it has not.
+   */
+  IOException failure;
+
+  /**
+   * The number of blocks the records so far leave in the chain.
+   */
+  int held;
+
+  /**
+   * The thread that writes batches, or null for PER_BLOCK.
+   */
+  Thread flusher;
+
+  /**
+   * The number of times the file has been forced to the disk.
+   */
+  AtomicLong forces;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Open a journal with the default batch size and delay.
+   *
+   * @param file
+   *   The journal file, which is created if it does not exist.
+   * @param durability
+   *   When writes are acknowledged.
+   *
+   * @throws IOException
+   *   If the file cannot be opened or is not a journal.
+   */
+  public BlockJournal(Path file, Durability durability) throws IOException {
+    this(file, durability, DEFAULT_BATCH_BLOCKS, DEFAULT_MAX_DELAY_NANOS);
+  } // BlockJournal(Path, Durability)
+
+  /**
+   * Open a journal. New records go after the ones already in the file,
+   * and any partial frame at the end of the file is dropped.
+   *
+   * @param file
+   *   The journal file, which is created if it does not exist.
+   * @param durability
+   *   When writes are acknowledged.
+   * @param batchBlocks
+   *   The number of waiting blocks that triggers a flush.
+   * @param maxDelayNanos
+   *   The longest a block waits for a flush, in nanoseconds.
+   *
+   * @throws IOException
+   *   If the file cannot be opened or is not a journal.
+   * @throws IllegalArgumentException
+   *   If the batch size is not positive or the delay is negative.
+   */
+  public BlockJournal(Path file, Durability durability, int batchBlocks, long maxDelayNanos)
+      throws IOException {
+    if (batchBlocks < 1 || maxDelayNanos < 0) {
+      throw new IllegalArgumentException("Batches must hold a block and delays can't be negative.");
+    } // if
+    this.durability = durability;
+    this.batchBlocks = batchBlocks;
+    this.maxDelay = maxDelayNanos;
+    this.codec = new BlockCodec();
+    this.frame = ByteBuffer.allocate(INITIAL_FRAME_SIZE);
+    this.crc = new CRC32();
+    this.buffer = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    this.waiting = new ArrayList<CompletableFuture<Void>>();
+    this.forces = new AtomicLong();
+    this.channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.CREATE);
+    try {
+      // Read the records already there, so the codec knows their users.
+      ArrayList<Block> blocks = new ArrayList<Block>();
+      int good = scan(ByteBuffer.wrap(Files.readAllBytes(file)), this.codec, blocks);
+      this.held = blocks.size();
+      this.channel.truncate(good);
+      this.channel.position(good);
+      if (good == 0) {
+        this.codec.writeHeader(this.buffer);
+      } // if
+    } catch (IOException e) {
+      this.channel.close();
+      throw e;
+    } // try/catch
+    if (durability != Durability.PER_BLOCK) {
+      this.flusher = new Thread(this::run, "journal-flusher");
+      this.flusher.setDaemon(true);
+      this.flusher.start();
+    } // if
+  } // BlockJournal(Path, Durability, int, long)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Read the records in a journal, stopping at the first frame that is
+   * cut short or does not match its checksum.
+   *
+   * @param data the contents of the journal.
+   * @param codec the codec to read blocks with.
+   * @param blocks the blocks in the chain, which the records change.
+   * @return the number of bytes of good frames (including the header), or
+   *   0 if there is not even a header.
+   * @throws IOException if the data is not a journal.
+   */
+  static int scan(ByteBuffer data, BlockCodec codec, ArrayList<Block> blocks)
+      throws IOException {
+    if (data.remaining() < HEADER_SIZE) {
+      return 0;
+    } // if
+    try {
+      codec.readHeader(data);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Not a block journal.");
+    } // try/catch
+    CRC32 sums = new CRC32();
+    int good = data.position();
+    while (data.remaining() >= FRAME_OVERHEAD) {
+      int length = data.getInt();
+      int sum = data.getInt();
+      if (length <= 0 || length > data.remaining()) {
+        break;
+      } // if
+      ByteBuffer record = data.slice(data.position(), length);
+      sums.reset();
+      sums.update(record.duplicate());
+      if ((int) sums.getValue() != sum) {
+        break;
+      } // if
+      byte kind = record.get();
+      if (kind == RECORD_BLOCK) {
+        try {
+          blocks.add(codec.readBlock(record));
+        } catch (IllegalArgumentException e) {
+          throw new IOException("The journal holds a corrupt block. " + e.getMessage());
+        } // try/catch
+      } else if (kind == RECORD_REMOVE && !blocks.isEmpty()) {
+        blocks.remove(blocks.size() - 1);
+      } else if (kind == RECORD_REMOVE) {
+        throw new IOException("The journal removes a block it does not hold.");
+      } else {
+        throw new IOException("Unknown journal record " + kind + ".");
+      } // if
+      data.position(data.position() + length);
+      good = data.position();
+    } // while
+    return good;
+  } // scan(ByteBuffer, BlockCodec, ArrayList<Block>)
+
+  /**
+   * Read the blocks in a journal, leaving out the ones that were removed.
+   *
+   * @param file
+   *   The journal file.
+   *
+   * @return the blocks, in order.
+   *
+   * @throws IOException
+   *   If the file cannot be read or is not a journal.
+   */
+  public static ArrayList<Block> read(Path file) throws IOException {
+    ArrayList<Block> blocks = new ArrayList<Block>();
+    scan(ByteBuffer.wrap(Files.readAllBytes(file)), new BlockCodec(), blocks);
+    return blocks;
+  } // read(Path)
+
+  /**
+   * Append the blocks in a journal to a chain, which should hold the
+   * blocks that came before them (usually just the first block). The
+   * chain should not have a journal of its own yet.
+   *
+   * @param file
+   *   The journal file.
+   * @param chain
+   *   The chain to append to.
+   *
+   * @return the number of blocks appended.
+   *
+   * @throws IOException
+   *   If the file cannot be read, or its blocks do not continue the chain.
+   */
+  public static int replay(Path file, BlockChain chain) throws IOException {
+    ArrayList<Block> blocks = read(file);
+    try {
+      chain.appendAll(blocks);
+    } catch (IllegalArgumentException e) {
+      throw new IOException("The journal does not continue the chain. " + e.getMessage());
+    } // try/catch
+    return blocks.size();
+  } // replay(Path, BlockChain)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Frame a record and add it to the buffer. Only call while holding the
+   * lock.
+   *
+   * @param kind the kind of record.
+   * @param blk the block, or null for records without one.
+   */
+  void record(byte kind, Block blk) {
+    while (true) {
+      frame.clear();
+      frame.position(FRAME_OVERHEAD);
+      try {
+        frame.put(kind);
+        if (blk != null) {
+          codec.writeBlock(frame, blk);
+        } // if
+        break;
+      } catch (BufferOverflowException e) {
+        frame = ByteBuffer.allocate(frame.capacity() * 2);
+      } // try/catch
+    } // while
+    int length = frame.position() - FRAME_OVERHEAD;
+    crc.reset();
+    crc.update(frame.array(), FRAME_OVERHEAD, length);
+    frame.putInt(0, length);
+    frame.putInt(Integer.BYTES, (int) crc.getValue());
+    frame.flip();
+    if (buffer.remaining() < frame.remaining()) {
+      ByteBuffer bigger =
+          ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + frame.limit()));
+      buffer = bigger.put(buffer.flip());
+    } // if
+    buffer.put(frame);
+  } // record(byte, Block)
+
+  /**
+   * Add a record and decide when to acknowledge it.
+   *
+   * @param kind the kind of record.
+   * @param blk the block, or null for records without one.
+   * @return a future completed once the record is as durable as promised.
+   * @throws IllegalStateException if the journal is closed, or if the
+   *   record removes a block the journal does not hold.
+   */
+  synchronized CompletableFuture<Void> submit(byte kind, Block blk) {
+    if (closed) {
+      throw new IllegalStateException("The journal is closed.");
+    } else if (kind == RECORD_REMOVE && held == 0) {
+      throw new IllegalStateException("The journal holds no block to remove.");
+    } else if (failure != null) {
+      return CompletableFuture.failedFuture(failure);
+    } // if
+    held += (kind == RECORD_REMOVE) ? -1 : 1;
+    record(kind, blk);
+    if (durability == Durability.PER_BLOCK) {
+      try {
+        writeOut(buffer);
+        force();
+        return CompletableFuture.completedFuture(null);
+      } catch (IOException e) {
+        failure = e;
+        return CompletableFuture.failedFuture(e);
+      } // try/catch
+    } // if
+    if (pendingBlocks++ == 0) {
+      oldest = System.nanoTime();
+      notifyAll();
+    } else if (pendingBlocks >= batchBlocks) {
+      notifyAll();
+    } // if
+    if (durability == Durability.NONE) {
+      return CompletableFuture.completedFuture(null);
+    } // if
+    CompletableFuture<Void> ack = new CompletableFuture<Void>();
+    waiting.add(ack);
+    return ack;
+  } // submit(byte, Block)
+
+  /**
+   * Write out and clear a buffer of frames.
+   *
+   * @param out the buffer, ready for writing into.
+   * @throws IOException if the file cannot be written.
+   */
+  void writeOut(ByteBuffer out) throws IOException {
+    out.flip();
+    while (out.hasRemaining()) {
+      channel.write(out);
+    } // while
+    out.clear();
+  } // writeOut(ByteBuffer)
+
+  /**
+   * Force the file to the disk.
+   *
+   * @throws IOException if the file cannot be forced.
+   */
+  void force() throws IOException {
+    channel.force(false);
+    forces.incrementAndGet();
+  } // force()
+
+  /**
+   * Wait until a batch should be flushed or the journal is closed. Only
+   * call while holding the lock.
+   *
+   * @throws InterruptedException if we are interrupted while waiting.
+   */
+  void awaitBatch() throws InterruptedException {
+    while (!closed && !flushRequested && pendingBlocks < batchBlocks) {
+      if (pendingBlocks == 0) {
+        wait();
+      } else {
+        long left = oldest + maxDelay - System.nanoTime();
+        if (left <= 0) {
+          return;
+        } // if
+        TimeUnit.NANOSECONDS.timedWait(this, left);
+      } // if
+    } // while
+  } // awaitBatch()
+
+  /**
+   * Write batches until the journal is closed and everything waiting has
+   * been written. Runs in the flusher thread.
+   */
+  void run() {
+    ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER_SIZE);
+    while (true) {
+      ByteBuffer out;
+      ArrayList<CompletableFuture<Void>> acks;
+      synchronized (this) {
+        try {
+          awaitBatch();
+        } catch (InterruptedException e) {
+          closed = true;
+        } // try/catch
+        if (closed && buffer.position() == 0 && waiting.isEmpty()) {
+          return;
+        } // if
+        out = buffer;
+        buffer = spare;
+        acks = waiting;
+        waiting = new ArrayList<CompletableFuture<Void>>();
+        pendingBlocks = 0;
+        flushRequested = false;
+      } // synchronized
+      try {
+        writeOut(out);
+        if (!acks.isEmpty()) {
+          force();
+        } // if
+      } catch (IOException e) {
+        synchronized (this) {
+          failure = e;
+          acks.addAll(waiting);
+          waiting.clear();
+        } // synchronized
+        for (CompletableFuture<Void> ack : acks) {
+          ack.completeExceptionally(e);
+        } // for
+        return;
+      } // try/catch
+      for (CompletableFuture<Void> ack : acks) {
+        ack.complete(null);
+      } // for
+      spare = out;
+    } // while
+  } // run()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine whether the journal has been closed.
+   *
+   * @return true if it has been closed and false otherwise.
+   */
+  public synchronized boolean isClosed() {
+    return closed;
+  } // isClosed()
+
+  /**
+   * Get the number of blocks the journal holds: those written (including
+   * the ones already in the file when it was opened), less those removed.
+   * Blocks a chain held before the journal was attached are not counted,
+   * so the chain cannot remove them while the journal is attached.
+   *
+   * @return the number of blocks.
+   */
+  public synchronized int held() {
+    return held;
+  } // held()
+
+  /**
+   * Add a block to the journal.
+   *
+   * @param blk
+   *   The block appended to the chain.
+   *
+   * @return a future completed once the block is as durable as the
+   *   journal promises, or completed exceptionally if it cannot be written.
+   *
+   * @throws IllegalStateException
+   *   If the journal is closed.
+   */
+  public CompletableFuture<Void> write(Block blk) {
+    return submit(RECORD_BLOCK, blk);
+  } // write(Block)
+
+  /**
+   * Note that the last block was removed from the chain.
+   *
+   * @return a future completed once the removal is as durable as the
+   *   journal promises, or completed exceptionally if it cannot be written.
+   *
+   * @throws IllegalStateException
+   *   If the journal is closed or holds no blocks.
+   */
+  public CompletableFuture<Void> remove() {
+    return submit(RECORD_REMOVE, null);
+  } // remove()
+
+  /**
+   * Write and force everything added so far, without waiting for the
+   * batch to fill, whatever the durability.
+   *
+   * @return a future completed once it is all on the disk.
+   *
+   * @throws IllegalStateException
+   *   If the journal is closed.
+   */
+  public synchronized CompletableFuture<Void> flush() {
+    if (closed) {
+      throw new IllegalStateException("The journal is closed.");
+    } else if (failure != null) {
+      return CompletableFuture.failedFuture(failure);
+    } else if (durability == Durability.PER_BLOCK) {
+      return CompletableFuture.completedFuture(null);
+    } // if
+    CompletableFuture<Void> ack = new CompletableFuture<Void>();
+    waiting.add(ack);
+    flushRequested = true;
+    notifyAll();
+    return ack;
+  } // flush()
+
+  /**
+   * Get the durability of the journal.
+   *
+   * @return when writes are acknowledged.
+   */
+  public Durability durability() {
+    return this.durability;
+  } // durability()
+
+  /**
+   * Get the number of times the journal has been forced to the disk.
+   *
+   * @return the number of forces.
+   */
+  public long forces() {
+    return this.forces.get();
+  } // forces()
+
+  /**
+   * Write everything still waiting and close the file. Writes still
+   * waiting for a batch are acknowledged first.
+   *
+   * @throws IOException
+   *   If something could not be written.
+   */
+  public void close() throws IOException {
+    synchronized (this) {
+      closed = true;
+      notifyAll();
+    } // synchronized
+    if (flusher != null) {
+      try {
+        flusher.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } // try/catch
+    } // if
+    synchronized (this) {
+      try {
+        if (failure == null && buffer.position() > 0) {
+          writeOut(buffer);
+          force();
+        } // if
+      } finally {
+        channel.close();
+      } // try/finally
+      if (failure != null) {
+        throw failure;
+      } // if
+    } // synchronized
+  } // close()
+} // class BlockJournal
@@ -0,0 +1,336 @@
+package edu.grinnell.csc207.blockchains;
+
+import edu.grinnell.csc207.metrics.Metrics;
+import java.security.MessageDigest;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Turns a queue of transactions into blocks at the end of a chain, keeping
+ * a pool of threads busy with mining.
+ *
+ * The nonce search for each block is split across the pool, with thread k
+ * of n trying nonces k, k + n, k + 2n, and so on. Each thread stops once
+ * it passes the smallest valid nonce found so far, so the block is the
+ * same one that Block.mine would find, just sooner. While the pool
+ * searches, the producer takes the next transaction, checks it, and
+ * starts its hash (block number and transaction), so that only the
+ * previous hash has to be added once the current block is appended.
+ *
+ * Only the producer should append to the chain while it is running.
+ *
+ * @author Mitch Paiva
+ */
+public class BlockProducer {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The transaction that tells the producer to stop.
+   */
+  static final Transaction STOP = new Transaction("", "", 0);
+
+  /**
+   * The number of nanoseconds in a second.
+   */
+  static final double NANOS_PER_SECOND = 1e9;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain we add blocks to.
+   */
+  BlockChain chain;
+
+  /**
+   * The number of threads searching for nonces.
+   */
+  int threads;
+
+  /**
+   * The threads searching for nonces.
+   */
+  ExecutorService workers;
+
+  /**
+   * The transactions waiting to go into blocks.
+   */
+  BlockingQueue<Transaction> pending;
+
+  /**
+   * The thread taking transactions from the queue.
+   */
+  Thread producer;
+
+  /**
+   * The number of blocks appended.
+   */
+  AtomicLong produced;
+
+  /**
+   * The number of transactions rejected, or whose blocks could not be
+   * mined or appended.
+   */
+  AtomicLong rejected;
+
+  /**
+   * When the producer started, from System.nanoTime.
+   */
+  volatile long startTime;
+
+  /**
+   * When the producer stopped, from System.nanoTime, or 0 if it has not.
+   */
+  volatile long stopTime;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new producer for a chain. It does nothing until started.
+   *
+   * @param chain
+   *   The chain to add blocks to.
+   * @param threads
+   *   The number of threads to mine with.
+   */
+  public BlockProducer(BlockChain chain, int threads) {
+    this.chain = chain;
+    this.threads = threads;
+    this.workers = Executors.newFixedThreadPool(threads, (task) -> {
+      Thread thread = new Thread(task, "miner");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.pending = new LinkedBlockingQueue<Transaction>();
+    this.produced = new AtomicLong();
+    this.rejected = new AtomicLong();
+  } // BlockProducer(BlockChain, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine whether a transaction could ever go in a block, without
+   * looking at the balances.
+   *
+   * @param transaction the transaction.
+   * @return true if it could and false otherwise.
+   */
+  static boolean wellFormed(Transaction transaction) {
+    return transaction.getAmount() >= 0 && !transaction.getTarget().equals("");
+  } // wellFormed(Transaction)
+
+  /**
+   * Start the hash of the block for a transaction, or reject the
+   * transaction.
+   *
+   * @param transaction the transaction.
+   * @param num the number of the block it will go in.
+   * @return the digest of the block number and transaction, or null if
+   *   the transaction was rejected or tells us to stop.
+   */
+  MessageDigest prepare(Transaction transaction, int num) {
+    if (transaction == STOP) {
+      return null;
+    } else if (!wellFormed(transaction)) {
+      rejected.incrementAndGet();
+      return null;
+    } // if
+    return Block.headerDigest(chain.digests, num, transaction);
+  } // prepare(Transaction, int)
+
+  /**
+   * Search part of the nonces for a block.
+   *
+   * @param prefix the digest of everything but the nonce.
+   * @param first the first nonce to try.
+   * @param best the smallest valid nonce found so far, by any thread.
+   * @param attempts the hashes computed, by all threads.
+   */
+  void search(MessageDigest prefix, long first, AtomicLong best, LongAdder attempts) {
+    byte[] scratch = new byte[Long.BYTES];
+    long tried = 0;
+    for (long nonce = first; nonce < best.get(); nonce += threads) {
+      tried++;
+      if (chain.validator.isValid(Block.finishHash(chain.digests, prefix, nonce, scratch))) {
+        best.accumulateAndGet(nonce, Math::min);
+        break;
+      } // if
+    } // for
+    attempts.add(tried);
+  } // search(MessageDigest, long, AtomicLong, LongAdder)
+
+  /**
+   * Mine the block for a transaction, using the whole pool.
+   *
+   * @param transaction the transaction.
+   * @param header the digest from prepare.
+   * @param overlap what to do in this thread while the pool searches.
+   * @return the mined block.
+   */
+  Block mine(Transaction transaction, MessageDigest header, Runnable overlap) {
+    long start = System.nanoTime();
+    int num = chain.getSize();
+    Hash prevHash = chain.getHash();
+    header.update(prevHash.getBytes());
+    AtomicLong best = new AtomicLong(Long.MAX_VALUE);
+    LongAdder attempts = new LongAdder();
+    CompletableFuture<?>[] parts = new CompletableFuture<?>[threads];
+    for (int k = 0; k < threads; k++) {
+      MessageDigest prefix;
+      try {
+        prefix = (MessageDigest) header.clone();
+      } catch (CloneNotSupportedException e) {
+        throw new IllegalStateException("Digests must be cloneable to mine.", e);
+      } // try/catch
+      long first = k;
+      parts[k] = CompletableFuture.runAsync(() -> search(prefix, first, best, attempts), workers);
+    } // for
+    overlap.run();
+    CompletableFuture.allOf(parts).join();
+    long nonce = best.get();
+    if (Metrics.on()) {
+      Metrics.HASHES.add(attempts.sum());
+      Metrics.ATTEMPTS.record(nonce + 1);
+      Metrics.MINE_TIME.record(System.nanoTime() - start);
+    } // if
+    return new Block(num, transaction, prevHash, nonce,
+        Block.finishHash(chain.digests, header, nonce, new byte[Long.BYTES]));
+  } // mine(Transaction, MessageDigest, Runnable)
+
+  /**
+   * Take transactions from the queue and turn them into blocks until told
+   * to stop.
+   */
+  void run() {
+    try {
+      Transaction next = pending.take();
+      MessageDigest nextHeader = prepare(next, chain.getSize());
+      while (next != STOP) {
+        Transaction current = next;
+        MessageDigest header = nextHeader;
+        next = null;
+        nextHeader = null;
+        if (header != null && chain.validTransaction(current)) {
+          int num = chain.getSize();
+          Transaction[] ahead = new Transaction[1];
+          MessageDigest[] aheadHeader = new MessageDigest[1];
+          try {
+            Block blk = mine(current, header, () -> {
+              ahead[0] = pending.poll();
+              if (ahead[0] != null) {
+                aheadHeader[0] = prepare(ahead[0], num + 1);
+              } // if
+            });
+            chain.append(blk);
+            produced.incrementAndGet();
+          } catch (RuntimeException e) {
+            // The block could not be mined or appended; skip it and go on.
+            rejected.incrementAndGet();
+            if (aheadHeader[0] != null) {
+              aheadHeader[0] = prepare(ahead[0], chain.getSize());
+            } // if
+          } // try/catch
+          next = ahead[0];
+          nextHeader = aheadHeader[0];
+        } else if (header != null) {
+          rejected.incrementAndGet();
+        } // if
+        if (next == null) {
+          next = pending.take();
+          nextHeader = prepare(next, chain.getSize());
+        } // if
+      } // while
+    } catch (InterruptedException e) {
+      // Stop early.
+    } finally {
+      stopTime = System.nanoTime();
+    } // try/finally
+  } // run()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Start turning transactions into blocks.
+   *
+   * @throws IllegalStateException
+   *   If the producer has already been started.
+   */
+  public synchronized void start() {
+    if (producer != null) {
+      throw new IllegalStateException("The producer has already been started.");
+    } // if
+    startTime = System.nanoTime();
+    producer = new Thread(this::run, "block-producer");
+    producer.start();
+  } // start()
+
+  /**
+   * Add a transaction to the end of the queue.
+   *
+   * @param transaction
+   *   The transaction.
+   */
+  public void submit(Transaction transaction) {
+    pending.add(transaction);
+  } // submit(Transaction)
+
+  /**
+   * Finish the transactions already submitted, then stop.
+   *
+   * @throws InterruptedException
+   *   If we are interrupted while waiting.
+   */
+  public void finish() throws InterruptedException {
+    pending.add(STOP);
+    if (producer != null) {
+      producer.join();
+    } // if
+    workers.shutdown();
+  } // finish()
+
+  /**
+   * Get the number of blocks appended so far.
+   *
+   * @return the number of blocks.
+   */
+  public long produced() {
+    return produced.get();
+  } // produced()
+
+  /**
+   * Get the number of transactions rejected so far, because they were
+   * malformed, the source could not afford them, or their blocks could
+   * not be mined or appended.
+   *
+   * @return the number of transactions.
+   */
+  public long rejected() {
+    return rejected.get();
+  } // rejected()
+
+  /**
+   * Get the number of blocks appended per second since the producer was
+   * started (until it stopped, if it has).
+   *
+   * @return the rate.
+   */
+  public double blocksPerSecond() {
+    long end = (stopTime == 0) ? System.nanoTime() : stopTime;
+    return (startTime == 0 || end == startTime)
+        ? 0 : produced.get() * NANOS_PER_SECOND / (end - startTime);
+  } // blocksPerSecond()
+} // class BlockProducer
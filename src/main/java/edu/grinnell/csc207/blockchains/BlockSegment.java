@@ -0,0 +1,294 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Encodes a run of consecutive blocks as one compressed, self-contained
+ * segment, for archives and for sending blocks between machines.
+ *
+ * A segment starts with a short uncompressed header (magic number,
+ * version, number of the first block, number of blocks, and the lengths
+ * of the payload before and after compression), so that it can be
+ * indexed without being decompressed. The payload is compressed with
+ * Deflate at its fastest setting. Inside, the users of the segment are
+ * listed once and the transactions refer to them by id, the blocks are
+ * stored a field at a time (all the block numbers, then all the sources,
+ * and so on; version 2 adds the sequence numbers of the transactions) so
+ * that like values sit together, block numbers are stored as the
+ * difference from one more than the number before, and only the
+ * first previous hash is stored, since the rest are the hashes of the
+ * blocks before them. The hashes themselves are random and do not
+ * compress, so they are most of a segment.
+ *
+ * @author Mitch Paiva
+ */
+public class BlockSegment {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The magic number at the start of a segment ("BSEG").
+   */
+  public static final int MAGIC = 0x42534547;
+
+  /**
+   * The version of the segment format.
+   */
+  public static final byte VERSION = 2;
+
+  /**
+   * The first version with sequence numbers.
+   */
+  static final byte SEQ_VERSION = 2;
+
+  /**
+   * The number of bytes in the header.
+   */
+  public static final int HEADER_SIZE = 5 * Integer.BYTES + 1;
+
+  /**
+   * The most bytes a varint takes.
+   */
+  static final int MAX_VARINT = 10;
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Encode a run of consecutive blocks.
+   *
+   * @param blocks
+   *   The blocks, in order. Each must follow the one before it.
+   *
+   * @return the segment.
+   *
+   * @throws IllegalArgumentException
+   *   If there are no blocks, a block does not follow the one before it,
+   *   or the hashes are not all the same length.
+   */
+  public static byte[] encode(List<Block> blocks) {
+    int count = blocks.size();
+    if (count == 0) {
+      throw new IllegalArgumentException("A segment needs at least one block.");
+    } // if
+    int hashLength = blocks.get(0).getHash().length();
+    UserDictionary users = new UserDictionary();
+    int[] sources = new int[count];
+    int[] targets = new int[count];
+    for (int i = 0; i < count; i++) {
+      Block blk = blocks.get(i);
+      if (blk.getHash().length() != hashLength
+          || (i > 0 && !blk.getPrevHash().equals(blocks.get(i - 1).getHash()))) {
+        throw new IllegalArgumentException("Block " + i + " does not follow the one before it.");
+      } // if
+      sources[i] = users.intern(blk.getTransaction().getSource());
+      targets[i] = users.intern(blk.getTransaction().getTarget());
+    } // for
+
+    // Work out the most room the payload could need.
+    int bound = 2 * MAX_VARINT + blocks.get(0).getPrevHash().length()
+        + count * (6 * MAX_VARINT + hashLength);
+    for (int id = 0; id < users.size(); id++) {
+      bound += MAX_VARINT + users.encoding(id).length;
+    } // for
+    ByteBuffer raw = ByteBuffer.allocate(bound);
+
+    BlockCodec.putVarLong(raw, users.size());
+    for (int id = 0; id < users.size(); id++) {
+      byte[] name = users.encoding(id);
+      BlockCodec.putVarLong(raw, name.length);
+      raw.put(name);
+    } // for
+    BlockCodec.putVarLong(raw, hashLength);
+    BlockCodec.writeHash(raw, blocks.get(0).getPrevHash());
+    for (int i = 1; i < count; i++) {
+      BlockCodec.putSignedVarInt(raw, blocks.get(i).getNum() - blocks.get(i - 1).getNum() - 1);
+    } // for
+    for (int i = 0; i < count; i++) {
+      BlockCodec.putVarLong(raw, sources[i]);
+    } // for
+    for (int i = 0; i < count; i++) {
+      BlockCodec.putVarLong(raw, targets[i]);
+    } // for
+    for (Block blk : blocks) {
+      BlockCodec.putSignedVarInt(raw, blk.getTransaction().getAmount());
+    } // for
+    for (Block blk : blocks) {
+      BlockCodec.putVarLong(raw, blk.getTransaction().getSeq());
+    } // for
+    for (Block blk : blocks) {
+      BlockCodec.putVarLong(raw, blk.getNonce());
+    } // for
+    for (Block blk : blocks) {
+      raw.put(blk.getHash().getBytes());
+    } // for
+
+    Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    deflater.setInput(raw.array(), 0, raw.position());
+    deflater.finish();
+    byte[] compressed = new byte[raw.position() + raw.position() / 100 + 64];
+    int length = 0;
+    while (!deflater.finished()) {
+      if (length == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      } // if
+      length += deflater.deflate(compressed, length, compressed.length - length);
+    } // while
+    deflater.end();
+
+    ByteBuffer segment = ByteBuffer.allocate(HEADER_SIZE + length);
+    segment.putInt(MAGIC);
+    segment.put(VERSION);
+    segment.putInt(blocks.get(0).getNum());
+    segment.putInt(count);
+    segment.putInt(raw.position());
+    segment.putInt(length);
+    segment.put(compressed, 0, length);
+    return segment.array();
+  } // encode(List<Block>)
+
+  /**
+   * Read and check the header of a segment.
+   *
+   * @param buf
+   *   The buffer holding the segment, which is advanced past the header.
+   *
+   * @return the number of the first block, the number of blocks, the
+   *   lengths of the payload before and after compression, and the
+   *   version.
+   *
+   * @throws IllegalArgumentException
+   *   If the buffer does not hold a segment we can read.
+   */
+  public static int[] readHeader(ByteBuffer buf) {
+    if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC) {
+      throw new IllegalArgumentException("Not a block segment.");
+    } // if
+    byte version = buf.get();
+    if (version < 1 || version > VERSION) {
+      throw new IllegalArgumentException("Unsupported block segment version " + version + ".");
+    } // if
+    return new int[] {buf.getInt(), buf.getInt(), buf.getInt(), buf.getInt(), version};
+  } // readHeader(ByteBuffer)
+
+  /**
+   * Decode a segment. The hashes are taken as written, not recomputed.
+   *
+   * @param segment
+   *   The segment.
+   *
+   * @return the blocks, in order.
+   *
+   * @throws IllegalArgumentException
+   *   If the segment is corrupt.
+   */
+  public static ArrayList<Block> decode(byte[] segment) {
+    ByteBuffer buf = ByteBuffer.wrap(segment);
+    int[] header = readHeader(buf);
+    int first = header[0];
+    int count = header[1];
+    if (count < 0 || header[2] < 0 || header[3] != buf.remaining()) {
+      throw new IllegalArgumentException("The block segment is corrupt.");
+    } // if
+    byte[] payload = new byte[header[2]];
+    Inflater inflater = new Inflater();
+    inflater.setInput(segment, buf.position(), header[3]);
+    try {
+      int length = 0;
+      while (length < payload.length && !inflater.finished()) {
+        int inflated = inflater.inflate(payload, length, payload.length - length);
+        if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+          break;
+        } // if
+        length += inflated;
+      } // while
+      if (length != payload.length) {
+        throw new IllegalArgumentException("The block segment is truncated.");
+      } // if
+    } catch (DataFormatException e) {
+      throw new IllegalArgumentException("The block segment is corrupt.");
+    } finally {
+      inflater.end();
+    } // try/finally
+
+    try {
+      return parse(ByteBuffer.wrap(payload), first, count, header[4]);
+    } catch (BufferUnderflowException e) {
+      throw new IllegalArgumentException("The block segment is truncated.");
+    } // try/catch
+  } // decode(byte[])
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Rebuild the blocks from a decompressed payload.
+   *
+   * @param raw the payload.
+   * @param first the number of the first block.
+   * @param count the number of blocks.
+   * @param version the version of the segment.
+   * @return the blocks, in order.
+   * @throws IllegalArgumentException if the payload is corrupt.
+   */
+  static ArrayList<Block> parse(ByteBuffer raw, int first, int count, int version) {
+    UserDictionary users = new UserDictionary();
+    int numUsers = (int) BlockCodec.getVarLong(raw);
+    for (int id = 0; id < numUsers; id++) {
+      byte[] name = new byte[BlockCodec.getLength(raw)];
+      raw.get(name);
+      users.intern(new String(name, StandardCharsets.UTF_8));
+    } // for
+    int hashLength = BlockCodec.getLength(raw);
+    Hash prevHash = BlockCodec.readHash(raw);
+    int[] nums = new int[count];
+    for (int i = 0; i < count; i++) {
+      nums[i] = (i == 0) ? first : nums[i - 1] + 1 + BlockCodec.getSignedVarInt(raw);
+    } // for
+    int[] sources = new int[count];
+    for (int i = 0; i < count; i++) {
+      sources[i] = (int) BlockCodec.getVarLong(raw);
+    } // for
+    int[] targets = new int[count];
+    for (int i = 0; i < count; i++) {
+      targets[i] = (int) BlockCodec.getVarLong(raw);
+    } // for
+    int[] amounts = new int[count];
+    for (int i = 0; i < count; i++) {
+      amounts[i] = BlockCodec.getSignedVarInt(raw);
+    } // for
+    long[] seqs = new long[count];
+    for (int i = 0; i < count && version >= SEQ_VERSION; i++) {
+      seqs[i] = BlockCodec.getVarLong(raw);
+    } // for
+    long[] nonces = new long[count];
+    for (int i = 0; i < count; i++) {
+      nonces[i] = BlockCodec.getVarLong(raw);
+    } // for
+    ArrayList<Block> blocks = new ArrayList<Block>(count);
+    for (int i = 0; i < count; i++) {
+      if (sources[i] < 0 || sources[i] >= users.size() || targets[i] < 0
+          || targets[i] >= users.size()) {
+        throw new IllegalArgumentException("Unknown user reference in block segment.");
+      } // if
+      byte[] hash = new byte[hashLength];
+      raw.get(hash);
+      Transaction transaction = new Transaction(users, sources[i], targets[i], amounts[i],
+          seqs[i]);
+      blocks.add(new Block(nums[i], transaction, prevHash, nonces[i], Hash.wrap(hash)));
+      prevHash = blocks.get(i).getHash();
+    } // for
+    return blocks;
+  } // parse(ByteBuffer, int, int, int)
+} // class BlockSegment
@@ -0,0 +1,119 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A spliterator over a range of a block store. Since every block can be
+ * reached by index, splitting just cuts the range in half, so parallel
+ * streams divide the blocks evenly.
+ *
+ * @author Mitch Paiva
+ */
+class BlockSpliterator implements Spliterator<Block> {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The store holding the blocks.
+   */
+  BlockStore store;
+
+  /**
+   * The index of the next block to visit.
+   */
+  int index;
+
+  /**
+   * One past the index of the last block to visit.
+   */
+  int fence;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a spliterator over part of a store.
+   *
+   * @param store
+   *   The store holding the blocks.
+   * @param from
+   *   The index of the first block to visit.
+   * @param to
+   *   One past the index of the last block to visit.
+   */
+  BlockSpliterator(BlockStore store, int from, int to) {
+    this.store = store;
+    this.index = from;
+    this.fence = to;
+  } // BlockSpliterator(BlockStore, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Visit the next block, if there is one.
+   *
+   * @param action
+   *   What to do with the block.
+   *
+   * @return true if there was a block to visit and false otherwise.
+   */
+  public boolean tryAdvance(Consumer<? super Block> action) {
+    if (this.index >= this.fence) {
+      return false;
+    } // if
+    action.accept(this.store.get(this.index++));
+    return true;
+  } // tryAdvance(Consumer<? super Block>)
+
+  /**
+   * Visit all the remaining blocks.
+   *
+   * @param action
+   *   What to do with each block.
+   */
+  public void forEachRemaining(Consumer<? super Block> action) {
+    while (this.index < this.fence) {
+      action.accept(this.store.get(this.index++));
+    } // while
+  } // forEachRemaining(Consumer<? super Block>)
+
+  /**
+   * Split off the first half of the remaining blocks.
+   *
+   * @return a spliterator for the first half, or null if there are too
+   *   few blocks left to split.
+   */
+  public Spliterator<Block> trySplit() {
+    int mid = (this.index + this.fence) >>> 1;
+    if (mid <= this.index) {
+      return null;
+    } // if
+    Spliterator<Block> prefix = new BlockSpliterator(this.store, this.index, mid);
+    this.index = mid;
+    return prefix;
+  } // trySplit()
+
+  /**
+   * Determine how many blocks are left to visit.
+   *
+   * @return the number of blocks left.
+   */
+  public long estimateSize() {
+    return this.fence - this.index;
+  } // estimateSize()
+
+  /**
+   * Describe this spliterator. It is not IMMUTABLE, since the chain can
+   * still append or remove blocks while it is being traversed.
+   *
+   * @return the characteristics of this spliterator.
+   */
+  public int characteristics() {
+    return ORDERED | SIZED | SUBSIZED | NONNULL;
+  } // characteristics()
+} // class BlockSpliterator
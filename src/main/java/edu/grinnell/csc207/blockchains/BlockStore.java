@@ -0,0 +1,64 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Places to keep the blocks of a blockchain, indexed by block number.
+ *
+ * @author Mitch Paiva
+ */
+public interface BlockStore {
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  int size();
+
+  /**
+   * Get one block.
+   *
+   * @param i
+   *   The index of the block, between 0 (inclusive) and size()
+   *   (exclusive).
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If i is not a valid index.
+   */
+  Block get(int i);
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  void add(Block blk);
+
+  /**
+   * Remove the last block from the store, if there is one.
+   */
+  void removeLast();
+
+  /**
+   * Get the index of the first block whose body can be read. Stores that
+   * keep every block start at 0.
+   *
+   * @return the index.
+   */
+  default int first() {
+    return 0;
+  } // first()
+
+  /**
+   * Create a new, empty store that keeps blocks the same way as this one,
+   * for moving some of its blocks into. Stores that keep blocks as Block
+   * objects can use the default, a ListBlockStore.
+   *
+   * @return the new store.
+   */
+  default BlockStore emptyCopy() {
+    return new ListBlockStore();
+  } // emptyCopy()
+
+} // interface BlockStore
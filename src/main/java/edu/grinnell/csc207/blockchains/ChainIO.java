@@ -0,0 +1,304 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+
+/**
+ * Streaming export and import of whole blockchains.
+ *
+ * An exported chain is the BlockCodec header followed by one frame per
+ * block (an int length and the encoded block) and a trailer (a zero length
+ * and the number of blocks). Blocks are written and read one frame at a
+ * time through a single reused buffer, so memory use does not grow with the
+ * length of the chain. Since the streams block when the other end falls
+ * behind, a slow reader or writer simply slows the transfer down.
+ *
+ * @author Mitch Paiva
+ */
+public class ChainIO {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * How many blocks go by between progress reports.
+   */
+  public static final int PROGRESS_INTERVAL = 10000;
+
+  /**
+   * How many blocks are verified together when importing with verification.
+   */
+  static final int IMPORT_BATCH_SIZE = 1024;
+
+  /**
+   * The initial size of the frame buffer.
+   */
+  static final int INITIAL_FRAME_SIZE = 256;
+
+  /**
+   * The size of the stream buffers.
+   */
+  static final int STREAM_BUFFER_SIZE = 1 << 16;
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Report progress, if anyone is listening.
+   *
+   * @param listener the listener, or null.
+   * @param blocks the number of blocks handled so far.
+   * @param bytes the number of bytes handled so far.
+   */
+  static void report(ProgressListener listener, long blocks, long bytes) {
+    if (listener != null) {
+      listener.progress(blocks, bytes);
+    } // if
+  } // report(ProgressListener, long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Write a chain to a stream. The stream is flushed but not closed.
+   *
+   * @param chain
+   *   The chain to write.
+   * @param out
+   *   Where to write it.
+   * @param listener
+   *   Who to tell about progress (or null).
+   *
+   * @return the number of blocks written.
+   *
+   * @throws IOException
+   *   If the stream cannot be written.
+   */
+  public static long export(BlockChain chain, OutputStream out, ProgressListener listener)
+      throws IOException {
+    DataOutputStream data =
+        new DataOutputStream(new BufferedOutputStream(out, STREAM_BUFFER_SIZE));
+    BlockCodec codec = new BlockCodec();
+    ByteBuffer frame = ByteBuffer.allocate(INITIAL_FRAME_SIZE);
+    codec.writeHeader(frame);
+    data.write(frame.array(), 0, frame.position());
+
+    long count = 0;
+    long bytes = frame.position();
+    Iterator<Block> blocks = chain.blocks();
+    while (blocks.hasNext()) {
+      Block blk = blocks.next();
+      frame.clear();
+      while (true) {
+        try {
+          codec.writeBlock(frame, blk);
+          break;
+        } catch (BufferOverflowException e) {
+          frame = ByteBuffer.allocate(frame.capacity() * 2);
+        } // try/catch
+      } // while
+      data.writeInt(frame.position());
+      data.write(frame.array(), 0, frame.position());
+      bytes += Integer.BYTES + frame.position();
+      if (++count % PROGRESS_INTERVAL == 0) {
+        report(listener, count, bytes);
+      } // if
+    } // while
+    data.writeInt(0);
+    data.writeLong(count);
+    data.flush();
+    report(listener, count, bytes + Integer.BYTES + Long.BYTES);
+    return count;
+  } // export(BlockChain, OutputStream, ProgressListener)
+
+  /**
+   * Read a chain from a stream written by export. The stream is not closed.
+   *
+   * @param in
+   *   Where to read the chain from.
+   * @param check
+   *   The validator for the chain.
+   * @param verify
+   *   Whether to check every block as it is appended. If false, the
+   *   blocks are trusted as written.
+   * @param listener
+   *   Who to tell about progress (or null).
+   *
+   * @return the chain read.
+   *
+   * @throws IOException
+   *   If the stream cannot be read or does not hold a chain that matches
+   *   the validator.
+   */
+  public static BlockChain importChain(InputStream in, HashValidator check, boolean verify,
+      ProgressListener listener) throws IOException {
+    return importChain(in, check, DigestProviders.SHA256, verify, listener);
+  } // importChain(InputStream, HashValidator, boolean, ProgressListener)
+
+  /**
+   * Read a chain whose blocks are hashed in a particular way from a stream
+   * written by export. The stream is not closed.
+   *
+   * @param in
+   *   Where to read the chain from.
+   * @param check
+   *   The validator for the chain.
+   * @param hashing
+   *   How the blocks are hashed.
+   * @param verify
+   *   Whether to check every block as it is appended. If false, the
+   *   blocks are trusted as written.
+   * @param listener
+   *   Who to tell about progress (or null).
+   *
+   * @return the chain read.
+   *
+   * @throws IOException
+   *   If the stream cannot be read or does not hold a chain that matches
+   *   the validator and hash.
+   */
+  public static BlockChain importChain(InputStream in, HashValidator check,
+      DigestProvider hashing, boolean verify, ProgressListener listener) throws IOException {
+    return importChain(in, check, new ListBlockStore(), hashing, verify, listener);
+  } // importChain(InputStream, HashValidator, DigestProvider, boolean, ProgressListener)
+
+  /**
+   * Read a chain from a stream written by export into a particular store,
+   * so that a long chain can go straight into a ColumnarBlockStore or an
+   * OffHeapBlockStore instead of the heap. The stream is not closed.
+   *
+   * @param in
+   *   Where to read the chain from.
+   * @param check
+   *   The validator for the chain.
+   * @param blocks
+   *   The empty store to keep the blocks in.
+   * @param hashing
+   *   How the blocks are hashed.
+   * @param verify
+   *   Whether to check every block as it is appended. If false, the
+   *   blocks are trusted as written.
+   * @param listener
+   *   Who to tell about progress (or null).
+   *
+   * @return the chain read.
+   *
+   * @throws IOException
+   *   If the stream cannot be read or does not hold a chain that matches
+   *   the validator and hash.
+   */
+  public static BlockChain importChain(InputStream in, HashValidator check, BlockStore blocks,
+      DigestProvider hashing, boolean verify, ProgressListener listener) throws IOException {
+    DataInputStream data =
+        new DataInputStream(new BufferedInputStream(in, STREAM_BUFFER_SIZE));
+    BlockCodec codec = new BlockCodec();
+    ByteBuffer frame = ByteBuffer.allocate(INITIAL_FRAME_SIZE);
+    data.readFully(frame.array(), 0, Integer.BYTES + 1);
+    try {
+      codec.readHeader(frame);
+    } catch (IllegalArgumentException e) {
+      throw new IOException(e.getMessage());
+    } // try/catch
+
+    BlockChain chain = new BlockChain(check, blocks, hashing);
+    ArrayList<Block> batch = new ArrayList<Block>();
+    long count = 0;
+    long bytes = Integer.BYTES + 1;
+    int length;
+    while ((length = data.readInt()) != 0) {
+      if (length < 0) {
+        throw new IOException("Block " + count + " is corrupt.");
+      } // if
+      frame = readFrame(data, frame, length);
+      bytes += Integer.BYTES + length;
+      Block blk;
+      try {
+        blk = codec.readBlock(frame);
+      } catch (RuntimeException e) {
+        throw new IOException("Block " + count + " is corrupt.");
+      } // try/catch
+      if (count == 0) {
+        if (!blk.getHash().equals(chain.getHash())) {
+          throw new IOException("The first block does not match the validator.");
+        } // if
+      } else if (!verify) {
+        chain.appendUnchecked(blk);
+      } else {
+        batch.add(blk);
+        if (batch.size() == IMPORT_BATCH_SIZE) {
+          appendBatch(chain, batch, count - batch.size() + 1);
+        } // if
+      } // if
+      if (++count % PROGRESS_INTERVAL == 0) {
+        report(listener, count, bytes);
+      } // if
+    } // while
+    appendBatch(chain, batch, count - batch.size());
+    if (data.readLong() != count) {
+      throw new IOException("The stream ended early.");
+    } // if
+    report(listener, count, bytes + Integer.BYTES + Long.BYTES);
+    return chain;
+  } // importChain(InputStream, HashValidator, BlockStore, DigestProvider, boolean, ...)
+
+  /**
+   * Read one frame into the buffer, growing it as the bytes arrive rather
+   * than all at once, so that a corrupt length in a short stream cannot
+   * make us allocate more than twice what is actually there.
+   *
+   * @param data the stream.
+   * @param frame the buffer to reuse, if it is big enough.
+   * @param length the length of the frame, which must not be negative.
+   * @return the buffer holding the frame, from position 0 to its limit.
+   * @throws IOException if the stream ends before the frame does.
+   */
+  static ByteBuffer readFrame(DataInputStream data, ByteBuffer frame, int length)
+      throws IOException {
+    int read = 0;
+    while (read < length) {
+      if (read == frame.capacity()) {
+        ByteBuffer bigger = ByteBuffer.allocate((int) Math.min(length, 2L * frame.capacity()));
+        bigger.put(frame.array(), 0, read);
+        frame = bigger;
+      } // if
+      int chunk = Math.min(length, frame.capacity()) - read;
+      data.readFully(frame.array(), read, chunk);
+      read += chunk;
+    } // while
+    frame.clear();
+    frame.limit(length);
+    return frame;
+  } // readFrame(DataInputStream, ByteBuffer, int)
+
+  /**
+   * Append and clear a batch of imported blocks.
+   *
+   * @param chain the chain being imported.
+   * @param batch the blocks to append.
+   * @param first the position of the first block of the batch in the stream.
+   * @throws IOException if any block in the batch is bad.
+   */
+  static void appendBatch(BlockChain chain, ArrayList<Block> batch, long first)
+      throws IOException {
+    if (batch.isEmpty()) {
+      return;
+    } // if
+    int bad = chain.firstInvalid(batch);
+    if (bad >= 0) {
+      throw new IOException("Block " + (first + bad) + " is invalid.");
+    } // if
+    chain.appendAllUnchecked(batch);
+    batch.clear();
+  } // appendBatch(BlockChain, ArrayList<Block>, long)
+} // class ChainIO
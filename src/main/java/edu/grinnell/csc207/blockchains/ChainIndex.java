@@ -0,0 +1,418 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Indices for answering range and aggregate questions about the
+ * transactions in a chain ("how much moved between blocks 10000 and
+ * 20000?", "who received the most?", "what is the net flow from A to
+ * B?") without scanning the blocks.
+ *
+ * Every question is over a range of block numbers, from (inclusive) to
+ * (exclusive). The index keeps running totals: one for every transaction,
+ * one for what each user sent and received, and one for each pair of
+ * users that traded. Each running total is a list of (block number,
+ * total so far) entries in block order, so the total over a range is the
+ * difference of two entries found by binary search, and adding a block
+ * only appends to a few lists. Questions about a single total thus take
+ * logarithmic time; questions grouped by user take logarithmic time per
+ * user, however many blocks there are.
+ *
+ * The index counts the transactions as written, including deposits (whose
+ * source is the empty string and is not counted as a sender) and
+ * transfers that the balances ignore. It is kept up to date by the chain
+ * it came from (see BlockChain.queries), and only covers the blocks whose
+ * bodies the chain held when it was built.
+ *
+ * @author Mitch Paiva
+ */
+public class ChainIndex {
+  // +-------------+-------------------------------------------------
+  // | Local class |
+  // +-------------+
+
+  /**
+   * A running total over the blocks, with an entry for each block that
+   * changed it.
+   */
+  static class Series {
+    /**
+     * The number of entries, one per block.
+     */
+    int size;
+
+    /**
+     * The number of each block, in increasing order.
+     */
+    int[] nums;
+
+    /**
+     * The total up to and including each block.
+     */
+    long[] sums;
+
+    /**
+     * Create an empty series.
+     */
+    Series() {
+      this.nums = new int[4];
+      this.sums = new long[4];
+    } // Series()
+
+    /**
+     * Add to the total at a block after every block already in the series.
+     *
+     * @param num the number of the block.
+     * @param amount the amount to add.
+     */
+    void add(int num, long amount) {
+      if (size == nums.length) {
+        nums = Arrays.copyOf(nums, size * 2);
+        sums = Arrays.copyOf(sums, size * 2);
+      } // if
+      nums[size] = num;
+      sums[size] = (size == 0 ? 0 : sums[size - 1]) + amount;
+      size++;
+    } // add(int, long)
+
+    /**
+     * Forget the entry for a block, if it is the last one.
+     *
+     * @param num the number of the block.
+     */
+    void remove(int num) {
+      if (size > 0 && nums[size - 1] == num) {
+        size--;
+      } // if
+    } // remove(int)
+
+    /**
+     * Find how many entries are for blocks before a block number.
+     *
+     * @param num the block number.
+     * @return the number of entries.
+     */
+    int before(int num) {
+      int lo = 0;
+      int hi = size;
+      while (lo < hi) {
+        int mid = (lo + hi) >>> 1;
+        if (nums[mid] < num) {
+          lo = mid + 1;
+        } else {
+          hi = mid;
+        } // if
+      } // while
+      return lo;
+    } // before(int)
+
+    /**
+     * Get the total over a range of blocks.
+     *
+     * @param from the first block number.
+     * @param to one past the last block number.
+     * @return the total.
+     */
+    long sum(int from, int to) {
+      int end = before(to);
+      int start = before(from);
+      if (end <= start) {
+        return 0;
+      } // if
+      return sums[end - 1] - (start == 0 ? 0 : sums[start - 1]);
+    } // sum(int, int)
+
+    /**
+     * Count the blocks in a range that changed the total.
+     *
+     * @param from the first block number.
+     * @param to one past the last block number.
+     * @return the number of blocks.
+     */
+    int count(int from, int to) {
+      return Math.max(0, before(to) - before(from));
+    } // count(int, int)
+  } // class Series
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The amounts of all the transactions.
+   */
+  Series volume;
+
+  /**
+   * The amounts each user sent.
+   */
+  HashMap<String, Series> sent;
+
+  /**
+   * The amounts each user received.
+   */
+  HashMap<String, Series> received;
+
+  /**
+   * The amounts sent from one user to another, by source and then target.
+   */
+  HashMap<String, HashMap<String, Series>> flows;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty index.
+   */
+  public ChainIndex() {
+    this.volume = new Series();
+    this.sent = new HashMap<String, Series>();
+    this.received = new HashMap<String, Series>();
+    this.flows = new HashMap<String, HashMap<String, Series>>();
+  } // ChainIndex()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the series for a key, creating it if needed.
+   *
+   * @param map the series.
+   * @param key the key.
+   * @return the series for the key.
+   */
+  static Series series(HashMap<String, Series> map, String key) {
+    Series found = map.get(key);
+    if (found == null) {
+      found = new Series();
+      map.put(key, found);
+    } // if
+    return found;
+  } // series(HashMap<String, Series>, String)
+
+  /**
+   * Get the total of a series that may not exist.
+   *
+   * @param found the series, or null.
+   * @param from the first block number.
+   * @param to one past the last block number.
+   * @return the total, or 0 if there is no series.
+   */
+  static long sum(Series found, int from, int to) {
+    return (found == null) ? 0 : found.sum(from, to);
+  } // sum(Series, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a block after the blocks already indexed.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @throws IllegalArgumentException
+   *   If the block does not come after the blocks already indexed.
+   */
+  public void add(Block blk) {
+    int num = blk.getNum();
+    if (volume.size > 0 && num <= volume.nums[volume.size - 1]) {
+      throw new IllegalArgumentException("Block " + num + " is already indexed.");
+    } // if
+    Transaction transaction = blk.getTransaction();
+    String source = transaction.getSource();
+    String target = transaction.getTarget();
+    int amount = transaction.getAmount();
+    volume.add(num, amount);
+    series(received, target).add(num, amount);
+    if (!source.equals("")) {
+      series(sent, source).add(num, amount);
+      HashMap<String, Series> targets = flows.get(source);
+      if (targets == null) {
+        targets = new HashMap<String, Series>();
+        flows.put(source, targets);
+      } // if
+      series(targets, target).add(num, amount);
+    } // if
+  } // add(Block)
+
+  /**
+   * Remove the last block indexed.
+   *
+   * @param blk
+   *   The block.
+   */
+  public void removeLast(Block blk) {
+    int num = blk.getNum();
+    Transaction transaction = blk.getTransaction();
+    String source = transaction.getSource();
+    volume.remove(num);
+    received.get(transaction.getTarget()).remove(num);
+    if (!source.equals("")) {
+      sent.get(source).remove(num);
+      flows.get(source).get(transaction.getTarget()).remove(num);
+    } // if
+  } // removeLast(Block)
+
+  /**
+   * Get the total amount of the transactions in a range of blocks.
+   *
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the total amount.
+   */
+  public long volume(int from, int to) {
+    return volume.sum(from, to);
+  } // volume(int, int)
+
+  /**
+   * Count the transactions in a range of blocks.
+   *
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the number of transactions.
+   */
+  public int count(int from, int to) {
+    return volume.count(from, to);
+  } // count(int, int)
+
+  /**
+   * Get the total a user sent in a range of blocks.
+   *
+   * @param user
+   *   The user.
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the total sent.
+   */
+  public long sent(String user, int from, int to) {
+    return sum(sent.get(user), from, to);
+  } // sent(String, int, int)
+
+  /**
+   * Get the total a user received in a range of blocks.
+   *
+   * @param user
+   *   The user.
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the total received.
+   */
+  public long received(String user, int from, int to) {
+    return sum(received.get(user), from, to);
+  } // received(String, int, int)
+
+  /**
+   * Get the net flow from one user to another in a range of blocks: what
+   * the first sent the second, less what the second sent the first.
+   *
+   * @param source
+   *   The first user.
+   * @param target
+   *   The second user.
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the net flow.
+   */
+  public long netFlow(String source, String target, int from, int to) {
+    HashMap<String, Series> out = flows.get(source);
+    HashMap<String, Series> in = flows.get(target);
+    return sum((out == null) ? null : out.get(target), from, to)
+        - sum((in == null) ? null : in.get(source), from, to);
+  } // netFlow(String, String, int, int)
+
+  /**
+   * Get the total each user received in a range of blocks.
+   *
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the total received by each user who received anything.
+   */
+  public HashMap<String, Long> receivedByUser(int from, int to) {
+    HashMap<String, Long> totals = new HashMap<String, Long>();
+    received.forEach((user, series) -> {
+      if (series.count(from, to) > 0) {
+        totals.put(user, series.sum(from, to));
+      } // if
+    });
+    return totals;
+  } // receivedByUser(int, int)
+
+  /**
+   * Get the total each user sent in a range of blocks.
+   *
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return the total sent by each user who sent anything.
+   */
+  public HashMap<String, Long> sentByUser(int from, int to) {
+    HashMap<String, Long> totals = new HashMap<String, Long>();
+    sent.forEach((user, series) -> {
+      if (series.count(from, to) > 0) {
+        totals.put(user, series.sum(from, to));
+      } // if
+    });
+    return totals;
+  } // sentByUser(int, int)
+
+  /**
+   * Find the users who received the most in a range of blocks.
+   *
+   * @param k
+   *   The number of users wanted.
+   * @param from
+   *   The first block number.
+   * @param to
+   *   One past the last block number.
+   *
+   * @return up to k users, most received first (ties by name).
+   */
+  public List<String> topReceivers(int k, int from, int to) {
+    HashMap<String, Long> totals = receivedByUser(from, to);
+    // Keep the k best in a heap whose head is the worst of them.
+    PriorityQueue<String> best = new PriorityQueue<String>(
+        (a, b) -> totals.get(a).equals(totals.get(b))
+            ? b.compareTo(a) : Long.compare(totals.get(a), totals.get(b)));
+    for (String user : totals.keySet()) {
+      best.add(user);
+      if (best.size() > k) {
+        best.poll();
+      } // if
+    } // for
+    ArrayList<String> users = new ArrayList<String>(best.size());
+    while (!best.isEmpty()) {
+      users.add(best.poll());
+    } // while
+    Collections.reverse(users);
+    return users;
+  } // topReceivers(int, int, int)
+} // class ChainIndex
@@ -0,0 +1,132 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+
+/**
+ * Prunes the bodies of the older blocks of a chain, keeping only their
+ * headers, a checkpoint of the balances where the kept blocks start, and
+ * the newest blocks in full. The pruned bodies are either discarded or
+ * moved to a BlockArchive, so the memory the chain uses grows with the
+ * number of blocks kept rather than with its whole history.
+ *
+ * The first prune moves the chain's blocks into a PrunedBlockStore.
+ *
+ * @author Mitch Paiva
+ */
+public class ChainPruner {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain we prune.
+   */
+  BlockChain chain;
+
+  /**
+   * The number of blocks to keep in full.
+   */
+  int retain;
+
+  /**
+   * Where pruned bodies go, or null to discard them.
+   */
+  BlockArchive archive;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a pruner that discards pruned bodies.
+   *
+   * @param chain
+   *   The chain to prune.
+   * @param retain
+   *   The number of blocks to keep in full.
+   */
+  public ChainPruner(BlockChain chain, int retain) {
+    this(chain, retain, null);
+  } // ChainPruner(BlockChain, int)
+
+  /**
+   * Create a pruner.
+   *
+   * @param chain
+   *   The chain to prune.
+   * @param retain
+   *   The number of blocks to keep in full.
+   * @param archive
+   *   Where pruned bodies go, or null to discard them. Each prune writes its
+   *   blocks as segments, and a checkpoint of the balances, to it.
+   *
+   * @throws IllegalArgumentException
+   *   If fewer than one block is to be kept.
+   */
+  public ChainPruner(BlockChain chain, int retain, BlockArchive archive) {
+    if (retain < 1) {
+      throw new IllegalArgumentException("At least the last block must be kept.");
+    } // if
+    this.chain = chain;
+    this.retain = retain;
+    this.archive = archive;
+  } // ChainPruner(BlockChain, int, BlockArchive)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Prune all but the newest blocks.
+   *
+   * @return the number of blocks pruned.
+   *
+   * @throws IOException
+   *   If the pruned bodies or the checkpoint cannot be archived.
+   */
+  public int prune() throws IOException {
+    return pruneTo(chain.getSize() - retain);
+  } // prune()
+
+  /**
+   * Prune the blocks below a height.
+   *
+   * @param height
+   *   The number of blocks to prune, counting from the first block.
+   *
+   * @return the number of blocks pruned.
+   *
+   * @throws IOException
+   *   If the pruned bodies or the checkpoint cannot be archived.
+   * @throws IllegalArgumentException
+   *   If the height would prune the last block.
+   */
+  public int pruneTo(int height) throws IOException {
+    if (height >= chain.getSize()) {
+      throw new IllegalArgumentException("At least the last block must be kept.");
+    } // if
+    if (!(chain.store instanceof PrunedBlockStore)) {
+      chain.store = new PrunedBlockStore(chain.store, archive, chain.digests);
+    } // if
+    PrunedBlockStore store = (PrunedBlockStore) chain.store;
+    int before = store.pruned();
+    if (height <= before) {
+      return 0;
+    } // if
+
+    // Carry the balances forward from the last prune.
+    int from = (chain.base == null) ? 1 : chain.base.height();
+    BalanceLedger ledger = (chain.base == null) ? new BalanceLedger() : chain.base.ledger();
+    for (int i = from; i < height; i++) {
+      BlockChain.applyTransaction(ledger, store.get(i).getTransaction());
+    } // for
+    Checkpoint base = Checkpoint.of(height, store.get(height - 1).getHash(), ledger);
+
+    store.prune(height);
+    chain.base = base;
+    if (store.archive != null) {
+      base.write(store.archive.dir.resolve(Checkpoint.fileName(height)));
+    } // if
+    return height - before;
+  } // pruneTo(int)
+} // class ChainPruner
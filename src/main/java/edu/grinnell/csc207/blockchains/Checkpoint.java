@@ -0,0 +1,423 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The full account state of a chain at one height: the users in the order
+ * they first appeared, their balances, and the hash of the last block.
+ * Restoring a chain from a checkpoint only has to replay the blocks after
+ * it, rather than every block since the first.
+ *
+ * A checkpoint file holds a magic number, a version, the height, the tip
+ * hash, the users and balances, and then a SHA-256 commitment to all of
+ * that, so that a damaged file is noticed rather than loaded.
+ *
+ * @author Mitch Paiva
+ */
+public class Checkpoint {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The magic number at the start of a checkpoint file ("CKPT").
+   */
+  public static final int MAGIC = 0x434B5054;
+
+  /**
+   * The version of the file format.
+   */
+  public static final byte VERSION = 1;
+
+  /**
+   * The start of the name of each checkpoint file.
+   */
+  static final String PREFIX = "checkpoint-";
+
+  /**
+   * The end of the name of each checkpoint file.
+   */
+  static final String SUFFIX = ".ckpt";
+
+  /**
+   * The number of bytes in the commitment.
+   */
+  static final int COMMITMENT_LENGTH = 32;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks in the chain, including the first.
+   */
+  int height;
+
+  /**
+   * The hash of the last block.
+   */
+  Hash tipHash;
+
+  /**
+   * The users, in the order they first appeared.
+   */
+  ArrayList<String> users;
+
+  /**
+   * The balance of each user.
+   */
+  long[] balances;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a checkpoint.
+   *
+   * @param height
+   *   The number of blocks in the chain, including the first.
+   * @param tipHash
+   *   The hash of the last block.
+   * @param users
+   *   The users, in the order they first appeared.
+   * @param balances
+   *   The balance of each user.
+   */
+  public Checkpoint(int height, Hash tipHash, ArrayList<String> users, long[] balances) {
+    this.height = height;
+    this.tipHash = tipHash;
+    this.users = users;
+    this.balances = balances;
+  } // Checkpoint(int, Hash, ArrayList<String>, long[])
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Take a checkpoint of a chain as it is now. Only the state is copied,
+   * so this is quick, and the chain may change once it returns.
+   *
+   * @param chain
+   *   The chain.
+   *
+   * @return the checkpoint.
+   */
+  public static Checkpoint capture(BlockChain chain) {
+    return of(chain.getSize(), chain.getHash(), chain.balances);
+  } // capture(BlockChain)
+
+  /**
+   * Take a checkpoint of a set of balances.
+   *
+   * @param height
+   *   The number of blocks the balances cover, including the first.
+   * @param tipHash
+   *   The hash of the last of those blocks.
+   * @param ledger
+   *   The balances, which are copied.
+   *
+   * @return the checkpoint.
+   */
+  public static Checkpoint of(int height, Hash tipHash, BalanceLedger ledger) {
+    ArrayList<String> users = new ArrayList<String>(ledger.users());
+    long[] balances = new long[users.size()];
+    for (int i = 0; i < balances.length; i++) {
+      balances[i] = ledger.get(users.get(i));
+    } // for
+    return new Checkpoint(height, tipHash, users, balances);
+  } // of(int, Hash, BalanceLedger)
+
+  /**
+   * Get the name of the file for a checkpoint at a height. The heights are
+   * padded so that the names sort in order.
+   *
+   * @param height
+   *   The height.
+   *
+   * @return the file name.
+   */
+  public static String fileName(int height) {
+    return String.format("%s%010d%s", PREFIX, height, SUFFIX);
+  } // fileName(int)
+
+  /**
+   * List the checkpoint files in a directory, newest first.
+   *
+   * @param dir
+   *   The directory.
+   *
+   * @return the files.
+   *
+   * @throws IOException
+   *   If the directory cannot be read.
+   */
+  public static List<Path> list(Path dir) throws IOException {
+    ArrayList<Path> files = new ArrayList<Path>();
+    if (!Files.isDirectory(dir)) {
+      return files;
+    } // if
+    try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+      for (Path entry : entries) {
+        files.add(entry);
+      } // for
+    } // try
+    Collections.sort(files, Collections.reverseOrder());
+    return files;
+  } // list(Path)
+
+  /**
+   * Read a checkpoint file and check its commitment.
+   *
+   * @param file
+   *   The file.
+   *
+   * @return the checkpoint.
+   *
+   * @throws IOException
+   *   If the file cannot be read, is not a checkpoint, or does not match
+   *   its commitment.
+   */
+  public static Checkpoint read(Path file) throws IOException {
+    byte[] contents = Files.readAllBytes(file);
+    if (contents.length < COMMITMENT_LENGTH) {
+      throw new IOException("The checkpoint is too short.");
+    } // if
+    int end = contents.length - COMMITMENT_LENGTH;
+    MessageDigest digest = DigestProviders.SHA256.newDigest();
+    digest.update(contents, 0, end);
+    if (!MessageDigest.isEqual(digest.digest(),
+        Arrays.copyOfRange(contents, end, contents.length))) {
+      throw new IOException("The checkpoint does not match its commitment.");
+    } // if
+    DataInputStream data = new DataInputStream(new ByteArrayInputStream(contents, 0, end));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a checkpoint.");
+    } // if
+    byte version = data.readByte();
+    if (version != VERSION) {
+      throw new IOException("Unsupported checkpoint version " + version + ".");
+    } // if
+    int height = data.readInt();
+    byte[] tip = new byte[data.readInt()];
+    data.readFully(tip);
+    int count = data.readInt();
+    ArrayList<String> users = new ArrayList<String>(count);
+    long[] balances = new long[count];
+    for (int i = 0; i < count; i++) {
+      byte[] name = new byte[data.readInt()];
+      data.readFully(name);
+      users.add(new String(name, StandardCharsets.UTF_8));
+      balances[i] = data.readLong();
+    } // for
+    return new Checkpoint(height, Hash.wrap(tip), users, balances);
+  } // read(Path)
+
+  /**
+   * Rebuild a chain from its blocks, using the newest checkpoint that
+   * matches them, and keep the blocks in a ListBlockStore.
+   *
+   * @param dir
+   *   The directory of checkpoints.
+   * @param check
+   *   The validator for the chain.
+   * @param hashing
+   *   How the blocks are hashed.
+   * @param blocks
+   *   The blocks after the first, in order (as from BlockJournal.read).
+   *
+   * @return the chain.
+   *
+   * @throws IOException
+   *   If the directory cannot be read.
+   * @throws IllegalArgumentException
+   *   If the blocks after the checkpoint do not continue the chain.
+   */
+  public static BlockChain restore(Path dir, HashValidator check, DigestProvider hashing,
+      List<Block> blocks) throws IOException {
+    return restore(dir, check, new ListBlockStore(), hashing, blocks);
+  } // restore(Path, HashValidator, DigestProvider, List<Block>)
+
+  /**
+   * Rebuild a chain from its blocks, using the newest checkpoint in a
+   * directory whose tip is the block at its height. Blocks up to the
+   * checkpoint are neither rehashed nor replayed (the journal's checksums
+   * already cover them); the blocks after it are checked and appended as
+   * usual. With no usable checkpoint, every block is.
+   *
+   * @param dir
+   *   The directory of checkpoints.
+   * @param check
+   *   The validator for the chain.
+   * @param store
+   *   The empty store to keep the blocks in.
+   * @param hashing
+   *   How the blocks are hashed.
+   * @param blocks
+   *   The blocks after the first, in order (as from BlockJournal.read).
+   *
+   * @return the chain.
+   *
+   * @throws IOException
+   *   If the directory cannot be read.
+   * @throws IllegalArgumentException
+   *   If the blocks after the checkpoint do not continue the chain, or the
+   *   store refuses a block.
+   */
+  public static BlockChain restore(Path dir, HashValidator check, BlockStore store,
+      DigestProvider hashing, List<Block> blocks) throws IOException {
+    BlockChain chain = new BlockChain(check, store, hashing);
+    for (Path file : list(dir)) {
+      Checkpoint checkpoint;
+      try {
+        checkpoint = read(file);
+      } catch (IOException e) {
+        continue;
+      } // try/catch
+      if (checkpoint.matches(chain.getHash(), blocks)) {
+        chain.restore(blocks.subList(0, checkpoint.height - 1), checkpoint.ledger());
+        chain.appendAll(blocks.subList(checkpoint.height - 1, blocks.size()));
+        return chain;
+      } // if
+    } // for
+    chain.appendAll(blocks);
+    return chain;
+  } // restore(Path, HashValidator, BlockStore, DigestProvider, List<Block>)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Encode the checkpoint, without its commitment.
+   *
+   * @return the bytes.
+   */
+  byte[] encode() {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream data = new DataOutputStream(bytes);
+    try {
+      data.writeInt(MAGIC);
+      data.writeByte(VERSION);
+      data.writeInt(this.height);
+      data.writeInt(this.tipHash.length());
+      data.write(this.tipHash.getBytes());
+      data.writeInt(this.users.size());
+      for (int i = 0; i < this.balances.length; i++) {
+        byte[] name = this.users.get(i).getBytes(StandardCharsets.UTF_8);
+        data.writeInt(name.length);
+        data.write(name);
+        data.writeLong(this.balances[i]);
+      } // for
+    } catch (IOException e) {
+      // A ByteArrayOutputStream does not throw.
+    } // try/catch
+    return bytes.toByteArray();
+  } // encode()
+
+  /**
+   * Determine whether the checkpoint is for a prefix of some blocks: they
+   * reach its height and the block there is its tip. Only that block is
+   * looked at, so this takes the same time however long the chain is.
+   *
+   * @param first the hash of the first block of the chain.
+   * @param blocks the blocks after the first.
+   * @return true if it is and false otherwise.
+   */
+  boolean matches(Hash first, List<Block> blocks) {
+    if (this.height < 1 || this.height - 1 > blocks.size()) {
+      return false;
+    } else if (this.height == 1) {
+      return first.equals(this.tipHash);
+    } // if
+    Block tip = blocks.get(this.height - 2);
+    return tip.getNum() == this.height - 1 && tip.getHash().equals(this.tipHash);
+  } // matches(Hash, List<Block>)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Write the checkpoint, with its commitment, to a file. The file is
+   * written under another name, forced to the disk, and then moved into
+   * place, so it is never seen half written.
+   *
+   * @param file
+   *   The file.
+   *
+   * @throws IOException
+   *   If the file cannot be written.
+   */
+  public void write(Path file) throws IOException {
+    byte[] contents = encode();
+    MessageDigest digest = DigestProviders.SHA256.newDigest();
+    byte[] commitment = digest.digest(contents);
+    Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+    try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+      ByteBuffer buf = ByteBuffer.allocate(contents.length + commitment.length);
+      buf.put(contents).put(commitment).flip();
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      } // while
+      channel.force(true);
+    } // try
+    try {
+      Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE,
+          StandardCopyOption.REPLACE_EXISTING);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    } // try/catch
+  } // write(Path)
+
+  /**
+   * Build the balances in the checkpoint.
+   *
+   * @return a new ledger holding them.
+   */
+  public BalanceLedger ledger() {
+    BalanceLedger ledger = new BalanceLedger();
+    for (int i = 0; i < this.balances.length; i++) {
+      ledger.set(this.users.get(i), this.balances[i]);
+    } // for
+    return ledger;
+  } // ledger()
+
+  /**
+   * Get the number of blocks the checkpoint covers.
+   *
+   * @return the height, including the first block.
+   */
+  public int height() {
+    return this.height;
+  } // height()
+
+  /**
+   * Get the hash of the last block the checkpoint covers.
+   *
+   * @return the hash.
+   */
+  public Hash tipHash() {
+    return this.tipHash;
+  } // tipHash()
+} // class Checkpoint
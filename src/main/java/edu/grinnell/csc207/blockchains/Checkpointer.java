@@ -0,0 +1,183 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Takes a checkpoint of a chain every so many blocks and writes it to a
+ * directory in the background, keeping only the newest few. The state is
+ * copied when the checkpoint is taken, so the chain can keep growing
+ * while the file is written.
+ *
+ * @author Mitch Paiva
+ */
+public class Checkpointer implements Closeable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of blocks between checkpoints, by default.
+   */
+  public static final int DEFAULT_INTERVAL = 10_000;
+
+  /**
+   * The number of checkpoints to keep, by default.
+   */
+  public static final int DEFAULT_KEEP = 2;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * Where the checkpoints go.
+   */
+  Path dir;
+
+  /**
+   * The number of blocks between checkpoints.
+   */
+  int interval;
+
+  /**
+   * The number of checkpoints to keep.
+   */
+  int keep;
+
+  /**
+   * The thread that writes the checkpoints.
+   */
+  ExecutorService writer;
+
+  /**
+   * The height of the last checkpoint taken.
+   */
+  int lastHeight;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a checkpointer with the default interval and number to keep.
+   *
+   * @param dir
+   *   Where the checkpoints go. It is created if needed.
+   *
+   * @throws IOException
+   *   If the directory cannot be created.
+   */
+  public Checkpointer(Path dir) throws IOException {
+    this(dir, DEFAULT_INTERVAL, DEFAULT_KEEP);
+  } // Checkpointer(Path)
+
+  /**
+   * Create a checkpointer.
+   *
+   * @param dir
+   *   Where the checkpoints go. It is created if needed.
+   * @param interval
+   *   The number of blocks between checkpoints.
+   * @param keep
+   *   The number of checkpoints to keep.
+   *
+   * @throws IOException
+   *   If the directory cannot be created.
+   * @throws IllegalArgumentException
+   *   If the interval or the number to keep is not positive.
+   */
+  public Checkpointer(Path dir, int interval, int keep) throws IOException {
+    if (interval < 1 || keep < 1) {
+      throw new IllegalArgumentException("The interval and number to keep must be positive.");
+    } // if
+    this.dir = Files.createDirectories(dir);
+    this.interval = interval;
+    this.keep = keep;
+    this.writer = Executors.newSingleThreadExecutor((task) -> {
+      Thread thread = new Thread(task, "checkpointer");
+      thread.setDaemon(true);
+      return thread;
+    });
+  } // Checkpointer(Path, int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Write a checkpoint and delete the ones we no longer keep.
+   *
+   * @param checkpoint the checkpoint.
+   * @return the file it was written to.
+   * @throws UncheckedIOException if the file cannot be written.
+   */
+  Path save(Checkpoint checkpoint) {
+    Path file = dir.resolve(Checkpoint.fileName(checkpoint.height()));
+    try {
+      checkpoint.write(file);
+      List<Path> files = Checkpoint.list(dir);
+      for (int i = keep; i < files.size(); i++) {
+        Files.deleteIfExists(files.get(i));
+      } // for
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } // try/catch
+    return file;
+  } // save(Checkpoint)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Take a checkpoint of a chain now and write it in the background.
+   *
+   * @param chain
+   *   The chain.
+   *
+   * @return a future completed with the file once it is written.
+   */
+  public synchronized CompletableFuture<Path> checkpoint(BlockChain chain) {
+    Checkpoint checkpoint = Checkpoint.capture(chain);
+    this.lastHeight = checkpoint.height();
+    return CompletableFuture.supplyAsync(() -> save(checkpoint), writer);
+  } // checkpoint(BlockChain)
+
+  /**
+   * Take a checkpoint of a chain if it has grown by the interval since the
+   * last one. Call after appending.
+   *
+   * @param chain
+   *   The chain.
+   *
+   * @return a future completed with the file once it is written, or null
+   *   if no checkpoint was taken.
+   */
+  public synchronized CompletableFuture<Path> maybeCheckpoint(BlockChain chain) {
+    if (chain.getSize() - this.lastHeight < this.interval) {
+      return null;
+    } // if
+    return checkpoint(chain);
+  } // maybeCheckpoint(BlockChain)
+
+  /**
+   * Finish writing the checkpoints already taken and stop.
+   */
+  public void close() {
+    writer.shutdown();
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } // try/catch
+  } // close()
+} // class Checkpointer
@@ -0,0 +1,208 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Arrays;
+
+/**
+ * A block store that keeps each field of the blocks in its own array
+ * (struct-of-arrays) instead of keeping Block objects. User names are
+ * interned and stored as ints, the hashes all share one byte array, and
+ * the previous hash of a block is not stored at all, since it is the hash
+ * of the block before it. That comes to about 56 bytes a block, compared
+ * to well over 200 for a Block with its Transaction and Hashes.
+ *
+ * The blocks returned by get are built on demand, so changing one of them
+ * does not change the store.
+ *
+ * @author Mitch Paiva
+ */
+public class ColumnarBlockStore extends LinkedBlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The length of a SHA-256 hash.
+   */
+  public static final int SHA256_LENGTH = 32;
+
+  /**
+   * The initial number of blocks we have room for.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of each block.
+   */
+  int[] blockNums;
+
+  /**
+   * The nonce of each block.
+   */
+  long[] nonces;
+
+  /**
+   * The amount of each block's transaction.
+   */
+  int[] amounts;
+
+  /**
+   * The sequence number of each block's transaction.
+   */
+  long[] seqs;
+
+  /**
+   * The id of the source of each block's transaction.
+   */
+  int[] sourceIds;
+
+  /**
+   * The id of the target of each block's transaction.
+   */
+  int[] targetIds;
+
+  /**
+   * The hashes of all the blocks, hashLength bytes apiece.
+   */
+  byte[] hashes;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty store for blocks with SHA-256 hashes.
+   */
+  public ColumnarBlockStore() {
+    this(SHA256_LENGTH);
+  } // ColumnarBlockStore()
+
+  /**
+   * Create a new, empty store.
+   *
+   * @param hashLen
+   *   The number of bytes in every hash.
+   */
+  public ColumnarBlockStore(int hashLen) {
+    super(hashLen);
+    this.blockNums = new int[INITIAL_CAPACITY];
+    this.nonces = new long[INITIAL_CAPACITY];
+    this.amounts = new int[INITIAL_CAPACITY];
+    this.seqs = new long[INITIAL_CAPACITY];
+    this.sourceIds = new int[INITIAL_CAPACITY];
+    this.targetIds = new int[INITIAL_CAPACITY];
+    this.hashes = new byte[INITIAL_CAPACITY * hashLen];
+  } // ColumnarBlockStore(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make room for more blocks.
+   */
+  void expand() {
+    int capacity = this.nonces.length * 2;
+    this.blockNums = Arrays.copyOf(this.blockNums, capacity);
+    this.nonces = Arrays.copyOf(this.nonces, capacity);
+    this.amounts = Arrays.copyOf(this.amounts, capacity);
+    this.seqs = Arrays.copyOf(this.seqs, capacity);
+    this.sourceIds = Arrays.copyOf(this.sourceIds, capacity);
+    this.targetIds = Arrays.copyOf(this.targetIds, capacity);
+    this.hashes = Arrays.copyOf(this.hashes, capacity * this.hashLength);
+  } // expand()
+
+  /**
+   * Get the hash of one block.
+   *
+   * @param i the index of the block.
+   * @return its hash.
+   */
+  Hash hash(int i) {
+    int start = i * this.hashLength;
+    return Hash.wrap(Arrays.copyOfRange(this.hashes, start, start + this.hashLength));
+  } // hash(int)
+
+  /**
+   * Get one byte of the stored hash of a block.
+   *
+   * @param i the index of the block.
+   * @param b the index of the byte.
+   * @return the byte.
+   */
+  byte hashByte(int i, int b) {
+    return this.hashes[i * this.hashLength + b];
+  } // hashByte(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get one block, building it from the stored fields.
+   *
+   * @param i
+   *   The index of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If i is not a valid index.
+   */
+  public Block get(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException(i);
+    } // if
+    Transaction transaction = new Transaction(users, sourceIds[i], targetIds[i], amounts[i],
+        seqs[i]);
+    return new Block(blockNums[i], transaction, prevHash(i), nonces[i], hash(i));
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   *
+   * @throws IllegalArgumentException
+   *   If the block's hash is the wrong length or its previous hash is not
+   *   the hash of the last block in the store.
+   */
+  public void add(Block blk) {
+    link(blk);
+    if (this.size == this.nonces.length) {
+      expand();
+    } // if
+    int i = this.size;
+    this.blockNums[i] = blk.getNum();
+    this.nonces[i] = blk.getNonce();
+    this.amounts[i] = blk.getTransaction().getAmount();
+    this.seqs[i] = blk.getTransaction().getSeq();
+    this.sourceIds[i] = users.intern(blk.getTransaction().getSource());
+    this.targetIds[i] = users.intern(blk.getTransaction().getTarget());
+    System.arraycopy(blk.getHash().getBytes(), 0, this.hashes, i * this.hashLength,
+        this.hashLength);
+    this.size++;
+  } // add(Block)
+
+  /**
+   * Create a new, empty columnar store for hashes of the same length.
+   *
+   * @return the new store.
+   */
+  public BlockStore emptyCopy() {
+    return new ColumnarBlockStore(this.hashLength);
+  } // emptyCopy()
+
+  /**
+   * Remove the last block from the store, if there is one.
+   */
+  public void removeLast() {
+    if (this.size > 0) {
+      this.size--;
+    } // if
+  } // removeLast()
+} // class ColumnarBlockStore
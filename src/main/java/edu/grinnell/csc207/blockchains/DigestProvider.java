@@ -0,0 +1,46 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.security.MessageDigest;
+
+/**
+ * Ways of hashing blocks. A block is hashed by feeding its fields to a
+ * MessageDigest and then finishing the digest, which lets a provider
+ * (e.g., double SHA-256) do more than one round.
+ *
+ * @author Mitch Paiva
+ */
+public interface DigestProvider {
+  /**
+   * Get a name for the hash, such as "SHA-256".
+   *
+   * @return the name.
+   */
+  String name();
+
+  /**
+   * Get a new digest that belongs to the caller. It must support clone,
+   * so that miners can reuse a partly-updated digest.
+   *
+   * @return the digest.
+   */
+  MessageDigest newDigest();
+
+  /**
+   * Get a digest that is shared by every use on this thread, which saves
+   * creating one. It must be finished before this method is called again
+   * on the same thread, and must not be given to other threads.
+   *
+   * @return the digest, reset.
+   */
+  MessageDigest threadDigest();
+
+  /**
+   * Finish a digest and get the hash. The digest is reset.
+   *
+   * @param md
+   *   A digest from newDigest or threadDigest (or a clone of one).
+   *
+   * @return the bytes of the hash.
+   */
+  byte[] finish(MessageDigest md);
+} // interface DigestProvider
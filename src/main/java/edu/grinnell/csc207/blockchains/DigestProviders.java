@@ -0,0 +1,203 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+
+/**
+ * The digest providers we know about, and ways to choose one.
+ *
+ * @author Mitch Paiva
+ */
+public class DigestProviders {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * SHA-256, the hash blocks have always used.
+   */
+  public static final DigestProvider SHA256 = jca("SHA-256", false);
+
+  /**
+   * SHA-256 of SHA-256, as in Bitcoin.
+   */
+  public static final DigestProvider DOUBLE_SHA256 = jca("SHA-256", true);
+
+  /**
+   * The name of the system property that chooses the provider for the
+   * user interfaces.
+   */
+  public static final String PROPERTY = "blockchains.digest";
+
+  /**
+   * The number of hashes to time for each implementation when looking for
+   * the fastest.
+   */
+  static final int BENCHMARK_ROUNDS = 20000;
+
+  /**
+   * The size of the input hashed by the benchmark, which is about the size
+   * of a block.
+   */
+  static final int BENCHMARK_INPUT_SIZE = 80;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * There are no DigestProviders objects.
+   */
+  private DigestProviders() {
+  } // DigestProviders()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Create a provider for an algorithm that every Java platform has.
+   *
+   * @param algorithm the name of the algorithm.
+   * @param doubled whether to hash the hash again.
+   * @return the provider.
+   */
+  static DigestProvider jca(String algorithm, boolean doubled) {
+    try {
+      return new JcaDigestProvider(algorithm, doubled);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(algorithm + " is not available.", e);
+    } // try/catch
+  } // jca(String, boolean)
+
+  /**
+   * Time one implementation of an algorithm.
+   *
+   * @param provider the implementation.
+   * @param rounds the number of hashes to time.
+   * @return the time taken, in nanoseconds.
+   */
+  static long time(DigestProvider provider, int rounds) {
+    byte[] input = new byte[BENCHMARK_INPUT_SIZE];
+    // Warm up, so that we time compiled code.
+    for (int i = 0; i < rounds; i++) {
+      MessageDigest md = provider.threadDigest();
+      md.update(input);
+      input[i % input.length] ^= provider.finish(md)[0];
+    } // for
+    long start = System.nanoTime();
+    for (int i = 0; i < rounds; i++) {
+      MessageDigest md = provider.threadDigest();
+      md.update(input);
+      input[i % input.length] ^= provider.finish(md)[0];
+    } // for
+    return System.nanoTime() - start;
+  } // time(DigestProvider, int)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Get SHA-512/256, which is often faster than SHA-256 on 64-bit
+   * machines.
+   *
+   * @return the provider.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If the platform does not have SHA-512/256.
+   */
+  public static DigestProvider sha512t256() throws NoSuchAlgorithmException {
+    return new JcaDigestProvider("SHA-512/256", false);
+  } // sha512t256()
+
+  /**
+   * Get SHA3-256.
+   *
+   * @return the provider.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If the platform does not have SHA3-256.
+   */
+  public static DigestProvider sha3() throws NoSuchAlgorithmException {
+    return new JcaDigestProvider("SHA3-256", false);
+  } // sha3()
+
+  /**
+   * Time every installed implementation of an algorithm and get the
+   * fastest.
+   *
+   * @param algorithm
+   *   The name of the algorithm, such as "SHA-256".
+   * @param doubled
+   *   Whether to hash the hash again.
+   *
+   * @return the fastest implementation.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If no implementation is installed.
+   */
+  public static DigestProvider fastest(String algorithm, boolean doubled)
+      throws NoSuchAlgorithmException {
+    Provider[] candidates = Security.getProviders("MessageDigest." + algorithm);
+    if (candidates == null) {
+      throw new NoSuchAlgorithmException(algorithm + " is not available.");
+    } // if
+    DigestProvider best = null;
+    long bestTime = Long.MAX_VALUE;
+    for (Provider candidate : candidates) {
+      DigestProvider provider = new JcaDigestProvider(algorithm, candidate, doubled);
+      long time = time(provider, BENCHMARK_ROUNDS);
+      if (time < bestTime) {
+        best = provider;
+        bestTime = time;
+      } // if
+    } // for
+    return best;
+  } // fastest(String, boolean)
+
+  /**
+   * Get a provider by name: "sha-256", "double-sha-256", "sha-512/256",
+   * "sha3-256", or "fastest" (the fastest installed SHA-256).
+   *
+   * @param name
+   *   The name, in any case.
+   *
+   * @return the provider.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If the name is unknown or the algorithm is not available.
+   */
+  public static DigestProvider forName(String name) throws NoSuchAlgorithmException {
+    switch (name.toLowerCase()) {
+      case "sha-256":
+        return SHA256;
+      case "double-sha-256":
+        return DOUBLE_SHA256;
+      case "sha-512/256":
+        return sha512t256();
+      case "sha3-256":
+        return sha3();
+      case "fastest":
+        return fastest("SHA-256", false);
+      default:
+        throw new NoSuchAlgorithmException("Unknown digest " + name + ".");
+    } // switch
+  } // forName(String)
+
+  /**
+   * Get the provider chosen with -Dblockchains.digest=NAME, or SHA-256
+   * if none was chosen.
+   *
+   * @return the provider.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If the chosen provider is not available.
+   */
+  public static DigestProvider configured() throws NoSuchAlgorithmException {
+    String name = System.getProperty(PROPERTY);
+    return (name == null) ? SHA256 : forName(name);
+  } // configured()
+} // class DigestProviders
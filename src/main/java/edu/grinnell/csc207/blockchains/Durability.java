@@ -0,0 +1,27 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * How hard a BlockJournal works to make sure appended blocks survive a
+ * crash, and when it says that they will.
+ *
+ * @author Mitch Paiva
+ */
+public enum Durability {
+  /**
+   * Fire and forget. Blocks are written in batches but never forced to the
+   * disk, and writes are acknowledged as soon as they are buffered.
+   */
+  NONE,
+
+  /**
+   * Group commit. Blocks are written and forced in batches, once enough
+   * blocks are waiting or the oldest has waited long enough, and each
+   * write is acknowledged when its batch is on the disk.
+   */
+  BATCH,
+
+  /**
+   * Every block is written and forced before the append returns.
+   */
+  PER_BLOCK
+} // enum Durability
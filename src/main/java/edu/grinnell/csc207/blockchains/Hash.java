@@ -36,6 +36,35 @@ public class Hash {
     this.data = Arrays.copyOf(data, data.length);
   } // Hash(byte[])
 
+  /**
+   * Create a new encapsulated hash that takes ownership of its data.
+   *
+   * @param data
+   *   The data for the hash, which no one else may change.
+   * @param owned
+   *   Ignored; distinguishes this constructor from the copying one.
+   */
+  private Hash(byte[] data, boolean owned) {
+    this.data = data;
+  } // Hash(byte[], boolean)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Wrap a freshly-built array as a hash without copying it. Only for
+   * arrays that nothing else holds on to.
+   *
+   * @param data
+   *   The data for the hash.
+   *
+   * @return the hash.
+   */
+  static Hash wrap(byte[] data) {
+    return new Hash(data, true);
+  } // wrap(byte[])
+
   // +---------+-----------------------------------------------------
   // | Methods |
   // +---------+
@@ -111,6 +140,6 @@ public class Hash {
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    return Arrays.hashCode(this.data);
   } // hashCode()
 } // class Hash
@@ -0,0 +1,168 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+
+/**
+ * Hashing with a MessageDigest from the Java Cryptography Architecture.
+ * The provider is looked up once, and after that new digests are cloned
+ * from a copy kept for each thread, which is much cheaper than
+ * MessageDigest.getInstance.
+ *
+ * @author Mitch Paiva
+ */
+public class JcaDigestProvider implements DigestProvider {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The name of the algorithm, as known to the JCA.
+   */
+  String algorithm;
+
+  /**
+   * The JCA provider of the algorithm.
+   */
+  Provider provider;
+
+  /**
+   * Whether to hash the hash again (as in double SHA-256).
+   */
+  boolean doubled;
+
+  /**
+   * A fresh digest for each thread, never updated, to clone new digests
+   * from.
+   */
+  ThreadLocal<MessageDigest> prototypes;
+
+  /**
+   * The digest shared by every use on each thread.
+   */
+  ThreadLocal<MessageDigest> digests;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new provider using the JCA's preferred implementation of an
+   * algorithm.
+   *
+   * @param algorithm
+   *   The name of the algorithm, such as "SHA-256".
+   * @param doubled
+   *   Whether to hash the hash again.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If the algorithm is not available.
+   */
+  public JcaDigestProvider(String algorithm, boolean doubled) throws NoSuchAlgorithmException {
+    this(algorithm, MessageDigest.getInstance(algorithm).getProvider(), doubled);
+  } // JcaDigestProvider(String, boolean)
+
+  /**
+   * Create a new provider using a particular implementation of an
+   * algorithm.
+   *
+   * @param algorithm
+   *   The name of the algorithm, such as "SHA-256".
+   * @param provider
+   *   The JCA provider to take the implementation from.
+   * @param doubled
+   *   Whether to hash the hash again.
+   *
+   * @throws NoSuchAlgorithmException
+   *   If the provider does not have the algorithm.
+   */
+  public JcaDigestProvider(String algorithm, Provider provider, boolean doubled)
+      throws NoSuchAlgorithmException {
+    this.algorithm = algorithm;
+    this.provider = provider;
+    this.doubled = doubled;
+    // Fail now, rather than on some thread later.
+    MessageDigest.getInstance(algorithm, provider);
+    this.prototypes = ThreadLocal.withInitial(this::create);
+    this.digests = ThreadLocal.withInitial(this::create);
+  } // JcaDigestProvider(String, Provider, boolean)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Create a digest from the provider.
+   *
+   * @return the digest.
+   */
+  MessageDigest create() {
+    try {
+      return MessageDigest.getInstance(this.algorithm, this.provider);
+    } catch (NoSuchAlgorithmException e) {
+      // Checked in the constructor.
+      throw new IllegalStateException(e);
+    } // try/catch
+  } // create()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get a name for the hash.
+   *
+   * @return the name, with the provider.
+   */
+  public String name() {
+    return (this.doubled ? "double " : "") + this.algorithm + " (" + this.provider.getName()
+        + ")";
+  } // name()
+
+  /**
+   * Get a new digest that belongs to the caller.
+   *
+   * @return the digest.
+   */
+  public MessageDigest newDigest() {
+    try {
+      return (MessageDigest) this.prototypes.get().clone();
+    } catch (CloneNotSupportedException e) {
+      return create();
+    } // try/catch
+  } // newDigest()
+
+  /**
+   * Get the digest shared by every use on this thread.
+   *
+   * @return the digest, reset.
+   */
+  public MessageDigest threadDigest() {
+    MessageDigest md = this.digests.get();
+    md.reset();
+    return md;
+  } // threadDigest()
+
+  /**
+   * Finish a digest and get the hash.
+   *
+   * @param md
+   *   The digest.
+   *
+   * @return the bytes of the hash.
+   */
+  public byte[] finish(MessageDigest md) {
+    byte[] hash = md.digest();
+    return this.doubled ? md.digest(hash) : hash;
+  } // finish(MessageDigest)
+
+  /**
+   * Get a string representation of the provider.
+   *
+   * @return the name.
+   */
+  public String toString() {
+    return name();
+  } // toString()
+} // class JcaDigestProvider
@@ -0,0 +1,135 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * The parts shared by block stores that do not keep the previous hash of
+ * each block, since it is the hash of the block before it. Only the
+ * previous hash of the first block is kept, and a block may only be added
+ * if its previous hash matches the hash of the last block. Subclasses
+ * decide where the hashes (and everything else) live.
+ *
+ * @author Mitch Paiva
+ */
+abstract class LinkedBlockStore implements BlockStore {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of bytes in every hash.
+   */
+  int hashLength;
+
+  /**
+   * The number of blocks in the store.
+   */
+  int size;
+
+  /**
+   * The previous hash of the first block (which has no block before it).
+   */
+  Hash firstPrevHash;
+
+  /**
+   * The user names, interned.
+   */
+  UserDictionary users;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Set up an empty store.
+   *
+   * @param hashLen
+   *   The number of bytes in every hash.
+   */
+  LinkedBlockStore(int hashLen) {
+    this.hashLength = hashLen;
+    this.size = 0;
+    this.users = new UserDictionary();
+  } // LinkedBlockStore(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get one byte of the stored hash of a block.
+   *
+   * @param i the index of the block.
+   * @param b the index of the byte.
+   * @return the byte.
+   */
+  abstract byte hashByte(int i, int b);
+
+  /**
+   * Get the hash of one block.
+   *
+   * @param i the index of the block.
+   * @return its hash.
+   */
+  abstract Hash hash(int i);
+
+  /**
+   * Get the previous hash of one block.
+   *
+   * @param i the index of the block.
+   * @return its previous hash.
+   */
+  Hash prevHash(int i) {
+    return (i == 0) ? this.firstPrevHash : hash(i - 1);
+  } // prevHash(int)
+
+  /**
+   * Determine whether a hash matches the stored hash of a block.
+   *
+   * @param hash the hash to compare.
+   * @param i the index of the block.
+   * @return true if they match and false otherwise.
+   */
+  boolean hashMatches(Hash hash, int i) {
+    if (hash.length() != this.hashLength) {
+      return false;
+    } // if
+    for (int b = 0; b < this.hashLength; b++) {
+      if (hash.get(b) != hashByte(i, b)) {
+        return false;
+      } // if
+    } // for
+    return true;
+  } // hashMatches(Hash, int)
+
+  /**
+   * Make sure a block can go at the end of the store, and remember its
+   * previous hash if it is the first.
+   *
+   * @param blk the block about to be added.
+   * @throws IllegalArgumentException if the block's hash is the wrong
+   *   length or its previous hash is not the hash of the last block.
+   */
+  void link(Block blk) {
+    if (blk.getHash().length() != this.hashLength) {
+      throw new IllegalArgumentException("Hashes in this store must have "
+          + this.hashLength + " bytes.");
+    } else if (this.size > 0 && !hashMatches(blk.getPrevHash(), this.size - 1)) {
+      throw new IllegalArgumentException("The previous hash does not match the last block.");
+    } // if
+    if (this.size == 0) {
+      this.firstPrevHash = blk.getPrevHash();
+    } // if
+  } // link(Block)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.size;
+  } // size()
+} // class LinkedBlockStore
@@ -0,0 +1,74 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+
+/**
+ * A block store that keeps the blocks themselves in a list.
+ *
+ * @author Mitch Paiva
+ */
+public class ListBlockStore implements BlockStore {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The blocks, in order.
+   */
+  ArrayList<Block> blocks;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty store.
+   */
+  public ListBlockStore() {
+    this.blocks = new ArrayList<Block>();
+  } // ListBlockStore()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many blocks are in the store.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.blocks.size();
+  } // size()
+
+  /**
+   * Get one block.
+   *
+   * @param i
+   *   The index of the block.
+   *
+   * @return the block.
+   */
+  public Block get(int i) {
+    return this.blocks.get(i);
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  public void add(Block blk) {
+    this.blocks.add(blk);
+  } // add(Block)
+
+  /**
+   * Remove the last block from the store, if there is one.
+   */
+  public void removeLast() {
+    if (!this.blocks.isEmpty()) {
+      this.blocks.remove(this.blocks.size() - 1);
+    } // if
+  } // removeLast()
+} // class ListBlockStore
@@ -0,0 +1,237 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * A block store that keeps the blocks outside the Java heap, in direct
+ * byte buffers. Each block is a fixed-size record (number, nonce, amount,
+ * source id, target id, and hash), and the records are kept in segments
+ * so that growing the store never copies old blocks. As in
+ * ColumnarBlockStore, the previous hash of a block is the hash of the
+ * block before it, and user names are interned. Only the names stay on
+ * the heap, so its size (and the time the garbage collector spends on it)
+ * does not depend on the length of the chain.
+ *
+ * The blocks returned by get are short-lived views built on demand, so
+ * changing one of them does not change the store.
+ *
+ * @author Mitch Paiva
+ */
+public class OffHeapBlockStore extends LinkedBlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of records in a segment.
+   */
+  public static final int DEFAULT_SEGMENT_RECORDS = 1 << 16;
+
+  /**
+   * Where the block number goes in a record.
+   */
+  static final int NUM_OFFSET = 0;
+
+  /**
+   * Where the nonce goes in a record.
+   */
+  static final int NONCE_OFFSET = NUM_OFFSET + Integer.BYTES;
+
+  /**
+   * Where the amount goes in a record.
+   */
+  static final int AMOUNT_OFFSET = NONCE_OFFSET + Long.BYTES;
+
+  /**
+   * Where the source id goes in a record.
+   */
+  static final int SOURCE_OFFSET = AMOUNT_OFFSET + Integer.BYTES;
+
+  /**
+   * Where the target id goes in a record.
+   */
+  static final int TARGET_OFFSET = SOURCE_OFFSET + Integer.BYTES;
+
+  /**
+   * Where the sequence number goes in a record.
+   */
+  static final int SEQ_OFFSET = TARGET_OFFSET + Integer.BYTES;
+
+  /**
+   * Where the hash goes in a record.
+   */
+  static final int HASH_OFFSET = SEQ_OFFSET + Long.BYTES;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of bytes in every record.
+   */
+  int recordSize;
+
+  /**
+   * The number of records in every segment.
+   */
+  int segmentRecords;
+
+  /**
+   * The segments holding the records.
+   */
+  ArrayList<ByteBuffer> segments;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty store for blocks with SHA-256 hashes.
+   */
+  public OffHeapBlockStore() {
+    this(ColumnarBlockStore.SHA256_LENGTH, DEFAULT_SEGMENT_RECORDS);
+  } // OffHeapBlockStore()
+
+  /**
+   * Create a new, empty store.
+   *
+   * @param hashLen
+   *   The number of bytes in every hash.
+   * @param perSegment
+   *   The number of records in each segment.
+   */
+  public OffHeapBlockStore(int hashLen, int perSegment) {
+    super(hashLen);
+    this.recordSize = HASH_OFFSET + hashLen;
+    this.segmentRecords = perSegment;
+    this.segments = new ArrayList<ByteBuffer>();
+  } // OffHeapBlockStore(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Get the segment holding a record.
+   *
+   * @param i the index of the record.
+   * @return its segment.
+   */
+  ByteBuffer segment(int i) {
+    return this.segments.get(i / this.segmentRecords);
+  } // segment(int)
+
+  /**
+   * Get the position of a record in its segment.
+   *
+   * @param i the index of the record.
+   * @return its position.
+   */
+  int offset(int i) {
+    return (i % this.segmentRecords) * this.recordSize;
+  } // offset(int)
+
+  /**
+   * Get the hash of one block.
+   *
+   * @param i the index of the block.
+   * @return its hash.
+   */
+  Hash hash(int i) {
+    byte[] data = new byte[this.hashLength];
+    segment(i).get(offset(i) + HASH_OFFSET, data);
+    return Hash.wrap(data);
+  } // hash(int)
+
+  /**
+   * Get one byte of the stored hash of a block.
+   *
+   * @param i the index of the block.
+   * @param b the index of the byte.
+   * @return the byte.
+   */
+  byte hashByte(int i, int b) {
+    return segment(i).get(offset(i) + HASH_OFFSET + b);
+  } // hashByte(int, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get one block, building it from its record.
+   *
+   * @param i
+   *   The index of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If i is not a valid index.
+   */
+  public Block get(int i) {
+    if (i < 0 || i >= this.size) {
+      throw new IndexOutOfBoundsException(i);
+    } // if
+    ByteBuffer seg = segment(i);
+    int start = offset(i);
+    Transaction transaction = new Transaction(users, seg.getInt(start + SOURCE_OFFSET),
+        seg.getInt(start + TARGET_OFFSET), seg.getInt(start + AMOUNT_OFFSET),
+        seg.getLong(start + SEQ_OFFSET));
+    return new Block(seg.getInt(start + NUM_OFFSET), transaction, prevHash(i),
+        seg.getLong(start + NONCE_OFFSET), hash(i));
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   *
+   * @throws IllegalArgumentException
+   *   If the block's hash is the wrong length or its previous hash is not
+   *   the hash of the last block in the store.
+   */
+  public void add(Block blk) {
+    link(blk);
+    if (this.size == this.segments.size() * this.segmentRecords) {
+      this.segments.add(ByteBuffer.allocateDirect(this.segmentRecords * this.recordSize));
+    } // if
+    ByteBuffer seg = segment(this.size);
+    int start = offset(this.size);
+    seg.putInt(start + NUM_OFFSET, blk.getNum());
+    seg.putLong(start + NONCE_OFFSET, blk.getNonce());
+    seg.putInt(start + AMOUNT_OFFSET, blk.getTransaction().getAmount());
+    seg.putInt(start + SOURCE_OFFSET, users.intern(blk.getTransaction().getSource()));
+    seg.putInt(start + TARGET_OFFSET, users.intern(blk.getTransaction().getTarget()));
+    seg.putLong(start + SEQ_OFFSET, blk.getTransaction().getSeq());
+    seg.put(start + HASH_OFFSET, blk.getHash().getBytes());
+    this.size++;
+  } // add(Block)
+
+  /**
+   * Create a new, empty off-heap store with the same hash length and
+   * segment size.
+   *
+   * @return the new store.
+   */
+  public BlockStore emptyCopy() {
+    return new OffHeapBlockStore(this.hashLength, this.segmentRecords);
+  } // emptyCopy()
+
+  /**
+   * Remove the last block from the store, if there is one. Empty segments
+   * are given back as the store shrinks, except for one spare, so that
+   * removing and appending at a segment boundary does not keep allocating.
+   */
+  public void removeLast() {
+    if (this.size == 0) {
+      return;
+    } // if
+    this.size--;
+    if (this.size < (this.segments.size() - 1) * this.segmentRecords) {
+      this.segments.remove(this.segments.size() - 1);
+    } // if
+  } // removeLast()
+} // class OffHeapBlockStore
@@ -0,0 +1,19 @@
+package edu.grinnell.csc207.blockchains;
+
+/**
+ * Things that want to hear how a long-running transfer is going.
+ *
+ * @author Mitch Paiva
+ */
+public interface ProgressListener {
+  /**
+   * Report progress.
+   *
+   * @param blocks
+   *   The number of blocks handled so far.
+   * @param bytes
+   *   The number of bytes handled so far.
+   */
+  void progress(long blocks, long bytes);
+
+} // interface ProgressListener
@@ -0,0 +1,269 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * A block store that keeps only the headers (number, nonce and hash) of
+ * the blocks below a height and the full blocks from there on. The full
+ * blocks stay in a store of the kind it wraps (so a pruned columnar or
+ * off-heap chain stays that way), and only the headers are kept beside
+ * it, so memory grows with the retention window plus a few dozen bytes
+ * per pruned block. The
+ * bodies of the older blocks are either in a BlockArchive, which get
+ * reads them back from (rehashing each one to make sure it still matches
+ * its header), or gone, in which case get refuses them.
+ *
+ * @author Mitch Paiva
+ */
+public class PrunedBlockStore implements BlockStore {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The initial number of headers we have room for.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of blocks whose bodies have been pruned.
+   */
+  int pruned;
+
+  /**
+   * The number of each pruned block.
+   */
+  int[] blockNums;
+
+  /**
+   * The nonce of each pruned block.
+   */
+  long[] nonces;
+
+  /**
+   * The hashes of the pruned blocks, hashLength bytes apiece.
+   */
+  byte[] hashes;
+
+  /**
+   * The number of bytes in every hash.
+   */
+  int hashLength;
+
+  /**
+   * The blocks that have not been pruned.
+   */
+  BlockStore window;
+
+  /**
+   * Where the pruned bodies are, or null if they were discarded.
+   */
+  BlockArchive archive;
+
+  /**
+   * How the blocks are hashed, for checking archived blocks.
+   */
+  DigestProvider digests;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a store holding the blocks of another, none of them pruned.
+   * The other store is used as is, and should not be changed except
+   * through this one.
+   *
+   * @param blocks
+   *   The store to wrap.
+   * @param archive
+   *   Where pruned bodies go, or null to discard them.
+   * @param hashing
+   *   How the blocks are hashed.
+   */
+  public PrunedBlockStore(BlockStore blocks, BlockArchive archive, DigestProvider hashing) {
+    this.window = blocks;
+    this.blockNums = new int[INITIAL_CAPACITY];
+    this.nonces = new long[INITIAL_CAPACITY];
+    this.archive = archive;
+    this.digests = hashing;
+  } // PrunedBlockStore(BlockStore, BlockArchive, DigestProvider)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Make room for at least some number of headers.
+   *
+   * @param count the number of headers.
+   */
+  void ensureCapacity(int count) {
+    if (count > this.nonces.length) {
+      int capacity = Math.max(count, this.nonces.length * 2);
+      this.blockNums = Arrays.copyOf(this.blockNums, capacity);
+      this.nonces = Arrays.copyOf(this.nonces, capacity);
+      this.hashes = Arrays.copyOf(this.hashes, capacity * this.hashLength);
+    } // if
+  } // ensureCapacity(int)
+
+  /**
+   * Get the hash of a pruned block.
+   *
+   * @param i the index of the block.
+   * @return its hash.
+   */
+  Hash hash(int i) {
+    int start = i * this.hashLength;
+    return Hash.wrap(Arrays.copyOfRange(this.hashes, start, start + this.hashLength));
+  } // hash(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine how many blocks are in the store, pruned or not.
+   *
+   * @return the number of blocks.
+   */
+  public int size() {
+    return this.pruned + this.window.size();
+  } // size()
+
+  /**
+   * Get one block, reading it from the archive if it has been pruned.
+   *
+   * @param i
+   *   The index of the block.
+   *
+   * @return the block.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If i is not a valid index.
+   * @throws IllegalStateException
+   *   If the block's body was pruned and discarded, or the archived block
+   *   (its contents, not just the hash stored with it) does not match its
+   *   header.
+   */
+  public Block get(int i) {
+    if (i < 0 || i >= size()) {
+      throw new IndexOutOfBoundsException(i);
+    } else if (i >= this.pruned) {
+      return this.window.get(i - this.pruned);
+    } else if (this.archive == null) {
+      throw new IllegalStateException("The body of block " + i + " has been pruned.");
+    } // if
+    Block blk = this.archive.get(blockNums[i]);
+    Hash expected = hash(i);
+    if (!blk.getHash().equals(expected) || !blk.computeHash(this.digests).equals(expected)) {
+      throw new IllegalStateException("The archived block " + i + " does not match its header.");
+    } // if
+    return blk;
+  } // get(int)
+
+  /**
+   * Add a block to the end of the store.
+   *
+   * @param blk
+   *   The block to add.
+   */
+  public void add(Block blk) {
+    this.window.add(blk);
+  } // add(Block)
+
+  /**
+   * Remove the last block from the store, unless it has been pruned.
+   */
+  public void removeLast() {
+    if (this.window.size() > 0) {
+      this.window.removeLast();
+    } // if
+  } // removeLast()
+
+  /**
+   * Create a new, empty store that keeps full blocks the way this one's
+   * window does.
+   *
+   * @return the new store.
+   */
+  public BlockStore emptyCopy() {
+    return this.window.emptyCopy();
+  } // emptyCopy()
+
+  /**
+   * Get the index of the first block whose body can be read: 0 if the
+   * pruned bodies are archived, and the number pruned otherwise.
+   *
+   * @return the index.
+   */
+  public int first() {
+    return (this.archive == null) ? this.pruned : 0;
+  } // first()
+
+  /**
+   * Get the number of blocks whose bodies have been pruned.
+   *
+   * @return the number of blocks.
+   */
+  public int pruned() {
+    return this.pruned;
+  } // pruned()
+
+  /**
+   * Prune the bodies of the blocks below a height, archiving them first if
+   * the store has an archive.
+   *
+   * @param height
+   *   The number of blocks to prune, counting from the first block.
+   *
+   * @throws IOException
+   *   If the bodies cannot be archived, in which case nothing is pruned.
+   * @throws IllegalArgumentException
+   *   If the height is beyond the end of the store.
+   */
+  public void prune(int height) throws IOException {
+    if (height > size()) {
+      throw new IllegalArgumentException("Cannot prune beyond the end of the store.");
+    } else if (height <= this.pruned) {
+      return;
+    } // if
+    int count = height - this.pruned;
+    if (this.archive != null) {
+      // Archive a segment's worth at a time, so a long run is never all
+      // on the heap at once.
+      ArrayList<Block> run = new ArrayList<Block>();
+      for (int i = 0; i < count; i++) {
+        run.add(this.window.get(i));
+        if (run.size() == this.archive.segmentBlocks || i == count - 1) {
+          this.archive.write(run);
+          run.clear();
+        } // if
+      } // for
+    } // if
+    if (this.hashes == null) {
+      this.hashLength = this.window.get(0).getHash().length();
+      this.hashes = new byte[this.nonces.length * this.hashLength];
+    } // if
+    ensureCapacity(height);
+    for (int i = 0; i < count; i++) {
+      Block blk = this.window.get(i);
+      this.blockNums[this.pruned] = blk.getNum();
+      this.nonces[this.pruned] = blk.getNonce();
+      System.arraycopy(blk.getHash().getBytes(), 0, this.hashes,
+          this.pruned * this.hashLength, this.hashLength);
+      this.pruned++;
+    } // for
+    BlockStore kept = this.window.emptyCopy();
+    for (int i = count; i < this.window.size(); i++) {
+      kept.add(this.window.get(i));
+    } // for
+    this.window = kept;
+  } // prune(int)
+} // class PrunedBlockStore
@@ -1,5 +1,10 @@
 package edu.grinnell.csc207.blockchains;
 
+import edu.grinnell.csc207.util.BloomFilter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /**
  * A simple transaction.
  *
@@ -26,6 +31,32 @@ public class Transaction {
    */
   private int amount;
 
+  /**
+   * The sequence number, which lets a sender make the same transfer more
+   * than once without it looking like a replay. Zero if unused.
+   */
+  private long seq;
+
+  /**
+   * The UTF-8 encoding of the source, once we've needed it.
+   */
+  private byte[] sourceBytes;
+
+  /**
+   * The UTF-8 encoding of the target, once we've needed it.
+   */
+  private byte[] targetBytes;
+
+  /**
+   * The hash code, once we've computed it (zero until then).
+   */
+  private int hashCode;
+
+  /**
+   * The id, once we've computed it.
+   */
+  private Hash id;
+
   // +--------------+------------------------------------------------
   // | Constructors |
   // +--------------+
@@ -42,10 +73,66 @@ public class Transaction {
    *   The funds transfered.
    */
   public Transaction(String src, String tgt, int amt) {
+    this(src, tgt, amt, 0);
+  } // Transaction(src)
+
+  /**
+   * Create a new Transaction with a sequence number. Transactions that
+   * differ only in their sequence numbers are different transactions.
+   *
+   * @param src
+   *   The source of the transaction (or empty for a deposit).
+   * @param tgt
+   *   The person receiving the transaction.
+   * @param amt
+   *   The funds transfered.
+   * @param seq
+   *   The sequence number.
+   */
+  public Transaction(String src, String tgt, int amt, long seq) {
     this.source = src;
     this.target = tgt;
     this.amount = amt;
-  } // Transaction(src)
+    this.seq = seq;
+  } // Transaction(String, String, int, long)
+
+  /**
+   * Create a new Transaction between users in a dictionary. The names and
+   * their encodings are shared with the dictionary.
+   *
+   * @param users
+   *   The dictionary holding the users.
+   * @param srcId
+   *   The id of the source (the empty name, for a deposit).
+   * @param tgtId
+   *   The id of the target.
+   * @param amt
+   *   The funds transfered.
+   */
+  public Transaction(UserDictionary users, int srcId, int tgtId, int amt) {
+    this(users, srcId, tgtId, amt, 0);
+  } // Transaction(UserDictionary, int, int, int)
+
+  /**
+   * Create a new Transaction with a sequence number between users in a
+   * dictionary.
+   *
+   * @param users
+   *   The dictionary holding the users.
+   * @param srcId
+   *   The id of the source (the empty name, for a deposit).
+   * @param tgtId
+   *   The id of the target.
+   * @param amt
+   *   The funds transfered.
+   * @param seq
+   *   The sequence number.
+   */
+  public Transaction(UserDictionary users, int srcId, int tgtId, int amt, long seq) {
+    this(users.name(srcId), users.name(tgtId), amt, seq);
+    this.sourceBytes = users.encoding(srcId);
+    this.targetBytes = users.encoding(tgtId);
+  } // Transaction(UserDictionary, int, int, int, long)
 
   // +---------+-----------------------------------------------------
   // | Methods |
@@ -69,6 +156,32 @@ public class Transaction {
     return this.target;
   } // getTarget()
 
+  /**
+   * Get the UTF-8 encoding of the source, as used in block hashes. The
+   * array is shared, so it must not be changed.
+   *
+   * @return the encoded source.
+   */
+  byte[] sourceBytes() {
+    if (this.sourceBytes == null) {
+      this.sourceBytes = this.source.getBytes(StandardCharsets.UTF_8);
+    } // if
+    return this.sourceBytes;
+  } // sourceBytes()
+
+  /**
+   * Get the UTF-8 encoding of the target, as used in block hashes. The
+   * array is shared, so it must not be changed.
+   *
+   * @return the encoded target.
+   */
+  byte[] targetBytes() {
+    if (this.targetBytes == null) {
+      this.targetBytes = this.target.getBytes(StandardCharsets.UTF_8);
+    } // if
+    return this.targetBytes;
+  } // targetBytes()
+
   /**
    * Get the amount of the transaction.
    *
@@ -78,6 +191,46 @@ public class Transaction {
     return this.amount;
   } // getAmount()
 
+  /**
+   * Get the sequence number of the transaction.
+   *
+   * @return the sequence number (zero if unused).
+   */
+  public long getSeq() {
+    return this.seq;
+  } // getSeq()
+
+  /**
+   * Get the id of the transaction: a SHA-256 digest of its source,
+   * target, amount, and sequence number. Equal transactions have equal
+   * ids, and it is computed once.
+   *
+   * @return the id.
+   */
+  public Hash id() {
+    if (this.id == null) {
+      MessageDigest md = DigestProviders.SHA256.threadDigest();
+      byte[] src = sourceBytes();
+      byte[] tgt = targetBytes();
+      md.update(ByteBuffer.allocate(2 * Integer.BYTES + src.length + tgt.length + Integer.BYTES
+          + Long.BYTES).putInt(src.length).put(src).putInt(tgt.length).put(tgt)
+          .putInt(this.amount).putLong(this.seq).array());
+      this.id = Hash.wrap(DigestProviders.SHA256.finish(md));
+    } // if
+    return this.id;
+  } // id()
+
+  /**
+   * Get a 64-bit fingerprint of the transaction, for Bloom filters. Equal
+   * transactions have equal fingerprints.
+   *
+   * @return the fingerprint.
+   */
+  public long fingerprint() {
+    return BloomFilter.mix(((BloomFilter.hash(this.source) * 31
+        + BloomFilter.hash(this.target)) * 31 + this.amount) * 31 + this.seq);
+  } // fingerprint()
+
   /**
    * Convert to string form.
    *
@@ -93,12 +246,18 @@ public class Transaction {
   } // toString()
 
   /**
-   * Get a hash code.
+   * Get a hash code. It is computed from the fields once, rather than
+   * from the string form.
    *
    * @return the hash code.
    */
   public int hashCode() {
-    return this.toString().hashCode();
+    if (this.hashCode == 0) {
+      int h = (this.source.hashCode() * 31 + this.target.hashCode()) * 31 + this.amount;
+      h = h * 31 + Long.hashCode(this.seq);
+      this.hashCode = (h == 0) ? 1 : h;
+    } // if
+    return this.hashCode;
   } // hashCode()
 
   /**
@@ -122,11 +281,12 @@ public class Transaction {
    *   The transaction to compare to.
    *
    * @return true if the other object has the same source, target,
-   *   and value.
+   *   value, and sequence number.
    */
   public boolean equals(Transaction other) {
-    return other.source.equals(this.source)
-        && other.target.equals(this.target)
-        && other.amount == this.amount;
+    return other.amount == this.amount
+        && other.seq == this.seq
+        && other.source.equals(this.source)
+        && other.target.equals(this.target);
   } // equals(Transaction)
 } // class Transaction
@@ -0,0 +1,133 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * A dictionary that gives each user name a dense int id (0, 1, 2, ...)
+ * and remembers its UTF-8 encoding, so that a name used in many
+ * transactions is only stored and encoded once.
+ *
+ * @author Mitch Paiva
+ */
+public class UserDictionary {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The names, indexed by id.
+   */
+  ArrayList<String> names;
+
+  /**
+   * The UTF-8 encodings of the names, indexed by id.
+   */
+  ArrayList<byte[]> encodings;
+
+  /**
+   * The id of each name.
+   */
+  HashMap<String, Integer> ids;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new, empty dictionary.
+   */
+  public UserDictionary() {
+    this.names = new ArrayList<String>();
+    this.encodings = new ArrayList<byte[]>();
+    this.ids = new HashMap<String, Integer>();
+  } // UserDictionary()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Get the id of a name, giving it one if it does not have one yet.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return its id.
+   */
+  public int intern(String name) {
+    Integer id = this.ids.get(name);
+    if (id == null) {
+      id = this.names.size();
+      this.names.add(name);
+      this.encodings.add(name.getBytes(StandardCharsets.UTF_8));
+      this.ids.put(name, id);
+    } // if
+    return id;
+  } // intern(String)
+
+  /**
+   * Get the id of a name without giving it one.
+   *
+   * @param name
+   *   The name.
+   *
+   * @return its id, or -1 if it does not have one.
+   */
+  public int idOf(String name) {
+    Integer id = this.ids.get(name);
+    return (id == null) ? -1 : id;
+  } // idOf(String)
+
+  /**
+   * Get the name with an id.
+   *
+   * @param id
+   *   The id.
+   *
+   * @return the name.
+   *
+   * @throws IndexOutOfBoundsException
+   *   If no name has that id.
+   */
+  public String name(int id) {
+    return this.names.get(id);
+  } // name(int)
+
+  /**
+   * Get the UTF-8 encoding of the name with an id. The array is shared, so
+   * it must not be changed.
+   *
+   * @param id
+   *   The id.
+   *
+   * @return the encoding.
+   */
+  byte[] encoding(int id) {
+    return this.encodings.get(id);
+  } // encoding(int)
+
+  /**
+   * Determine how many names are in the dictionary.
+   *
+   * @return the number of names.
+   */
+  public int size() {
+    return this.names.size();
+  } // size()
+
+  /**
+   * Forget the newest names, keeping only the first few.
+   *
+   * @param size
+   *   The number of names to keep.
+   */
+  public void truncate(int size) {
+    while (this.names.size() > size) {
+      int last = this.names.size() - 1;
+      this.ids.remove(this.names.remove(last));
+      this.encodings.remove(last);
+    } // while
+  } // truncate(int)
+} // class UserDictionary
@@ -0,0 +1,225 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded record of blocks whose hashes have already been checked
+ * against their contents, so that checking them again does not mean
+ * computing SHA-256 again.
+ *
+ * Entries are keyed by block hash, but a block only counts as checked if
+ * its number, transaction, previous hash, and nonce are all the same as
+ * when it was checked, since a block can be changed after it is mined.
+ * Only blocks that passed are recorded. When the cache is full, the block
+ * checked least recently is forgotten.
+ *
+ * @author Mitch Paiva
+ */
+public class ValidationCache {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The default number of blocks to remember.
+   */
+  public static final int DEFAULT_CAPACITY = 1 << 14;
+
+  // +-------------+-------------------------------------------------
+  // | Local class |
+  // +-------------+
+
+  /**
+   * The contents of a checked block.
+   */
+  static class Header {
+    /**
+     * The number of the block.
+     */
+    int num;
+
+    /**
+     * The source of the transaction.
+     */
+    String source;
+
+    /**
+     * The target of the transaction.
+     */
+    String target;
+
+    /**
+     * The amount of the transaction.
+     */
+    int amount;
+
+    /**
+     * The sequence number of the transaction.
+     */
+    long seq;
+
+    /**
+     * The hash of the previous block.
+     */
+    Hash prevHash;
+
+    /**
+     * The nonce.
+     */
+    long nonce;
+
+    /**
+     * Record the contents of a block.
+     *
+     * @param blk the block.
+     */
+    Header(Block blk) {
+      this.num = blk.getNum();
+      this.source = blk.getTransaction().getSource();
+      this.target = blk.getTransaction().getTarget();
+      this.amount = blk.getTransaction().getAmount();
+      this.seq = blk.getTransaction().getSeq();
+      this.prevHash = blk.getPrevHash();
+      this.nonce = blk.getNonce();
+    } // Header(Block)
+
+    /**
+     * Determine whether a block still has these contents.
+     *
+     * @param blk the block.
+     * @return true if it does and false otherwise.
+     */
+    boolean matches(Block blk) {
+      Transaction transaction = blk.getTransaction();
+      return this.num == blk.getNum() && this.nonce == blk.getNonce()
+          && this.amount == transaction.getAmount() && this.seq == transaction.getSeq()
+          && this.source.equals(transaction.getSource())
+          && this.target.equals(transaction.getTarget())
+          && (this.prevHash == null
+              ? blk.getPrevHash() == null : this.prevHash.equals(blk.getPrevHash()));
+    } // matches(Block)
+  } // class Header
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The checked blocks, least recently used first.
+   */
+  LinkedHashMap<Hash, Header> checked;
+
+  /**
+   * The number of lookups that found the block.
+   */
+  long hits;
+
+  /**
+   * The number of lookups that did not.
+   */
+  long misses;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new cache of the default size.
+   */
+  public ValidationCache() {
+    this(DEFAULT_CAPACITY);
+  } // ValidationCache()
+
+  /**
+   * Create a new cache.
+   *
+   * @param capacity
+   *   The number of blocks to remember.
+   */
+  public ValidationCache(int capacity) {
+    this.checked = new LinkedHashMap<Hash, Header>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<Hash, Header> eldest) {
+        return size() > capacity;
+      } // removeEldestEntry(Map.Entry<Hash, Header>)
+    };
+  } // ValidationCache(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine whether a block has already been checked, with the same
+   * contents.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @return true if it has and false otherwise.
+   */
+  public synchronized boolean contains(Block blk) {
+    Header header = checked.get(blk.getHash());
+    if (header != null && header.matches(blk)) {
+      hits++;
+      return true;
+    } // if
+    misses++;
+    return false;
+  } // contains(Block)
+
+  /**
+   * Record that a block's hash matches its contents.
+   *
+   * @param blk
+   *   The block.
+   */
+  public synchronized void add(Block blk) {
+    checked.put(blk.getHash(), new Header(blk));
+  } // add(Block)
+
+  /**
+   * Forget a block.
+   *
+   * @param blk
+   *   The block.
+   */
+  public synchronized void remove(Block blk) {
+    checked.remove(blk.getHash());
+  } // remove(Block)
+
+  /**
+   * Forget every block.
+   */
+  public synchronized void clear() {
+    checked.clear();
+  } // clear()
+
+  /**
+   * Determine how many blocks are remembered.
+   *
+   * @return the number of blocks.
+   */
+  public synchronized int size() {
+    return checked.size();
+  } // size()
+
+  /**
+   * Get the number of lookups that found the block.
+   *
+   * @return the number of hits.
+   */
+  public synchronized long hits() {
+    return hits;
+  } // hits()
+
+  /**
+   * Get the number of lookups that did not find the block.
+   *
+   * @return the number of misses.
+   */
+  public synchronized long misses() {
+    return misses;
+  } // misses()
+} // class ValidationCache
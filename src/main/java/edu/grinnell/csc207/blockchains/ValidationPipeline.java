@@ -0,0 +1,248 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Appends incoming blocks to a chain in two stages, so that hashing does
+ * not hold up the balances.
+ *
+ * The first stage runs the checks that need nothing but the block (the
+ * validator on the hash, and the hash against the contents) on a pool of
+ * threads as soon as each block is submitted. The second stage is a
+ * single committer thread that takes the blocks in the order they were
+ * submitted, waits for each one's first stage, and then does the work
+ * that depends on the chain: the link to the previous hash, the
+ * transaction against the current balances (validTransaction), and the
+ * append itself, which updates the balances. With enough threads in the
+ * first stage, blocks are appended as fast as the committer can apply
+ * them.
+ *
+ * Unlike BlockChain.append, the pipeline refuses blocks whose transaction
+ * the source cannot afford. A refused block fails its future, and so does
+ * every block after it that was linked to it. Only the pipeline should
+ * append to the chain while it is running.
+ *
+ * @author Mitch Paiva
+ */
+public class ValidationPipeline {
+  // +-------------+-------------------------------------------------
+  // | Local class |
+  // +-------------+
+
+  /**
+   * A block on its way through the pipeline.
+   */
+  static class Pending {
+    /**
+     * The block, or null to tell the committer to stop.
+     */
+    Block blk;
+
+    /**
+     * Whether the block passed the first stage.
+     */
+    CompletableFuture<Boolean> checked;
+
+    /**
+     * Completed once the block is appended (and persisted, if the chain
+     * has a journal).
+     */
+    CompletableFuture<Void> done;
+
+    /**
+     * Start a block through the pipeline.
+     *
+     * @param blk the block, or null.
+     * @param checked whether it passed the first stage.
+     */
+    Pending(Block blk, CompletableFuture<Boolean> checked) {
+      this.blk = blk;
+      this.checked = checked;
+      this.done = new CompletableFuture<Void>();
+    } // Pending(Block, CompletableFuture<Boolean>)
+  } // class Pending
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain we append to.
+   */
+  BlockChain chain;
+
+  /**
+   * The threads running the first stage.
+   */
+  ExecutorService checkers;
+
+  /**
+   * The blocks waiting for the committer, in the order submitted.
+   */
+  BlockingQueue<Pending> pending;
+
+  /**
+   * The committer.
+   */
+  Thread committer;
+
+  /**
+   * The number of blocks appended.
+   */
+  AtomicLong committed;
+
+  /**
+   * The number of blocks refused.
+   */
+  AtomicLong rejected;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a pipeline for a chain and start its committer.
+   *
+   * @param chain
+   *   The chain to append to.
+   * @param threads
+   *   The number of threads for the first stage.
+   */
+  public ValidationPipeline(BlockChain chain, int threads) {
+    this.chain = chain;
+    this.checkers = Executors.newFixedThreadPool(threads, (task) -> {
+      Thread thread = new Thread(task, "block-checker");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.pending = new LinkedBlockingQueue<Pending>();
+    this.committed = new AtomicLong();
+    this.rejected = new AtomicLong();
+    this.committer = new Thread(this::run, "block-committer");
+    this.committer.setDaemon(true);
+    this.committer.start();
+  } // ValidationPipeline(BlockChain, int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Run the first stage on a block.
+   *
+   * @param blk the block.
+   * @return true if its hash is valid and matches its contents.
+   */
+  boolean check(Block blk) {
+    return chain.validator.isValid(blk.getHash()) && chain.validHashContents(blk);
+  } // check(Block)
+
+  /**
+   * Run the second stage on a block.
+   *
+   * @param next the block and the results so far.
+   */
+  void commit(Pending next) {
+    Block blk = next.blk;
+    boolean good;
+    try {
+      good = next.checked.join();
+    } catch (RuntimeException e) {
+      good = false;
+    } // try/catch
+    if (good && blk.getPrevHash().equals(chain.getHash())
+        && chain.validTransaction(blk.getTransaction())) {
+      CompletableFuture<Void> durable;
+      try {
+        durable = chain.appendUnchecked(blk);
+      } catch (RuntimeException e) {
+        rejected.incrementAndGet();
+        next.done.completeExceptionally(e);
+        return;
+      } // try/catch
+      committed.incrementAndGet();
+      durable.whenComplete((ok, failure) -> {
+        if (failure == null) {
+          next.done.complete(null);
+        } else {
+          next.done.completeExceptionally(failure);
+        } // if
+      });
+    } else {
+      rejected.incrementAndGet();
+      next.done.completeExceptionally(
+          new IllegalArgumentException("Block " + blk.getNum() + " was refused."));
+    } // if
+  } // commit(Pending)
+
+  /**
+   * Commit blocks in order until told to stop.
+   */
+  void run() {
+    try {
+      for (Pending next = pending.take(); next.blk != null; next = pending.take()) {
+        commit(next);
+      } // for
+    } catch (InterruptedException e) {
+      // Stop early.
+    } // try/catch
+  } // run()
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Submit a block to be appended after the blocks already submitted.
+   * Its first stage starts at once.
+   *
+   * @param blk
+   *   The block.
+   *
+   * @return a future completed once the block is appended, or failed with
+   *   an IllegalArgumentException if it was refused, or with whatever the
+   *   chain threw if the append itself failed.
+   */
+  public synchronized CompletableFuture<Void> submit(Block blk) {
+    Pending next = new Pending(blk, CompletableFuture.supplyAsync(() -> check(blk), checkers));
+    pending.add(next);
+    return next.done;
+  } // submit(Block)
+
+  /**
+   * Finish the blocks already submitted, then stop.
+   *
+   * @throws InterruptedException
+   *   If we are interrupted while waiting.
+   */
+  public void finish() throws InterruptedException {
+    synchronized (this) {
+      pending.add(new Pending(null, null));
+    } // synchronized
+    committer.join();
+    checkers.shutdown();
+  } // finish()
+
+  /**
+   * Get the number of blocks appended so far.
+   *
+   * @return the number of blocks.
+   */
+  public long committed() {
+    return committed.get();
+  } // committed()
+
+  /**
+   * Get the number of blocks refused so far.
+   *
+   * @return the number of blocks.
+   */
+  public long rejected() {
+    return rejected.get();
+  } // rejected()
+} // class ValidationPipeline
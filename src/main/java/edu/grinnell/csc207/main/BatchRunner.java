@@ -0,0 +1,238 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.Transaction;
+import edu.grinnell.csc207.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Iterator;
+import java.util.regex.Pattern;
+
+/**
+ * Runs BlockChainUI commands from a script or pipe, without prompts.
+ *
+ * Each line holds one command and its arguments, separated by whitespace.
+ * A source of "-" stands for a deposit. Blank lines and lines starting
+ * with "#" are ignored. Output is buffered and only flushed at the end.
+ *
+ * @author Mitch Paiva
+ */
+public class BatchRunner {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * What separates the fields of a command.
+   */
+  static final Pattern FIELDS = Pattern.compile("\\s+");
+
+  /**
+   * The source used in scripts for deposits.
+   */
+  static final String DEPOSIT = "-";
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Print out the instructions.
+   *
+   * @param pen
+   *   The pen used for printing instructions.
+   */
+  public static void instructions(PrintWriter pen) {
+    pen.println("""
+      Batch commands (one per line, use - as the source of a deposit):
+        mine SOURCE TARGET AMOUNT: prints the nonce for a transaction
+        append SOURCE TARGET AMOUNT NONCE: appends a block
+        commit SOURCE TARGET AMOUNT: mines and appends a block
+        remove: removes the last block
+        check: checks that the block chain is valid
+        balance USER: prints a user's balance
+        size: prints the number of blocks
+        stats: prints metrics for mining, appending, and checking
+        users: prints a list of users
+        transactions: prints out the chain of transactions
+        blocks: prints out the chain of blocks
+        help: prints this list of commands
+        quit: stops reading commands""");
+  } // instructions(PrintWriter)
+
+  /**
+   * Build the transaction described by the fields of a command.
+   *
+   * @param fields
+   *   The command and its arguments.
+   *
+   * @return the transaction.
+   *
+   * @throws IllegalArgumentException
+   *   If the fields do not describe a transaction.
+   */
+  static Transaction transaction(String[] fields) {
+    if (fields.length < 4) {
+      throw new IllegalArgumentException("expected SOURCE TARGET AMOUNT");
+    } // if
+    String source = DEPOSIT.equals(fields[1]) ? "" : fields[1];
+    try {
+      return new Transaction(source, fields[2], Integer.parseInt(fields[3]));
+    } catch (NumberFormatException e) {
+      throw new IllegalArgumentException("invalid amount '" + fields[3] + "'");
+    } // try/catch
+  } // transaction(String[])
+
+  /**
+   * Run one command.
+   *
+   * @param pen
+   *   Where to print results.
+   * @param chain
+   *   The chain to run the command against.
+   * @param fields
+   *   The command and its arguments.
+   *
+   * @return false if the command asks us to stop and true otherwise.
+   *
+   * @throws IllegalArgumentException
+   *   If the command is invalid or fails.
+   */
+  static boolean runCommand(PrintWriter pen, BlockChain chain, String[] fields) {
+    switch (fields[0].toLowerCase()) {
+      case "append":
+        if (fields.length < 5) {
+          throw new IllegalArgumentException("expected SOURCE TARGET AMOUNT NONCE");
+        } // if
+        long nonce;
+        try {
+          nonce = Long.parseLong(fields[4]);
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("invalid nonce '" + fields[4] + "'");
+        } // try/catch
+        Block block = new Block(chain.getSize(), transaction(fields), chain.getHash(), nonce,
+            chain.getDigests());
+        chain.append(block);
+        pen.println("Appended block " + block.getNum());
+        break;
+
+      case "balance":
+        if (fields.length < 2) {
+          throw new IllegalArgumentException("expected USER");
+        } // if
+        pen.println(fields[1] + " " + chain.balance(fields[1]));
+        break;
+
+      case "blocks":
+        Iterator<Block> blocks = chain.blocks();
+        while (blocks.hasNext()) {
+          pen.println(blocks.next());
+        } // while
+        break;
+
+      case "check":
+        try {
+          chain.check();
+          pen.println("The blockchain checks out.");
+        } catch (Exception e) {
+          pen.println("The blockchain is invalid: " + e.getMessage());
+        } // try/catch
+        break;
+
+      case "commit":
+        Block mined = chain.mine(transaction(fields));
+        chain.append(mined);
+        pen.println("Appended block " + mined.getNum() + " with nonce " + mined.getNonce());
+        break;
+
+      case "help":
+        instructions(pen);
+        break;
+
+      case "mine":
+        pen.println("nonce " + chain.mine(transaction(fields)).getNonce());
+        break;
+
+      case "quit":
+        return false;
+
+      case "remove":
+        pen.println(chain.removeLast() ? "Removed the last block." : "Unable to remove.");
+        break;
+
+      case "size":
+        pen.println(chain.getSize());
+        break;
+
+      case "stats":
+        Metrics.report(pen);
+        break;
+
+      case "transactions":
+        Iterator<Transaction> transactions = chain.iterator();
+        while (transactions.hasNext()) {
+          pen.println(transactions.next());
+        } // while
+        break;
+
+      case "users":
+        Iterator<String> users = chain.users();
+        while (users.hasNext()) {
+          pen.println(users.next());
+        } // while
+        break;
+
+      default:
+        throw new IllegalArgumentException("invalid command '" + fields[0] + "'");
+    } // switch
+    return true;
+  } // runCommand(PrintWriter, BlockChain, String[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Run all the commands from a reader. A command that fails is reported
+   * along with its line number, and the remaining commands still run.
+   *
+   * @param eyes
+   *   Where to read commands from.
+   * @param pen
+   *   Where to print results. It is flushed, but not closed, at the end.
+   * @param chain
+   *   The chain to run the commands against.
+   *
+   * @return the number of commands run.
+   *
+   * @throws IOException
+   *   If the commands cannot be read.
+   */
+  public static long run(BufferedReader eyes, PrintWriter pen, BlockChain chain)
+      throws IOException {
+    long lineNum = 0;
+    long commands = 0;
+    String line;
+    while ((line = eyes.readLine()) != null) {
+      lineNum++;
+      line = line.strip();
+      if (line.isEmpty() || line.charAt(0) == '#') {
+        continue;
+      } // if
+      commands++;
+      try {
+        if (!runCommand(pen, chain, FIELDS.split(line))) {
+          break;
+        } // if
+      } catch (IllegalArgumentException e) {
+        pen.printf("line %d: %s\n", lineNum,
+            (e.getMessage() == null) ? "invalid block" : e.getMessage());
+      } // try/catch
+    } // while
+    pen.flush();
+    return commands;
+  } // run(BufferedReader, PrintWriter, BlockChain)
+} // class BatchRunner
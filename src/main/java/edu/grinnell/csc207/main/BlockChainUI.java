@@ -2,16 +2,29 @@ package edu.grinnell.csc207.main;
 
 import edu.grinnell.csc207.blockchains.Block;
 import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.ChainIO;
+import edu.grinnell.csc207.blockchains.DigestProvider;
+import edu.grinnell.csc207.blockchains.DigestProviders;
 import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.ListBlockStore;
 import edu.grinnell.csc207.blockchains.Transaction;
 import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.metrics.Metrics;
 
 import edu.grinnell.csc207.util.IOUtils;
 import java.util.Iterator;
 
 import java.io.PrintWriter;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.security.NoSuchAlgorithmException;
 
 /**
  * A simple UI for our BlockChain class.
@@ -30,6 +43,16 @@ public class BlockChainUI {
    */
   static final int VALIDATOR_BYTES = 3;
 
+  /**
+   * The command-line flag that selects batch mode.
+   */
+  static final String BATCH_FLAG = "--batch";
+
+  /**
+   * The size of the output buffer in batch mode.
+   */
+  static final int BATCH_BUFFER_SIZE = 1 << 16;
+
   // +---------+-----------------------------------------------------
   // | Helpers |
   // +---------+
@@ -47,7 +70,10 @@ public class BlockChainUI {
         append: appends a new block onto the end of the chain
         remove: removes the last block from the end of the chain
         check: checks that the block chain is valid
+        export: saves the block chain to a file
+        import: loads a block chain from a file, checking every block
         users: prints a list of users
+        stats: prints metrics for mining, appending, and checking
         balance: finds a user's balance
         transactions: prints out the chain of transactions
         blocks: prints out the chain of blocks (for debugging only)
@@ -55,6 +81,50 @@ public class BlockChainUI {
         quit: quits the program""");
   } // instructions(PrintWriter)
 
+  /**
+   * Build the validator for our blockchains, which requires the first
+   * VALIDATOR_BYTES bytes of a hash to be zero.
+   *
+   * @return the validator.
+   */
+  static HashValidator validator() {
+    return (h) -> {
+      if (h.length() < VALIDATOR_BYTES) {
+        return false;
+      } // if
+      for (int v = 0; v < VALIDATOR_BYTES; v++) {
+        if (h.get(v) != 0) {
+          return false;
+        } // if
+      } // for
+      return true;
+    };
+  } // validator()
+
+  /**
+   * Run commands from a file (or from standard input, if there is no file)
+   * without prompting.
+   *
+   * @param fileName
+   *   The file holding the commands, or null for standard input.
+   *
+   * @throws IOException
+   *   If the commands cannot be read.
+   * @throws NoSuchAlgorithmException
+   *   If the hash chosen with -Dblockchains.digest is not available.
+   */
+  static void batch(String fileName) throws IOException, NoSuchAlgorithmException {
+    InputStream in = (fileName == null) ? System.in : new FileInputStream(fileName);
+    PrintWriter pen = new PrintWriter(
+        new BufferedWriter(new OutputStreamWriter(System.out), BATCH_BUFFER_SIZE), false);
+    try (BufferedReader eyes = new BufferedReader(new InputStreamReader(in),
+        BATCH_BUFFER_SIZE)) {
+      BatchRunner.run(eyes, pen,
+          new BlockChain(validator(), new ListBlockStore(), DigestProviders.configured()));
+    } // try
+    pen.close();
+  } // batch(String)
+
   // +------+--------------------------------------------------------
   // | Main |
   // +------+
@@ -63,26 +133,24 @@ public class BlockChainUI {
    * Run the UI.
    *
    * @param args
-   *   Command-line arguments (currently ignored).
+   *   Command-line arguments. Use "--batch [FILE]" to run commands from
+   *   a file or pipe instead of interactively. The hash may be chosen with
+   *   -Dblockchains.digest (see DigestProviders.forName).
    */
   public static void main(String[] args) throws Exception {
+    Metrics.register();
+    if (args.length > 0 && BATCH_FLAG.equals(args[0])) {
+      batch((args.length > 1) ? args[1] : null);
+      return;
+    } // if
+
     PrintWriter pen = new PrintWriter(System.out, true);
     BufferedReader eyes = new BufferedReader(new InputStreamReader(System.in));
 
     // Set up our blockchain.
-    HashValidator validator =
-        (h) -> {
-          if (h.length() < VALIDATOR_BYTES) {
-            return false;
-          } // if
-          for (int v = 0; v < VALIDATOR_BYTES; v++) {
-            if (h.get(v) != 0) {
-              return false;
-            } // if
-          } // for
-          return true;
-        };
-    BlockChain chain = new BlockChain(validator);
+    HashValidator validator = validator();
+    DigestProvider hashing = DigestProviders.configured();
+    BlockChain chain = new BlockChain(validator, new ListBlockStore(), hashing);
 
     instructions(pen);
 
@@ -112,7 +180,7 @@ public class BlockChainUI {
             int bNum = chain.getSize();
             Hash prevHash = chain.getHash();
 
-            Block block = new Block(bNum, transaction, prevHash, nonce);
+            Block block = new Block(bNum, transaction, prevHash, nonce, chain.getDigests());
 
             chain.append(block);
             pen.println("Appended: " + block.toString());
@@ -148,6 +216,26 @@ public class BlockChainUI {
           } // try/catch
           break;
 
+        case "export":
+          String exportFile = IOUtils.readLine(pen, eyes, "File: ");
+          try (OutputStream out = new FileOutputStream(exportFile)) {
+            long exported = ChainIO.export(chain, out, null);
+            pen.printf("Exported %d blocks to %s\n", exported, exportFile);
+          } catch (IOException exception) {
+            pen.println("Could not export: " + exception.getMessage());
+          } // try/catch
+          break;
+
+        case "import":
+          String importFile = IOUtils.readLine(pen, eyes, "File: ");
+          try (InputStream in = new FileInputStream(importFile)) {
+            chain = ChainIO.importChain(in, validator, hashing, true,
+                (blocks, bytes) -> pen.printf("Imported %d blocks\n", blocks));
+          } catch (IOException exception) {
+            pen.println("Could not import: " + exception.getMessage());
+          } // try/catch
+          break;
+
         case "help":
           instructions(pen);
           break;
@@ -173,6 +261,10 @@ public class BlockChainUI {
           } // if
           break;
 
+        case "stats":
+          Metrics.report(pen);
+          break;
+
         case "transactions":
           pen.println("Transactions:");
           Iterator<Transaction> transactions = chain.iterator();
@@ -0,0 +1,449 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.DigestProviders;
+import edu.grinnell.csc207.blockchains.ListBlockStore;
+import edu.grinnell.csc207.blockchains.Transaction;
+import edu.grinnell.csc207.metrics.Metrics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Serves a blockchain to many clients at once over TCP.
+ *
+ * Each connection is handled on its own thread: a virtual thread when the
+ * JVM has them (Java 21 and up) and a pooled platform thread otherwise,
+ * so the server still builds and runs on Java 17. Queries run in
+ * parallel under a read lock. Appends are queued for a single appender
+ * thread, which mines each block without the lock and takes the write
+ * lock only to add it, so queries are held up for as short a time as
+ * possible.
+ *
+ * The protocol is line-based. Every request gets a line starting with
+ * "OK" or "ERR"; history is followed by one line per transaction.
+ * <pre>
+ *   balance USER                  OK BALANCE
+ *   history USER [LIMIT]          OK COUNT, then COUNT transactions
+ *   size                          OK BLOCKS
+ *   append SOURCE TARGET AMOUNT   OK BLOCKNUM (use - as the source of a deposit)
+ *   quit                          (closes the connection)
+ * </pre>
+ *
+ * @author Mitch Paiva
+ */
+public class ChainServer implements AutoCloseable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The port we listen on by default.
+   */
+  public static final int DEFAULT_PORT = 8207;
+
+  /**
+   * The number of pending connections the operating system should queue.
+   */
+  static final int BACKLOG = 1024;
+
+  /**
+   * The size of the buffers on each connection.
+   */
+  static final int CONNECTION_BUFFER_SIZE = 8192;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The chain we serve.
+   */
+  BlockChain chain;
+
+  /**
+   * Guards the chain: queries hold the read lock, appends the write lock.
+   */
+  ReadWriteLock lock;
+
+  /**
+   * The transactions waiting to be appended, with the futures to complete
+   * once they are.
+   */
+  BlockingQueue<PendingAppend> appends;
+
+  /**
+   * The thread that appends blocks.
+   */
+  Thread appender;
+
+  /**
+   * Runs the connections.
+   */
+  ExecutorService connections;
+
+  /**
+   * The socket we accept connections on.
+   */
+  ServerSocket server;
+
+  /**
+   * The thread accepting connections.
+   */
+  Thread acceptor;
+
+  /**
+   * The connections currently open, so that we can close them.
+   */
+  Set<Socket> open;
+
+  // +-------------+-------------------------------------------------
+  // | Local class |
+  // +-------------+
+
+  /**
+   * A transaction waiting to be appended.
+   */
+  static class PendingAppend {
+    /**
+     * The transaction.
+     */
+    Transaction transaction;
+
+    /**
+     * Completed with the number of the new block.
+     */
+    CompletableFuture<Integer> result;
+
+    /**
+     * Create a new pending append.
+     *
+     * @param transaction the transaction.
+     */
+    PendingAppend(Transaction transaction) {
+      this.transaction = transaction;
+      this.result = new CompletableFuture<Integer>();
+    } // PendingAppend(Transaction)
+  } // class PendingAppend
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new server for a chain. It does nothing until started.
+   *
+   * @param chain
+   *   The chain to serve. Nothing else should change it while the server
+   *   is running.
+   */
+  public ChainServer(BlockChain chain) {
+    this.chain = chain;
+    this.lock = new ReentrantReadWriteLock();
+    this.appends = new LinkedBlockingQueue<PendingAppend>();
+    this.open = ConcurrentHashMap.newKeySet();
+  } // ChainServer(BlockChain)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Get an executor that runs each task on a new virtual thread, if this
+   * JVM has virtual threads, or on a pool of platform threads otherwise.
+   *
+   * @return the executor.
+   */
+  public static ExecutorService perTaskExecutor() {
+    try {
+      return (ExecutorService) Executors.class
+          .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      return Executors.newCachedThreadPool((task) -> {
+        Thread thread = new Thread(task);
+        thread.setDaemon(true);
+        return thread;
+      });
+    } // try/catch
+  } // perTaskExecutor()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Append the queued transactions, one at a time, until interrupted.
+   */
+  void appendLoop() {
+    while (true) {
+      PendingAppend pending;
+      try {
+        pending = appends.take();
+      } catch (InterruptedException e) {
+        break;
+      } // try/catch
+      try {
+        // We are the only writer, so we may read the balances and the
+        // last hash without the lock.
+        if (!chain.validTransaction(pending.transaction)) {
+          throw new IllegalArgumentException("invalid transaction");
+        } // if
+        Block blk = chain.mine(pending.transaction);
+        lock.writeLock().lock();
+        try {
+          chain.append(blk);
+        } finally {
+          lock.writeLock().unlock();
+        } // try/finally
+        pending.result.complete(blk.getNum());
+      } catch (RuntimeException e) {
+        pending.result.completeExceptionally(e);
+      } // try/catch
+    } // while
+    for (PendingAppend pending : appends) {
+      pending.result.completeExceptionally(new IllegalStateException("server closed"));
+    } // for
+  } // appendLoop()
+
+  /**
+   * Accept connections until the server socket is closed.
+   */
+  void acceptLoop() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        open.add(socket);
+        connections.execute(() -> serve(socket));
+      } catch (IOException e) {
+        // Closed, or a failed connection; the loop test tells which.
+      } // try/catch
+    } // while
+  } // acceptLoop()
+
+  /**
+   * Handle one connection until the client quits or disconnects.
+   *
+   * @param socket the connection.
+   */
+  void serve(Socket socket) {
+    try (socket;
+        BufferedReader eyes = new BufferedReader(new InputStreamReader(
+            socket.getInputStream(), StandardCharsets.UTF_8), CONNECTION_BUFFER_SIZE);
+        PrintWriter pen = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+            socket.getOutputStream(), StandardCharsets.UTF_8), CONNECTION_BUFFER_SIZE))) {
+      String line;
+      while ((line = eyes.readLine()) != null) {
+        String[] fields = BatchRunner.FIELDS.split(line.trim());
+        if (fields[0].equalsIgnoreCase("quit")) {
+          break;
+        } // if
+        try {
+          respond(pen, fields);
+        } catch (IllegalArgumentException e) {
+          pen.println("ERR " + e.getMessage());
+        } // try/catch
+        pen.flush();
+      } // while
+    } catch (IOException e) {
+      // The client went away.
+    } finally {
+      open.remove(socket);
+    } // try/finally
+  } // serve(Socket)
+
+  /**
+   * Respond to one request.
+   *
+   * @param pen where to write the response.
+   * @param fields the request and its arguments.
+   * @throws IllegalArgumentException if the request is invalid or fails.
+   */
+  void respond(PrintWriter pen, String[] fields) {
+    switch (fields[0].toLowerCase()) {
+      case "balance":
+        if (fields.length < 2) {
+          throw new IllegalArgumentException("expected USER");
+        } // if
+        lock.readLock().lock();
+        try {
+          pen.println("OK " + chain.balance(fields[1]));
+        } finally {
+          lock.readLock().unlock();
+        } // try/finally
+        break;
+
+      case "history":
+        if (fields.length < 2) {
+          throw new IllegalArgumentException("expected USER [LIMIT]");
+        } // if
+        int limit;
+        try {
+          limit = (fields.length > 2) ? Integer.parseInt(fields[2]) : Integer.MAX_VALUE;
+        } catch (NumberFormatException e) {
+          throw new IllegalArgumentException("invalid limit '" + fields[2] + "'");
+        } // try/catch
+        ArrayList<Transaction> history = history(fields[1], limit);
+        pen.println("OK " + history.size());
+        for (Transaction t : history) {
+          pen.println(t);
+        } // for
+        break;
+
+      case "size":
+        lock.readLock().lock();
+        try {
+          pen.println("OK " + chain.getSize());
+        } finally {
+          lock.readLock().unlock();
+        } // try/finally
+        break;
+
+      case "append":
+        pen.println("OK " + append(BatchRunner.transaction(fields)));
+        break;
+
+      default:
+        throw new IllegalArgumentException("unknown command '" + fields[0] + "'");
+    } // switch
+  } // respond(PrintWriter, String[])
+
+  /**
+   * Find the most recent transactions involving a user.
+   *
+   * @param user the user.
+   * @param limit the most transactions to return.
+   * @return the transactions, oldest first.
+   */
+  ArrayList<Transaction> history(String user, int limit) {
+    ArrayList<Transaction> history = new ArrayList<Transaction>();
+    lock.readLock().lock();
+    try {
+      Iterator<Transaction> transactions = chain.iterator();
+      while (transactions.hasNext()) {
+        Transaction t = transactions.next();
+        if (t.getSource().equals(user) || t.getTarget().equals(user)) {
+          history.add(t);
+        } // if
+      } // while
+    } finally {
+      lock.readLock().unlock();
+    } // try/finally
+    int from = Math.max(0, history.size() - limit);
+    return new ArrayList<Transaction>(history.subList(from, history.size()));
+  } // history(String, int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Start accepting connections.
+   *
+   * @param port
+   *   The port to listen on, or 0 for any free port.
+   *
+   * @return the port we are listening on.
+   *
+   * @throws IOException
+   *   If we cannot listen on the port.
+   */
+  public synchronized int start(int port) throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("The server has already been started.");
+    } // if
+    server = new ServerSocket(port, BACKLOG);
+    connections = perTaskExecutor();
+    appender = new Thread(this::appendLoop, "chain-appender");
+    appender.start();
+    acceptor = new Thread(this::acceptLoop, "chain-acceptor");
+    acceptor.start();
+    return server.getLocalPort();
+  } // start(int)
+
+  /**
+   * Append a transaction, waiting until it is in the chain.
+   *
+   * @param transaction
+   *   The transaction.
+   *
+   * @return the number of its block.
+   *
+   * @throws IllegalArgumentException
+   *   If the transaction could not be appended.
+   */
+  public int append(Transaction transaction) {
+    PendingAppend pending = new PendingAppend(transaction);
+    appends.add(pending);
+    try {
+      return pending.result.get();
+    } catch (ExecutionException e) {
+      String why = e.getCause().getMessage();
+      throw new IllegalArgumentException((why == null) ? "could not append" : why);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalArgumentException("interrupted");
+    } // try/catch
+  } // append(Transaction)
+
+  /**
+   * Stop accepting connections, close the open ones, and stop appending.
+   *
+   * @throws IOException
+   *   If the server socket cannot be closed.
+   */
+  public synchronized void close() throws IOException {
+    if (server == null) {
+      return;
+    } // if
+    server.close();
+    for (Socket socket : open) {
+      try {
+        socket.close();
+      } catch (IOException e) {
+        // Already closed.
+      } // try/catch
+    } // for
+    appender.interrupt();
+    connections.shutdown();
+  } // close()
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Serve a new chain until killed.
+   *
+   * @param args
+   *   Command-line arguments: the port to listen on (optional).
+   */
+  public static void main(String[] args) throws Exception {
+    Metrics.register();
+    int port = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+    BlockChain chain = new BlockChain(BlockChainUI.validator(), new ListBlockStore(),
+        DigestProviders.configured());
+    ChainServer server = new ChainServer(chain);
+    System.out.println("Serving on port " + server.start(port));
+    server.acceptor.join();
+  } // main(String[])
+} // class ChainServer
@@ -0,0 +1,234 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.metrics.Histogram;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Generates load for a ChainServer: many clients at once, each sending a
+ * mix of balance and history queries with the occasional deposit, and
+ * reports the throughput and latency.
+ *
+ * @author Mitch Paiva
+ */
+public class LoadClient {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The number of distinct users the clients ask about.
+   */
+  static final int USERS = 100;
+
+  /**
+   * The most transactions to ask for in a history query.
+   */
+  static final int HISTORY_LIMIT = 10;
+
+  /**
+   * The percentage of requests that are history queries.
+   */
+  static final int HISTORY_PERCENT = 25;
+
+  /**
+   * The number of nanoseconds in a second.
+   */
+  static final double NANOS_PER_SECOND = 1e9;
+
+  /**
+   * The number of nanoseconds in a microsecond.
+   */
+  static final double NANOS_PER_MICRO = 1e3;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The time taken by each request, in nanoseconds.
+   */
+  Histogram latency;
+
+  /**
+   * The requests that got an error.
+   */
+  LongAdder errors;
+
+  /**
+   * How long the whole run took, in nanoseconds.
+   */
+  long elapsed;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a new load client with no results yet.
+   */
+  public LoadClient() {
+    this.latency = new Histogram();
+    this.errors = new LongAdder();
+  } // LoadClient()
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Send requests on one connection.
+   *
+   * @param host the server's host.
+   * @param port the server's port.
+   * @param requests the number of requests to send.
+   * @param appendPercent the percentage of requests that are deposits.
+   * @param seed the seed for choosing requests.
+   * @throws IOException if the connection fails.
+   */
+  void client(String host, int port, int requests, int appendPercent, long seed)
+      throws IOException {
+    Random random = new Random(seed);
+    try (Socket socket = new Socket(host, port);
+        BufferedReader eyes = new BufferedReader(new InputStreamReader(
+            socket.getInputStream(), StandardCharsets.UTF_8));
+        PrintWriter pen = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+            socket.getOutputStream(), StandardCharsets.UTF_8)))) {
+      for (int i = 0; i < requests; i++) {
+        String user = "user" + random.nextInt(USERS);
+        int kind = random.nextInt(100);
+        boolean history = false;
+        long start = System.nanoTime();
+        if (kind < appendPercent) {
+          pen.println("append - " + user + " " + (1 + random.nextInt(100)));
+        } else if (kind < appendPercent + HISTORY_PERCENT) {
+          pen.println("history " + user + " " + HISTORY_LIMIT);
+          history = true;
+        } else {
+          pen.println("balance " + user);
+        } // if
+        pen.flush();
+        String response = eyes.readLine();
+        if (response == null) {
+          throw new IOException("The server closed the connection.");
+        } else if (!response.startsWith("OK")) {
+          errors.increment();
+        } else if (history) {
+          int count = Integer.parseInt(response.substring(3));
+          for (int line = 0; line < count; line++) {
+            eyes.readLine();
+          } // for
+        } // if
+        latency.record(System.nanoTime() - start);
+      } // for
+      pen.println("quit");
+    } // try
+  } // client(String, int, int, int, long)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Run many clients at once and wait for them all to finish.
+   *
+   * @param host
+   *   The server's host.
+   * @param port
+   *   The server's port.
+   * @param clients
+   *   The number of clients (each with its own connection and thread).
+   * @param requests
+   *   The number of requests each client sends.
+   * @param appendPercent
+   *   The percentage of requests that are deposits.
+   *
+   * @throws Exception
+   *   If a client fails.
+   */
+  public void run(String host, int port, int clients, int requests, int appendPercent)
+      throws Exception {
+    ExecutorService threads = ChainServer.perTaskExecutor();
+    ArrayList<Future<?>> running = new ArrayList<Future<?>>();
+    long start = System.nanoTime();
+    for (int c = 0; c < clients; c++) {
+      long seed = c;
+      running.add(threads.submit(() -> {
+        client(host, port, requests, appendPercent, seed);
+        return null;
+      }));
+    } // for
+    for (Future<?> client : running) {
+      client.get();
+    } // for
+    elapsed = System.nanoTime() - start;
+    threads.shutdown();
+  } // run(String, int, int, int, int)
+
+  /**
+   * Get the time taken by each request.
+   *
+   * @return the latencies, in nanoseconds.
+   */
+  public Histogram latency() {
+    return this.latency;
+  } // latency()
+
+  /**
+   * Get the number of requests that got an error.
+   *
+   * @return the number of errors.
+   */
+  public long errors() {
+    return this.errors.sum();
+  } // errors()
+
+  /**
+   * Print a summary of the run.
+   *
+   * @param pen
+   *   Where to print the summary.
+   */
+  public void report(PrintWriter pen) {
+    pen.printf("%d requests (%d errors) in %.2f s: %.0f requests/s\n", latency.count(),
+        errors(), elapsed / NANOS_PER_SECOND,
+        (elapsed == 0) ? 0 : latency.count() * NANOS_PER_SECOND / elapsed);
+    pen.printf("Latency: p50 %.1f us, p99 %.1f us, max %.1f us\n",
+        latency.percentile(50) / NANOS_PER_MICRO, latency.percentile(99) / NANOS_PER_MICRO,
+        latency.max() / NANOS_PER_MICRO);
+    pen.flush();
+  } // report(PrintWriter)
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Load a running server.
+   *
+   * @param args
+   *   Command-line arguments: HOST PORT CLIENTS REQUESTS [APPEND_PERCENT].
+   */
+  public static void main(String[] args) throws Exception {
+    if (args.length < 4) {
+      System.err.println("Usage: LoadClient HOST PORT CLIENTS REQUESTS [APPEND_PERCENT]");
+      return;
+    } // if
+    LoadClient load = new LoadClient();
+    load.run(args[0], Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+        Integer.parseInt(args[3]), (args.length > 4) ? Integer.parseInt(args[4]) : 1);
+    load.report(new PrintWriter(System.out));
+  } // main(String[])
+} // class LoadClient
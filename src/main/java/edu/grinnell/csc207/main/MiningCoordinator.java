@@ -0,0 +1,622 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.DigestProvider;
+import edu.grinnell.csc207.blockchains.DigestProviders;
+import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.ListBlockStore;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Shares the search for nonces among MiningWorkers on the same machine,
+ * usually in other JVMs, over sockets bound to the loopback address.
+ *
+ * For each block, the coordinator hands out disjoint ranges of nonces,
+ * a range at a time, to whichever workers are idle (see MiningWorker for
+ * the protocol). A worker that finishes its range without finding a nonce
+ * asks for the next one, so fast workers search more ranges than slow
+ * ones. When a worker becomes idle and another has held its range for
+ * longer than the coordinator is willing to wait, that range is handed to
+ * the idle worker too, so a stalled worker cannot hold up the block; a
+ * range left by a worker that disconnects is handed out again. The first
+ * valid nonce reported wins (it need not be the smallest), and the other
+ * workers are told to cancel.
+ *
+ * The difficulty is the number of leading zero bytes the hash must have,
+ * since validators cannot be sent to other processes.
+ *
+ * @author Mitch Paiva
+ */
+public class MiningCoordinator implements Closeable {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The port we listen on by default.
+   */
+  public static final int DEFAULT_PORT = 8208;
+
+  /**
+   * The number of nonces in a range, by default.
+   */
+  public static final long DEFAULT_RANGE = 1L << 20;
+
+  /**
+   * How long a worker may hold a range before it is also handed to
+   * another, in milliseconds, by default.
+   */
+  public static final long DEFAULT_PATIENCE = 2000;
+
+  // +-------------+-------------------------------------------------
+  // | Local class |
+  // +-------------+
+
+  /**
+   * A connected worker.
+   */
+  class Connection {
+    /**
+     * The socket.
+     */
+    Socket socket;
+
+    /**
+     * Where we send commands.
+     */
+    PrintWriter pen;
+
+    /**
+     * The range the worker is searching (first and one past the last
+     * nonce), or null if it is idle.
+     */
+    long[] range;
+
+    /**
+     * When it was given the range, from System.nanoTime.
+     */
+    long since;
+
+    /**
+     * Whether its range has been handed to another worker too.
+     */
+    boolean shared;
+
+    /**
+     * Set up a connection.
+     *
+     * @param socket the socket.
+     * @throws IOException if the socket cannot be written.
+     */
+    Connection(Socket socket) throws IOException {
+      this.socket = socket;
+      this.pen = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+          socket.getOutputStream(), StandardCharsets.UTF_8)));
+    } // Connection(Socket)
+
+    /**
+     * Send a command.
+     *
+     * @param line the command.
+     */
+    void send(String line) {
+      pen.println(line);
+      pen.flush();
+    } // send(String)
+
+    /**
+     * Read the worker's answers until it goes away.
+     */
+    void listen() {
+      try (BufferedReader eyes = new BufferedReader(new InputStreamReader(
+          socket.getInputStream(), StandardCharsets.UTF_8))) {
+        String line;
+        while ((line = eyes.readLine()) != null) {
+          String[] fields = BatchRunner.FIELDS.split(line.trim());
+          try {
+            if (fields[0].equals("found") && fields.length == 3) {
+              found(this, Integer.parseInt(fields[1]), Long.parseLong(fields[2]));
+            } else if (fields[0].equals("done") && fields.length == 2) {
+              done(this, Integer.parseInt(fields[1]));
+            } // if
+          } catch (NumberFormatException e) {
+            // Ignore garbled answers.
+          } // try/catch
+        } // while
+      } catch (IOException e) {
+        // The worker went away.
+      } finally {
+        leave(this);
+      } // try/finally
+    } // listen()
+  } // class Connection
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of nonces in each range.
+   */
+  long rangeSize;
+
+  /**
+   * How long a worker may hold a range before it is shared, in
+   * nanoseconds.
+   */
+  long patience;
+
+  /**
+   * How blocks are hashed.
+   */
+  DigestProvider digests;
+
+  /**
+   * The socket workers connect to.
+   */
+  ServerSocket server;
+
+  /**
+   * The thread accepting workers.
+   */
+  Thread acceptor;
+
+  /**
+   * The connected workers.
+   */
+  ArrayList<Connection> workers;
+
+  /**
+   * Ranges to hand out before new ones, because their workers left.
+   */
+  ArrayDeque<long[]> orphans;
+
+  /**
+   * The number of the current job, which goes up by one per block.
+   */
+  int job;
+
+  /**
+   * The block being mined, as sent to workers (everything after the job
+   * number and before the range), or null if there is none.
+   */
+  String template;
+
+  /**
+   * The number of the block being mined.
+   */
+  int num;
+
+  /**
+   * The transaction in the block being mined.
+   */
+  Transaction transaction;
+
+  /**
+   * The hash of the block before the one being mined.
+   */
+  Hash prevHash;
+
+  /**
+   * The validator for the current job.
+   */
+  HashValidator check;
+
+  /**
+   * The first nonce not yet handed out.
+   */
+  long next;
+
+  /**
+   * Completed with the nonce found for the current job.
+   */
+  CompletableFuture<Long> result;
+
+  /**
+   * The number of ranges handed out.
+   */
+  long handedOut;
+
+  /**
+   * The number of ranges handed out again because their workers were
+   * slow.
+   */
+  long reissued;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create a coordinator with the default range size and patience.
+   */
+  public MiningCoordinator() {
+    this(DEFAULT_RANGE, DEFAULT_PATIENCE);
+  } // MiningCoordinator()
+
+  /**
+   * Create a coordinator. It accepts no workers until started.
+   *
+   * @param rangeSize
+   *   The number of nonces in each range.
+   * @param patience
+   *   How long, in milliseconds, a worker may hold a range before it is
+   *   also handed to another.
+   *
+   * @throws IllegalArgumentException
+   *   If the range size is not positive or the patience is negative.
+   * @throws IllegalStateException
+   *   If the configured digest is not available.
+   */
+  public MiningCoordinator(long rangeSize, long patience) {
+    if (rangeSize < 1 || patience < 0) {
+      throw new IllegalArgumentException("Invalid range size or patience.");
+    } // if
+    try {
+      this.digests = DigestProviders.configured();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    } // try/catch
+    this.rangeSize = rangeSize;
+    this.patience = patience * 1_000_000;
+    this.workers = new ArrayList<Connection>();
+    this.orphans = new ArrayDeque<long[]>();
+  } // MiningCoordinator(long, long)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Determine whether a user name can be sent to workers as one field.
+   *
+   * @param user the name.
+   * @return true if it can and false otherwise.
+   */
+  static boolean sendable(String user) {
+    return !user.isEmpty() && !user.equals(BatchRunner.DEPOSIT)
+        && !BatchRunner.FIELDS.matcher(user).find();
+  } // sendable(String)
+
+  /**
+   * Accept workers until the server socket is closed.
+   */
+  void acceptLoop() {
+    while (!server.isClosed()) {
+      try {
+        Socket socket = server.accept();
+        socket.setTcpNoDelay(true);
+        Connection worker = new Connection(socket);
+        synchronized (this) {
+          workers.add(worker);
+          assign(worker);
+        } // synchronized
+        Thread listener = new Thread(worker::listen, "mining-listener");
+        listener.setDaemon(true);
+        listener.start();
+      } catch (IOException e) {
+        // Closed, or a failed connection; the loop test tells which.
+      } // try/catch
+    } // while
+  } // acceptLoop()
+
+  /**
+   * Give an idle worker a range of the current job, if there is one: a
+   * range left by a departed worker, else one held too long by a slow
+   * worker, else the next new range.
+   *
+   * @param worker the worker.
+   */
+  synchronized void assign(Connection worker) {
+    worker.range = null;
+    if (template == null) {
+      return;
+    } // if
+    long[] range = orphans.poll();
+    if (range == null) {
+      long now = System.nanoTime();
+      for (Connection other : workers) {
+        if (other != worker && other.range != null && !other.shared
+            && now - other.since > patience) {
+          other.shared = true;
+          range = other.range;
+          reissued++;
+          break;
+        } // if
+      } // for
+    } // if
+    if (range == null) {
+      if (next < 0) {
+        return;
+      } // if
+      long to = (next > Long.MAX_VALUE - rangeSize) ? Long.MAX_VALUE : next + rangeSize;
+      range = new long[] {next, to};
+      next = (to == Long.MAX_VALUE) ? -1 : to;
+    } // if
+    worker.range = range;
+    worker.since = System.nanoTime();
+    worker.shared = false;
+    handedOut++;
+    worker.send("work " + job + " " + template + " " + range[0] + " " + range[1]);
+  } // assign(Connection)
+
+  /**
+   * Handle a worker reporting a nonce.
+   *
+   * @param worker the worker.
+   * @param forJob the job it was working on.
+   * @param nonce the nonce.
+   */
+  synchronized void found(Connection worker, int forJob, long nonce) {
+    if (forJob != job || template == null) {
+      return;
+    } // if
+    if (nonce < 0 || Block.searchNonces(digests, num, transaction, prevHash, check, nonce,
+        nonce + 1, () -> false) != nonce) {
+      assign(worker);
+      return;
+    } // if
+    template = null;
+    for (Connection other : workers) {
+      other.range = null;
+      if (other != worker) {
+        other.send("cancel " + job);
+      } // if
+    } // for
+    orphans.clear();
+    result.complete(nonce);
+    notifyAll();
+  } // found(Connection, int, long)
+
+  /**
+   * Handle a worker finishing its range without finding a nonce.
+   *
+   * @param worker the worker.
+   * @param forJob the job it was working on.
+   */
+  synchronized void done(Connection worker, int forJob) {
+    if (forJob == job) {
+      assign(worker);
+    } // if
+  } // done(Connection, int)
+
+  /**
+   * Forget a worker that disconnected, keeping its range for another.
+   *
+   * @param worker the worker.
+   */
+  synchronized void leave(Connection worker) {
+    workers.remove(worker);
+    if (template != null && worker.range != null && !worker.shared) {
+      orphans.add(worker.range);
+    } // if
+    for (Connection other : workers) {
+      if (template != null && other.range == null) {
+        assign(other);
+      } // if
+    } // for
+  } // leave(Connection)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Start accepting workers on the loopback address.
+   *
+   * @param port
+   *   The port to listen on, or 0 for any free port.
+   *
+   * @return the port we are listening on.
+   *
+   * @throws IOException
+   *   If we cannot listen on the port.
+   */
+  public synchronized int start(int port) throws IOException {
+    if (server != null) {
+      throw new IllegalStateException("The coordinator has already been started.");
+    } // if
+    server = new ServerSocket(port, ChainServer.BACKLOG, InetAddress.getLoopbackAddress());
+    acceptor = new Thread(this::acceptLoop, "mining-acceptor");
+    acceptor.setDaemon(true);
+    acceptor.start();
+    return server.getLocalPort();
+  } // start(int)
+
+  /**
+   * Get the number of workers connected.
+   *
+   * @return the number of workers.
+   */
+  public synchronized int workers() {
+    return workers.size();
+  } // workers()
+
+  /**
+   * Get the number of ranges handed out so far.
+   *
+   * @return the number of ranges.
+   */
+  public synchronized long handedOut() {
+    return handedOut;
+  } // handedOut()
+
+  /**
+   * Get the number of ranges handed out again because their workers were
+   * slow.
+   *
+   * @return the number of ranges.
+   */
+  public synchronized long reissued() {
+    return reissued;
+  } // reissued()
+
+  /**
+   * Mine a block with the connected workers (and any that connect while
+   * it is being mined). Only one block is mined at a time.
+   *
+   * @param num
+   *   The number of the block.
+   * @param transaction
+   *   The transaction in the block.
+   * @param prevHash
+   *   The hash of the block before it.
+   * @param zeroBytes
+   *   The number of zero bytes the hash must start with.
+   *
+   * @return the block.
+   *
+   * @throws InterruptedException
+   *   If we are interrupted while waiting.
+   * @throws IllegalArgumentException
+   *   If the block cannot be sent to workers (a user name has spaces in
+   *   it or is "-").
+   * @throws IllegalStateException
+   *   If another block is being mined.
+   */
+  public synchronized Block mine(int num, Transaction transaction, Hash prevHash, int zeroBytes)
+      throws InterruptedException {
+    String source = transaction.getSource().equals("") ? BatchRunner.DEPOSIT
+        : transaction.getSource();
+    if (!(transaction.getSource().isEmpty() || sendable(transaction.getSource()))
+        || !sendable(transaction.getTarget())) {
+      throw new IllegalArgumentException("Cannot send " + transaction + " to workers.");
+    } else if (template != null) {
+      throw new IllegalStateException("Another block is being mined.");
+    } // if
+    job++;
+    template = num + " " + source + " " + transaction.getTarget() + " "
+        + transaction.getAmount() + " " + transaction.getSeq() + " " + prevHash + " " + zeroBytes;
+    this.num = num;
+    this.transaction = transaction;
+    this.prevHash = prevHash;
+    check = MiningWorker.leadingZeros(zeroBytes);
+    next = 0;
+    orphans.clear();
+    CompletableFuture<Long> found = new CompletableFuture<Long>();
+    result = found;
+    for (Connection worker : workers) {
+      assign(worker);
+    } // for
+    long nonce;
+    try {
+      while (!found.isDone()) {
+        wait();
+      } // while
+      nonce = found.get();
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      template = null;
+    } // try/finally
+    return new Block(num, transaction, prevHash, nonce, digests);
+  } // mine(int, Transaction, Hash, int)
+
+  /**
+   * Mine the next block of a chain with the workers. The chain's own
+   * validator should require the same zero bytes.
+   *
+   * @param chain
+   *   The chain.
+   * @param transaction
+   *   The transaction in the block.
+   * @param zeroBytes
+   *   The number of zero bytes the hash must start with.
+   *
+   * @return the block, ready to append.
+   *
+   * @throws InterruptedException
+   *   If we are interrupted while waiting.
+   */
+  public Block mine(BlockChain chain, Transaction transaction, int zeroBytes)
+      throws InterruptedException {
+    return mine(chain.getSize(), transaction, chain.getHash(), zeroBytes);
+  } // mine(BlockChain, Transaction, int)
+
+  /**
+   * Tell the workers to quit, and stop accepting new ones.
+   *
+   * @throws IOException
+   *   If the server socket cannot be closed.
+   */
+  public synchronized void close() throws IOException {
+    if (server == null) {
+      return;
+    } // if
+    server.close();
+    for (Connection worker : workers) {
+      worker.send("quit");
+    } // for
+  } // close()
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Start some worker JVMs on this machine and mine a few deposits with
+   * them, printing how long each block took.
+   *
+   * @param args
+   *   Command-line arguments: the number of workers (default 4), the
+   *   number of blocks (default 10), and the number of zero bytes
+   *   (default 3).
+   */
+  public static void main(String[] args) throws Exception {
+    int count = (args.length > 0) ? Integer.parseInt(args[0]) : 4;
+    int blocks = (args.length > 1) ? Integer.parseInt(args[1]) : 10;
+    int zeroBytes = (args.length > 2) ? Integer.parseInt(args[2]) : 3;
+    MiningCoordinator coordinator = new MiningCoordinator();
+    int port = coordinator.start(0);
+    String java = System.getProperty("java.home") + File.separator + "bin" + File.separator
+        + "java";
+    ArrayList<Process> processes = new ArrayList<Process>();
+    for (int i = 0; i < count; i++) {
+      ProcessBuilder builder = new ProcessBuilder(java, "-cp",
+          System.getProperty("java.class.path"),
+          "-D" + DigestProviders.PROPERTY + "=" + System.getProperty(DigestProviders.PROPERTY,
+              "sha-256"),
+          MiningWorker.class.getName(), Integer.toString(port));
+      processes.add(builder.inheritIO().start());
+    } // for
+    while (coordinator.workers() < count) {
+      Thread.sleep(10);
+    } // while
+
+    BlockChain chain = new BlockChain(MiningWorker.leadingZeros(zeroBytes), new ListBlockStore(),
+        coordinator.digests);
+    for (int i = 0; i < blocks; i++) {
+      long start = System.nanoTime();
+      Block blk = coordinator.mine(chain, new Transaction("", "miner", 1), zeroBytes);
+      chain.append(blk);
+      System.out.printf("Block %d: nonce %d in %.3f s%n", blk.getNum(), blk.getNonce(),
+          (System.nanoTime() - start) / 1e9);
+    } // for
+    System.out.printf("%d ranges handed out, %d shared with another worker%n",
+        coordinator.handedOut(), coordinator.reissued());
+    coordinator.close();
+    for (Process process : processes) {
+      process.waitFor();
+    } // for
+  } // main(String[])
+} // class MiningCoordinator
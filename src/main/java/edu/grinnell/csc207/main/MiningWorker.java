@@ -0,0 +1,252 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.DigestProvider;
+import edu.grinnell.csc207.blockchains.DigestProviders;
+import edu.grinnell.csc207.blockchains.Hash;
+import edu.grinnell.csc207.blockchains.HashValidator;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Searches ranges of nonces for a MiningCoordinator on the same machine.
+ *
+ * A worker connects to the coordinator and then does as it is told, one
+ * line at a time. The coordinator sends
+ * <pre>
+ *   work JOB NUM SOURCE TARGET AMOUNT SEQ PREVHASH ZEROBYTES FROM TO
+ *   cancel JOB
+ *   quit
+ * </pre>
+ * where the block is NUM, holds the transaction (with - as the source of a
+ * deposit), follows the block whose hash is PREVHASH (in hex), and needs
+ * a hash starting with ZEROBYTES zero bytes. For each range, the worker
+ * answers "found JOB NONCE" or, if the range has no valid nonce, "done
+ * JOB". The search runs on its own thread, so that a cancel stops it
+ * within a few thousand hashes.
+ *
+ * The block is hashed with DigestProviders.configured, so every worker
+ * must be started with the same -Dblockchains.digest as the coordinator.
+ *
+ * @author Mitch Paiva
+ */
+public class MiningWorker implements Closeable {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The connection to the coordinator.
+   */
+  Socket socket;
+
+  /**
+   * Where we read commands.
+   */
+  BufferedReader eyes;
+
+  /**
+   * Where we write answers.
+   */
+  PrintWriter pen;
+
+  /**
+   * How blocks are hashed.
+   */
+  DigestProvider digests;
+
+  /**
+   * The thread searching for nonces.
+   */
+  ExecutorService searcher;
+
+  /**
+   * The job being worked on, or -1 if it was cancelled.
+   */
+  volatile int active;
+
+  /**
+   * The number of ranges searched to the end or until a nonce was found.
+   */
+  AtomicLong ranges;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Connect to a coordinator on this machine.
+   *
+   * @param port
+   *   The port the coordinator listens on.
+   *
+   * @throws IOException
+   *   If we cannot connect.
+   * @throws IllegalStateException
+   *   If the configured digest is not available.
+   */
+  public MiningWorker(int port) throws IOException {
+    try {
+      this.digests = DigestProviders.configured();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    } // try/catch
+    this.socket = new Socket(InetAddress.getLoopbackAddress(), port);
+    this.socket.setTcpNoDelay(true);
+    this.eyes = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+        StandardCharsets.UTF_8));
+    this.pen = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
+        socket.getOutputStream(), StandardCharsets.UTF_8)));
+    this.searcher = Executors.newSingleThreadExecutor((task) -> {
+      Thread thread = new Thread(task, "nonce-searcher");
+      thread.setDaemon(true);
+      return thread;
+    });
+    this.active = -1;
+    this.ranges = new AtomicLong();
+  } // MiningWorker(int)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Build a validator that requires a hash to start with some zero bytes.
+   *
+   * @param zeroBytes
+   *   The number of zero bytes.
+   *
+   * @return the validator.
+   */
+  public static HashValidator leadingZeros(int zeroBytes) {
+    return (hash) -> {
+      if (hash.length() < zeroBytes) {
+        return false;
+      } // if
+      for (int i = 0; i < zeroBytes; i++) {
+        if (hash.get(i) != 0) {
+          return false;
+        } // if
+      } // for
+      return true;
+    };
+  } // leadingZeros(int)
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Send a line to the coordinator.
+   *
+   * @param line the line.
+   */
+  synchronized void send(String line) {
+    pen.println(line);
+    pen.flush();
+  } // send(String)
+
+  /**
+   * Search a range and report what we found, unless the job is cancelled
+   * first.
+   *
+   * @param fields the work command.
+   */
+  void search(String[] fields) {
+    int job = Integer.parseInt(fields[1]);
+    String source = BatchRunner.DEPOSIT.equals(fields[3]) ? "" : fields[3];
+    Transaction transaction = new Transaction(source, fields[4], Integer.parseInt(fields[5]),
+        Long.parseLong(fields[6]));
+    Hash prevHash = new Hash(HexFormat.of().parseHex(fields[7]));
+    long nonce = Block.searchNonces(digests, Integer.parseInt(fields[2]), transaction, prevHash,
+        leadingZeros(Integer.parseInt(fields[8])), Long.parseLong(fields[9]),
+        Long.parseLong(fields[10]), () -> active != job);
+    if (active != job) {
+      return;
+    } // if
+    ranges.incrementAndGet();
+    send((nonce < 0) ? "done " + job : "found " + job + " " + nonce);
+  } // search(String[])
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Do what the coordinator says until it says to quit or goes away.
+   */
+  public void run() {
+    try {
+      String line;
+      while ((line = eyes.readLine()) != null) {
+        String[] fields = BatchRunner.FIELDS.split(line.trim());
+        if (fields[0].equals("quit")) {
+          break;
+        } else if (fields[0].equals("cancel")) {
+          if (active == Integer.parseInt(fields[1])) {
+            active = -1;
+          } // if
+        } else if (fields[0].equals("work") && fields.length == 11) {
+          active = Integer.parseInt(fields[1]);
+          searcher.execute(() -> search(fields));
+        } // if
+      } // while
+    } catch (IOException e) {
+      // The coordinator went away.
+    } finally {
+      close();
+    } // try/finally
+  } // run()
+
+  /**
+   * Get the number of ranges this worker has finished.
+   *
+   * @return the number of ranges.
+   */
+  public long ranges() {
+    return ranges.get();
+  } // ranges()
+
+  /**
+   * Stop searching and disconnect.
+   */
+  public void close() {
+    active = -1;
+    searcher.shutdownNow();
+    try {
+      socket.close();
+    } catch (IOException e) {
+      // Already closed.
+    } // try/catch
+  } // close()
+
+  // +------+--------------------------------------------------------
+  // | Main |
+  // +------+
+
+  /**
+   * Work for a coordinator until it says to quit.
+   *
+   * @param args
+   *   Command-line arguments: the port the coordinator listens on.
+   */
+  public static void main(String[] args) throws Exception {
+    int port = (args.length > 0) ? Integer.parseInt(args[0]) : MiningCoordinator.DEFAULT_PORT;
+    new MiningWorker(port).run();
+  } // main(String[])
+} // class MiningWorker
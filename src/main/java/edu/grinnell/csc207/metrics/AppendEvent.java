@@ -0,0 +1,34 @@
+package edu.grinnell.csc207.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for appending one block to a chain.
+ *
+ * @author Mitch Paiva
+ */
+@Name("edu.grinnell.csc207.blockchains.Append")
+@Label("Append Block")
+@Category("Blockchains")
+@Description("Checking a block and adding it to the end of a chain")
+public class AppendEvent extends Event {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of the block.
+   */
+  @Label("Block Number")
+  public int blockNum;
+
+  /**
+   * Whether the block was appended.
+   */
+  @Label("Appended")
+  public boolean appended;
+} // class AppendEvent
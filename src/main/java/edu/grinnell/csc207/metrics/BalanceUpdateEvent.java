@@ -0,0 +1,34 @@
+package edu.grinnell.csc207.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for updating balances after new blocks.
+ *
+ * @author Mitch Paiva
+ */
+@Name("edu.grinnell.csc207.blockchains.BalanceUpdate")
+@Label("Update Balances")
+@Category("Blockchains")
+@Description("Applying the transactions of new blocks to the balances")
+public class BalanceUpdateEvent extends Event {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of transactions applied.
+   */
+  @Label("Transactions")
+  public int transactions;
+
+  /**
+   * The number of balances written.
+   */
+  @Label("Accounts")
+  public int accounts;
+} // class BalanceUpdateEvent
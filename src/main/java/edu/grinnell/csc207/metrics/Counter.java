@@ -0,0 +1,56 @@
+package edu.grinnell.csc207.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, and that many threads may add to at once.
+ *
+ * @author Mitch Paiva
+ */
+public class Counter {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The count.
+   */
+  private final LongAdder count = new LongAdder();
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add one to the count.
+   */
+  public void increment() {
+    this.count.increment();
+  } // increment()
+
+  /**
+   * Add to the count.
+   *
+   * @param n
+   *   The amount to add.
+   */
+  public void add(long n) {
+    this.count.add(n);
+  } // add(long)
+
+  /**
+   * Get the count.
+   *
+   * @return the count.
+   */
+  public long get() {
+    return this.count.sum();
+  } // get()
+
+  /**
+   * Set the count back to zero.
+   */
+  public void reset() {
+    this.count.reset();
+  } // reset()
+} // class Counter
@@ -0,0 +1,40 @@
+package edu.grinnell.csc207.metrics;
+
+/**
+ * A value that goes up and down, such as the height of a chain.
+ *
+ * @author Mitch Paiva
+ */
+public class Gauge {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The current value.
+   */
+  private volatile long value;
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Set the value.
+   *
+   * @param val
+   *   The new value.
+   */
+  public void set(long val) {
+    this.value = val;
+  } // set(long)
+
+  /**
+   * Get the value.
+   *
+   * @return the value.
+   */
+  public long get() {
+    return this.value;
+  } // get()
+} // class Gauge
@@ -0,0 +1,188 @@
+package edu.grinnell.csc207.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values (usually latencies in nanoseconds)
+ * in the style of an HDR histogram. Values below SUB_BUCKETS get their own
+ * bucket; every power of two above that is split into SUB_BUCKETS equal
+ * buckets, so any value is off by at most 1/SUB_BUCKETS (12.5%). The
+ * buckets are allocated once, so recording never allocates.
+ *
+ * @author Mitch Paiva
+ */
+public class Histogram {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The log (base 2) of the number of buckets per power of two.
+   */
+  static final int SUB_BITS = 3;
+
+  /**
+   * The number of buckets per power of two.
+   */
+  static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+  /**
+   * The total number of buckets, enough for any long.
+   */
+  static final int NUM_BUCKETS = (Long.SIZE - SUB_BITS + 1) * SUB_BUCKETS;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of values in each bucket.
+   */
+  private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+
+  /**
+   * The number of values recorded.
+   */
+  private final LongAdder count = new LongAdder();
+
+  /**
+   * The sum of the values recorded.
+   */
+  private final LongAdder sum = new LongAdder();
+
+  /**
+   * The largest value recorded.
+   */
+  private final AtomicLong max = new AtomicLong();
+
+  // +---------+-----------------------------------------------------
+  // | Helpers |
+  // +---------+
+
+  /**
+   * Find the bucket for a value.
+   *
+   * @param val a non-negative value.
+   * @return the index of its bucket.
+   */
+  static int bucket(long val) {
+    if (val < SUB_BUCKETS) {
+      return (int) val;
+    } // if
+    int exp = Long.SIZE - 1 - Long.numberOfLeadingZeros(val);
+    int sub = (int) (val >>> (exp - SUB_BITS)) & (SUB_BUCKETS - 1);
+    return (exp - SUB_BITS + 1) * SUB_BUCKETS + sub;
+  } // bucket(long)
+
+  /**
+   * Find the largest value that goes in a bucket.
+   *
+   * @param index the index of the bucket.
+   * @return the largest value in that bucket.
+   */
+  static long highestInBucket(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    } // if
+    int exp = index / SUB_BUCKETS + SUB_BITS - 1;
+    long width = 1L << (exp - SUB_BITS);
+    return ((SUB_BUCKETS + index % SUB_BUCKETS) * width) + width - 1;
+  } // highestInBucket(int)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Record a value. Negative values are recorded as zero.
+   *
+   * @param val
+   *   The value to record.
+   */
+  public void record(long val) {
+    if (val < 0) {
+      val = 0;
+    } // if
+    this.buckets.incrementAndGet(bucket(val));
+    this.count.increment();
+    this.sum.add(val);
+    this.max.accumulateAndGet(val, Math::max);
+  } // record(long)
+
+  /**
+   * Get the number of values recorded.
+   *
+   * @return the number of values.
+   */
+  public long count() {
+    return this.count.sum();
+  } // count()
+
+  /**
+   * Get the sum of the values recorded.
+   *
+   * @return the sum.
+   */
+  public long sum() {
+    return this.sum.sum();
+  } // sum()
+
+  /**
+   * Get the largest value recorded.
+   *
+   * @return the largest value, or 0 if nothing has been recorded.
+   */
+  public long max() {
+    return this.max.get();
+  } // max()
+
+  /**
+   * Get the mean of the values recorded.
+   *
+   * @return the mean, or 0 if nothing has been recorded.
+   */
+  public double mean() {
+    long n = count();
+    return (n == 0) ? 0 : (double) sum() / n;
+  } // mean()
+
+  /**
+   * Estimate a percentile of the values recorded.
+   *
+   * @param pct
+   *   The percentile, between 0 and 100.
+   *
+   * @return a value at least as large as pct percent of the values
+   *   recorded (and within 12.5% of the true percentile), or 0 if
+   *   nothing has been recorded.
+   */
+  public long percentile(double pct) {
+    long n = count();
+    if (n == 0) {
+      return 0;
+    } // if
+    long rank = Math.max(1, (long) Math.ceil(n * pct / 100.0));
+    long seen = 0;
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      seen += this.buckets.get(i);
+      if (seen >= rank) {
+        return Math.min(highestInBucket(i), max());
+      } // if
+    } // for
+    return max();
+  } // percentile(double)
+
+  /**
+   * Forget every value recorded.
+   */
+  public void reset() {
+    for (int i = 0; i < NUM_BUCKETS; i++) {
+      this.buckets.set(i, 0);
+    } // for
+    this.count.reset();
+    this.sum.reset();
+    this.max.set(0);
+  } // reset()
+} // class Histogram
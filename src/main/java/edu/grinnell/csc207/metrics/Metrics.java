@@ -0,0 +1,287 @@
+package edu.grinnell.csc207.metrics;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * The metrics for mining, appending, and checking blocks. Collection can be
+ * turned off with -Dblockchains.metrics=false (or through JMX), in which case
+ * the instrumented code only reads one flag.
+ *
+ * @author Mitch Paiva
+ */
+public class Metrics implements MetricsMXBean {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The name under which the metrics appear in JMX.
+   */
+  public static final String OBJECT_NAME = "edu.grinnell.csc207.blockchains:type=Metrics";
+
+  /**
+   * The number of nanoseconds in a second.
+   */
+  static final double NANOS_PER_SECOND = 1e9;
+
+  /**
+   * The number of nanoseconds in a microsecond.
+   */
+  static final double NANOS_PER_MICRO = 1e3;
+
+  /**
+   * The hashes computed while mining.
+   */
+  public static final Counter HASHES = new Counter();
+
+  /**
+   * The attempts needed to mine each block.
+   */
+  public static final Histogram ATTEMPTS = new Histogram();
+
+  /**
+   * The time taken to mine each block, in nanoseconds.
+   */
+  public static final Histogram MINE_TIME = new Histogram();
+
+  /**
+   * The time taken to append each block, in nanoseconds.
+   */
+  public static final Histogram APPEND_TIME = new Histogram();
+
+  /**
+   * The blocks that could not be appended.
+   */
+  public static final Counter APPEND_FAILURES = new Counter();
+
+  /**
+   * The time taken to verify a whole chain, in nanoseconds.
+   */
+  public static final Histogram VERIFY_TIME = new Histogram();
+
+  /**
+   * The balance queries.
+   */
+  public static final Counter BALANCE_QUERIES = new Counter();
+
+  /**
+   * The height of the chain most recently changed.
+   */
+  public static final Gauge CHAIN_HEIGHT = new Gauge();
+
+  /**
+   * The one instance, for JMX.
+   */
+  static final Metrics INSTANCE = new Metrics();
+
+  // +---------------+-----------------------------------------------
+  // | Static fields |
+  // +---------------+
+
+  /**
+   * Whether metrics are being collected.
+   */
+  private static volatile boolean enabled =
+      !"false".equals(System.getProperty("blockchains.metrics"));
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create the JMX view of the metrics.
+   */
+  private Metrics() {
+  } // Metrics()
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Determine whether metrics are being collected. Instrumented code
+   * should check this before reading the clock.
+   *
+   * @return true if they are and false otherwise.
+   */
+  public static boolean on() {
+    return enabled;
+  } // on()
+
+  /**
+   * Make the metrics visible through JMX. Does nothing if they already are.
+   *
+   * @throws JMException
+   *   If the metrics cannot be registered.
+   */
+  public static void register() throws JMException {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      server.registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+    } catch (InstanceAlreadyExistsException e) {
+      // Already registered.
+    } // try/catch
+  } // register()
+
+  /**
+   * Print a summary of the metrics.
+   *
+   * @param pen
+   *   Where to print the summary.
+   */
+  public static void report(PrintWriter pen) {
+    pen.printf("Metrics are %s.\n", enabled ? "on" : "off");
+    pen.printf("Mining: %d blocks, %d hashes, %.0f hashes/s, %.1f attempts/block\n",
+        INSTANCE.getBlocksMined(), HASHES.get(), INSTANCE.getHashRate(),
+        INSTANCE.getMeanAttemptsPerBlock());
+    pen.printf("Appends: %d ok, %d failed, p50 %.1f us, p99 %.1f us, max %.1f us\n",
+        APPEND_TIME.count() - APPEND_FAILURES.get(), APPEND_FAILURES.get(),
+        APPEND_TIME.percentile(50) / NANOS_PER_MICRO,
+        APPEND_TIME.percentile(99) / NANOS_PER_MICRO, APPEND_TIME.max() / NANOS_PER_MICRO);
+    pen.printf("Verification: %d runs, mean %.1f us\n", VERIFY_TIME.count(),
+        VERIFY_TIME.mean() / NANOS_PER_MICRO);
+    pen.printf("Balance queries: %d\n", BALANCE_QUERIES.get());
+    pen.printf("Chain height: %d\n", CHAIN_HEIGHT.get());
+  } // report(PrintWriter)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Determine whether metrics are being collected.
+   *
+   * @return true if they are and false otherwise.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  } // isEnabled()
+
+  /**
+   * Turn metric collection on or off.
+   *
+   * @param on
+   *   Whether to collect metrics.
+   */
+  public void setEnabled(boolean on) {
+    enabled = on;
+  } // setEnabled(boolean)
+
+  /**
+   * Get the number of hashes computed while mining.
+   *
+   * @return the number of hashes.
+   */
+  public long getHashes() {
+    return HASHES.get();
+  } // getHashes()
+
+  /**
+   * Get the number of hashes computed per second of mining.
+   *
+   * @return the hash rate.
+   */
+  public double getHashRate() {
+    long nanos = MINE_TIME.sum();
+    return (nanos == 0) ? 0 : HASHES.get() * NANOS_PER_SECOND / nanos;
+  } // getHashRate()
+
+  /**
+   * Get the number of blocks mined.
+   *
+   * @return the number of blocks mined.
+   */
+  public long getBlocksMined() {
+    return MINE_TIME.count();
+  } // getBlocksMined()
+
+  /**
+   * Get the mean number of attempts needed to mine a block.
+   *
+   * @return the mean number of attempts.
+   */
+  public double getMeanAttemptsPerBlock() {
+    return ATTEMPTS.mean();
+  } // getMeanAttemptsPerBlock()
+
+  /**
+   * Get the number of blocks appended.
+   *
+   * @return the number of blocks appended.
+   */
+  public long getAppends() {
+    return APPEND_TIME.count() - APPEND_FAILURES.get();
+  } // getAppends()
+
+  /**
+   * Get the number of blocks that could not be appended.
+   *
+   * @return the number of failed appends.
+   */
+  public long getAppendFailures() {
+    return APPEND_FAILURES.get();
+  } // getAppendFailures()
+
+  /**
+   * Get the median time to append a block.
+   *
+   * @return the median append time, in nanoseconds.
+   */
+  public long getAppendLatencyP50() {
+    return APPEND_TIME.percentile(50);
+  } // getAppendLatencyP50()
+
+  /**
+   * Get the 99th percentile of the time to append a block.
+   *
+   * @return the 99th percentile append time, in nanoseconds.
+   */
+  public long getAppendLatencyP99() {
+    return APPEND_TIME.percentile(99);
+  } // getAppendLatencyP99()
+
+  /**
+   * Get the mean time to verify a whole chain.
+   *
+   * @return the mean verification time, in nanoseconds.
+   */
+  public double getMeanVerifyTime() {
+    return VERIFY_TIME.mean();
+  } // getMeanVerifyTime()
+
+  /**
+   * Get the number of balance queries.
+   *
+   * @return the number of balance queries.
+   */
+  public long getBalanceQueries() {
+    return BALANCE_QUERIES.get();
+  } // getBalanceQueries()
+
+  /**
+   * Get the height of the chain most recently changed.
+   *
+   * @return the number of blocks in the chain.
+   */
+  public long getChainHeight() {
+    return CHAIN_HEIGHT.get();
+  } // getChainHeight()
+
+  /**
+   * Forget all the metrics collected so far.
+   */
+  public void reset() {
+    HASHES.reset();
+    ATTEMPTS.reset();
+    MINE_TIME.reset();
+    APPEND_TIME.reset();
+    APPEND_FAILURES.reset();
+    VERIFY_TIME.reset();
+    BALANCE_QUERIES.reset();
+  } // reset()
+} // class Metrics
@@ -0,0 +1,106 @@
+package edu.grinnell.csc207.metrics;
+
+/**
+ * The metrics, as seen through JMX (e.g., in JConsole).
+ *
+ * @author Mitch Paiva
+ */
+public interface MetricsMXBean {
+  /**
+   * Determine whether metrics are being collected.
+   *
+   * @return true if they are and false otherwise.
+   */
+  boolean isEnabled();
+
+  /**
+   * Turn metric collection on or off.
+   *
+   * @param enabled
+   *   Whether to collect metrics.
+   */
+  void setEnabled(boolean enabled);
+
+  /**
+   * Get the number of hashes computed while mining.
+   *
+   * @return the number of hashes.
+   */
+  long getHashes();
+
+  /**
+   * Get the number of hashes computed per second of mining.
+   *
+   * @return the hash rate.
+   */
+  double getHashRate();
+
+  /**
+   * Get the number of blocks mined.
+   *
+   * @return the number of blocks mined.
+   */
+  long getBlocksMined();
+
+  /**
+   * Get the mean number of attempts needed to mine a block.
+   *
+   * @return the mean number of attempts.
+   */
+  double getMeanAttemptsPerBlock();
+
+  /**
+   * Get the number of blocks appended.
+   *
+   * @return the number of blocks appended.
+   */
+  long getAppends();
+
+  /**
+   * Get the number of blocks that could not be appended.
+   *
+   * @return the number of failed appends.
+   */
+  long getAppendFailures();
+
+  /**
+   * Get the median time to append a block.
+   *
+   * @return the median append time, in nanoseconds.
+   */
+  long getAppendLatencyP50();
+
+  /**
+   * Get the 99th percentile of the time to append a block.
+   *
+   * @return the 99th percentile append time, in nanoseconds.
+   */
+  long getAppendLatencyP99();
+
+  /**
+   * Get the mean time to verify a whole chain.
+   *
+   * @return the mean verification time, in nanoseconds.
+   */
+  double getMeanVerifyTime();
+
+  /**
+   * Get the number of balance queries.
+   *
+   * @return the number of balance queries.
+   */
+  long getBalanceQueries();
+
+  /**
+   * Get the height of the chain most recently changed.
+   *
+   * @return the number of blocks in the chain.
+   */
+  long getChainHeight();
+
+  /**
+   * Forget all the metrics collected so far.
+   */
+  void reset();
+
+} // interface MetricsMXBean
@@ -0,0 +1,40 @@
+package edu.grinnell.csc207.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for mining one block.
+ *
+ * @author Mitch Paiva
+ */
+@Name("edu.grinnell.csc207.blockchains.Mine")
+@Label("Mine Block")
+@Category("Blockchains")
+@Description("Searching for a nonce that gives a block a valid hash")
+public class MineEvent extends Event {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of the block.
+   */
+  @Label("Block Number")
+  public int blockNum;
+
+  /**
+   * The number of nonces tried.
+   */
+  @Label("Attempts")
+  public long attempts;
+
+  /**
+   * The nonce found.
+   */
+  @Label("Nonce")
+  public long nonce;
+} // class MineEvent
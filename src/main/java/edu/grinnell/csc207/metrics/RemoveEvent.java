@@ -0,0 +1,28 @@
+package edu.grinnell.csc207.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for removing the last block of a chain.
+ *
+ * @author Mitch Paiva
+ */
+@Name("edu.grinnell.csc207.blockchains.Remove")
+@Label("Remove Block")
+@Category("Blockchains")
+@Description("Removing the last block of a chain and undoing its transaction")
+public class RemoveEvent extends Event {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The number of the block removed, or -1 if none was.
+   */
+  @Label("Block Number")
+  public int blockNum;
+} // class RemoveEvent
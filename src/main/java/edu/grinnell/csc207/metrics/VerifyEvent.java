@@ -0,0 +1,40 @@
+package edu.grinnell.csc207.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * A flight recorder event for checking a whole chain.
+ *
+ * @author Mitch Paiva
+ */
+@Name("edu.grinnell.csc207.blockchains.Verify")
+@Label("Verify Chain")
+@Category("Blockchains")
+@Description("Checking every block of a chain with check or isCorrect")
+public class VerifyEvent extends Event {
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The method doing the checking.
+   */
+  @Label("Method")
+  public String method;
+
+  /**
+   * The number of blocks in the chain.
+   */
+  @Label("Blocks")
+  public int blocks;
+
+  /**
+   * Whether the chain is correct.
+   */
+  @Label("Correct")
+  public boolean correct;
+} // class VerifyEvent
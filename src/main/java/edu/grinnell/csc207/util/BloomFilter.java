@@ -0,0 +1,221 @@
+package edu.grinnell.csc207.util;
+
+import java.util.Arrays;
+
+/**
+ * A Bloom filter: a compact set that may say it holds a key it was never
+ * given, but never says it lacks a key it was given. Keys are given as
+ * 64-bit hashes (see hash(String)), and each sets a few bits chosen from
+ * the hash by double hashing. Bloom filters cannot forget keys, so
+ * removing one means building a new filter.
+ *
+ * @author Mitch Paiva
+ */
+public class BloomFilter {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * The offset basis for 64-bit FNV-1a.
+   */
+  static final long FNV_OFFSET = 0xCBF29CE484222325L;
+
+  /**
+   * The prime for 64-bit FNV-1a.
+   */
+  static final long FNV_PRIME = 0x100000001B3L;
+
+  /**
+   * The most bits a filter may have.
+   */
+  static final long MAX_BITS = 1L << 32;
+
+  // +--------+------------------------------------------------------
+  // | Fields |
+  // +--------+
+
+  /**
+   * The bits.
+   */
+  long[] bits;
+
+  /**
+   * One less than the number of bits, which is a power of two.
+   */
+  long mask;
+
+  /**
+   * The number of bits each key sets.
+   */
+  int hashes;
+
+  /**
+   * The number of keys the filter was sized for.
+   */
+  int capacity;
+
+  /**
+   * The number of keys added.
+   */
+  int count;
+
+  // +--------------+------------------------------------------------
+  // | Constructors |
+  // +--------------+
+
+  /**
+   * Create an empty filter.
+   *
+   * @param capacity
+   *   The number of keys it should hold.
+   * @param falsePositiveRate
+   *   The chance, once it holds that many, that it claims to hold a key
+   *   it was not given.
+   *
+   * @throws IllegalArgumentException
+   *   If the capacity is not positive or the rate is not between 0 and 1.
+   */
+  public BloomFilter(int capacity, double falsePositiveRate) {
+    if (capacity < 1 || !(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+      throw new IllegalArgumentException("Invalid capacity or false-positive rate.");
+    } // if
+    double ideal = -capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+    long numBits = Long.SIZE;
+    while (numBits < ideal && numBits < MAX_BITS) {
+      numBits <<= 1;
+    } // while
+    this.bits = new long[(int) (numBits / Long.SIZE)];
+    this.mask = numBits - 1;
+    this.hashes = Math.max(1, (int) Math.round((double) numBits / capacity * Math.log(2)));
+    this.capacity = capacity;
+  } // BloomFilter(int, double)
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Scramble the bits of a hash (the finisher from MurmurHash3).
+   *
+   * @param h
+   *   The hash.
+   *
+   * @return the scrambled hash.
+   */
+  public static long mix(long h) {
+    h ^= h >>> 33;
+    h *= 0xFF51AFD7ED558CCDL;
+    h ^= h >>> 33;
+    h *= 0xC4CEB9FE1A85EC53L;
+    h ^= h >>> 33;
+    return h;
+  } // mix(long)
+
+  /**
+   * Compute a 64-bit hash of a string.
+   *
+   * @param key
+   *   The string.
+   *
+   * @return the hash.
+   */
+  public static long hash(String key) {
+    long h = FNV_OFFSET;
+    for (int i = 0; i < key.length(); i++) {
+      h = (h ^ key.charAt(i)) * FNV_PRIME;
+    } // for
+    return mix(h);
+  } // hash(String)
+
+  // +---------+-----------------------------------------------------
+  // | Methods |
+  // +---------+
+
+  /**
+   * Add a key.
+   *
+   * @param hash
+   *   The key's 64-bit hash.
+   */
+  public void add(long hash) {
+    long step = Long.rotateLeft(hash, 32) | 1;
+    for (int i = 0; i < this.hashes; i++) {
+      long bit = hash & this.mask;
+      this.bits[(int) (bit >>> 6)] |= 1L << bit;
+      hash += step;
+    } // for
+    this.count++;
+  } // add(long)
+
+  /**
+   * Add a string.
+   *
+   * @param key
+   *   The string.
+   */
+  public void add(String key) {
+    add(hash(key));
+  } // add(String)
+
+  /**
+   * Determine whether the filter might hold a key.
+   *
+   * @param hash
+   *   The key's 64-bit hash.
+   *
+   * @return false if the key was certainly never added, and true if it
+   *   probably was.
+   */
+  public boolean mightContain(long hash) {
+    long step = Long.rotateLeft(hash, 32) | 1;
+    for (int i = 0; i < this.hashes; i++) {
+      long bit = hash & this.mask;
+      if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+        return false;
+      } // if
+      hash += step;
+    } // for
+    return true;
+  } // mightContain(long)
+
+  /**
+   * Determine whether the filter might hold a string.
+   *
+   * @param key
+   *   The string.
+   *
+   * @return false if the string was certainly never added, and true if
+   *   it probably was.
+   */
+  public boolean mightContain(String key) {
+    return mightContain(hash(key));
+  } // mightContain(String)
+
+  /**
+   * Determine whether the filter holds as many keys as it was sized for,
+   * after which false positives become more likely.
+   *
+   * @return true if it does and false otherwise.
+   */
+  public boolean isFull() {
+    return this.count >= this.capacity;
+  } // isFull()
+
+  /**
+   * Get the number of keys added (counting repeats).
+   *
+   * @return the number of keys.
+   */
+  public int count() {
+    return this.count;
+  } // count()
+
+  /**
+   * Remove every key.
+   */
+  public void clear() {
+    Arrays.fill(this.bits, 0);
+    this.count = 0;
+  } // clear()
+} // class BloomFilter
@@ -0,0 +1,117 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The validator, sample chains, and checks shared by our tests.
+ *
+ * @author Mitch Paiva
+ */
+class Fixtures {
+  // +-----------+---------------------------------------------------
+  // | Constants |
+  // +-----------+
+
+  /**
+   * A quick validator.
+   */
+  static final HashValidator VALIDATOR = (hash) -> (hash.length() >= 1) && (hash.get(0) == 0);
+
+  // +----------------+----------------------------------------------
+  // | Static methods |
+  // +----------------+
+
+  /**
+   * Add some transfers from A to a few other users. The transfer made
+   * depends only on the size of the chain, so two chains of the same
+   * size grow the same way.
+   *
+   * @param chain the chain.
+   * @param count the number of transfers.
+   */
+  static void grow(BlockChain chain, int count) {
+    for (int i = 0; i < count; i++) {
+      int n = chain.getSize();
+      chain.append(chain.mine(new Transaction("A", "B" + (n % 5), 1 + n % 7)));
+    } // for
+  } // grow(BlockChain, int)
+
+  /**
+   * Build a chain in a store: a deposit to A followed by some transfers.
+   *
+   * @param store where the blocks go.
+   * @param count the number of transfers.
+   * @return the chain, with count + 2 blocks.
+   */
+  static BlockChain sampleChain(BlockStore store, int count) {
+    BlockChain chain = new BlockChain(VALIDATOR, store);
+    chain.append(chain.mine(new Transaction("", "A", 10000)));
+    grow(chain, count);
+    return chain;
+  } // sampleChain(BlockStore, int)
+
+  /**
+   * Build a chain: a deposit to A followed by some transfers.
+   *
+   * @param count the number of transfers.
+   * @return the chain, with count + 2 blocks.
+   */
+  static BlockChain sampleChain(int count) {
+    return sampleChain(new ListBlockStore(), count);
+  } // sampleChain(int)
+
+  /**
+   * Get the blocks of a chain after the first.
+   *
+   * @param chain the chain.
+   * @return its blocks, without the first.
+   */
+  static List<Block> tail(BlockChain chain) {
+    ArrayList<Block> blocks = new ArrayList<Block>();
+    Iterator<Block> it = chain.blocks();
+    it.next();
+    while (it.hasNext()) {
+      blocks.add(it.next());
+    } // while
+    return blocks;
+  } // tail(BlockChain)
+
+  /**
+   * Assert that two chains hold the same blocks.
+   *
+   * @param expected the chain we want.
+   * @param actual the chain we have.
+   */
+  static void assertSameBlocks(BlockChain expected, BlockChain actual) {
+    assertEquals(expected.getSize(), actual.getSize(), "size");
+    Iterator<Block> eit = expected.blocks();
+    Iterator<Block> ait = actual.blocks();
+    while (eit.hasNext()) {
+      Block e = eit.next();
+      Block a = ait.next();
+      assertEquals(e.getTransaction(), a.getTransaction(), "transaction " + e.getNum());
+      assertEquals(e.getHash(), a.getHash(), "hash " + e.getNum());
+    } // while
+  } // assertSameBlocks(BlockChain, BlockChain)
+
+  /**
+   * Assert that two chains have the same size and last hash, and give
+   * every user the same balance.
+   *
+   * @param expected the chain we want.
+   * @param actual the chain we have.
+   */
+  static void assertSameBalances(BlockChain expected, BlockChain actual) {
+    assertEquals(expected.getSize(), actual.getSize(), "size");
+    assertEquals(expected.getHash(), actual.getHash(), "tip");
+    Iterator<String> users = expected.users();
+    while (users.hasNext()) {
+      String user = users.next();
+      assertEquals(expected.balance(user), actual.balance(user), user + "'s balance");
+    } // while
+  } // assertSameBalances(BlockChain, BlockChain)
+} // class Fixtures
@@ -0,0 +1,57 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BalanceLedger class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBalanceLedger {
+  /**
+   * Balances go past the range of an int, but not past the range of a long.
+   */
+  @Test
+  public void testOverflow() {
+    BalanceLedger ledger = new BalanceLedger();
+    ledger.addTo("A", Integer.MAX_VALUE);
+    ledger.addTo("A", Integer.MAX_VALUE);
+    assertEquals(2L * Integer.MAX_VALUE, ledger.get("A"), "more than an int holds");
+    ledger.set("A", Long.MAX_VALUE);
+    assertThrows(ArithmeticException.class, () -> ledger.addTo("A", 1), "overflow");
+    assertEquals(Long.MAX_VALUE, ledger.get("A"), "unchanged after overflow");
+    assertFalse(ledger.addIfPresent("B", 1), "B is not in the ledger");
+    assertEquals(0, ledger.get("B"), "missing users have nothing");
+  } // testOverflow()
+
+  /**
+   * A batch of changes is applied all at once, or not at all.
+   */
+  @Test
+  public void testApplyAll() {
+    BalanceLedger ledger = new BalanceLedger();
+    ledger.set("A", 10);
+    HashMap<String, long[]> deltas = new HashMap<String, long[]>();
+    deltas.put("A", new long[] {-4});
+    deltas.put("B", new long[] {4});
+    ledger.applyAll(List.of("B"), deltas);
+    assertEquals(6, ledger.get("A"), "A after the batch");
+    assertEquals(4, ledger.get("B"), "B after the batch");
+    assertEquals(List.of("A", "B"), ledger.users(), "users in order");
+
+    deltas.put("A", new long[] {Long.MAX_VALUE});
+    deltas.put("C", new long[] {1});
+    assertThrows(ArithmeticException.class, () -> ledger.applyAll(List.of("C"), deltas),
+        "overflow in a batch");
+    assertEquals(6, ledger.get("A"), "A unchanged after a failed batch");
+    assertEquals(2, ledger.size(), "no users added by a failed batch");
+  } // testApplyAll()
+} // class TestBalanceLedger
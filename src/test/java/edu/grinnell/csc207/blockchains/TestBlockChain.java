@@ -3,6 +3,10 @@ package edu.grinnell.csc207.blockchains;
 import java.util.Arrays;
 import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -275,6 +279,13 @@ public class TestBlockChain {
     assertEquals(80, chain.balance("A"), "A's eighth balance");
     assertEquals(50, chain.balance("B"), "B's eighth balance");
     assertEquals(20, chain.balance("C"), "C's eighth balance");
+
+    chain.append(chain.mine(new Transaction("", "B", 5)));
+    chain.removeLast();
+    assertEquals(50, chain.balance("B"), "B's balance after removing a deposit");
+    chain.removeLast();
+    assertEquals(20, chain.balance("B"), "B's balance after removing a transfer");
+    assertEquals(50, chain.balance("C"), "C's balance after removing a transfer");
   } // testBalances()
 
   /**
@@ -463,4 +474,170 @@ public class TestBlockChain {
     assertCheckFails(chain, "modified chain is incorrect");
   } // testModifiedChain()
 
+  /**
+   * Make sure that we can append a batch of blocks at once.
+   */
+  @Test
+  public void testAppendAll() throws Exception {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 5) && (hash.get(1) == 5);
+    BlockChain chain = new BlockChain(v);
+    Block block1 = new Block(1, new Transaction("", "A", 100), chain.getHash(), v);
+    Block block2 = new Block(2, new Transaction("A", "B", 30), block1.getHash(), v);
+    Block block3 = new Block(3, new Transaction("B", "A", 10), block2.getHash(), v);
+    chain.appendAll(List.of(block1, block2, block3));
+    assertEquals(4, chain.getSize(), "size after appending a batch of 3");
+    assertEquals(80, chain.balance("A"), "A's balance after the batch");
+    assertEquals(20, chain.balance("B"), "B's balance after the batch");
+    assertArrayEquals(new String[] {"A", "B"}, users(chain), "users after the batch");
+    assertEquals(block3.getHash(), chain.getHash(), "hash after the batch");
+    assertTrue(chain.isCorrect(), "chain after the batch is correct");
+    chain.check();
+  } // testAppendAll()
+
+  /**
+   * Make sure that a batch with a bad block leaves the chain unchanged.
+   */
+  @Test
+  public void testAppendAllBad() throws Exception {
+    HashValidator v =
+        (hash) ->
+            (hash.length() >= 2) && (hash.get(0) == 5) && (hash.get(1) == 6);
+    BlockChain chain = new BlockChain(v);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    Block block2 = new Block(2, new Transaction("A", "B", 30), chain.getHash(), v);
+    Block block3 = new Block(3, new Transaction("B", "A", 10), block2.getHash(), v);
+    Block block4 = new Block(4, new Transaction("", "C", 5), block3.getHash(), v);
+    block3.transaction = new Transaction("B", "A", 20);
+    IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+        () -> chain.appendAll(List.of(block2, block3, block4)), "batch with modified block");
+    assertTrue(e.getMessage().contains("index 1"), "reports the first bad block");
+    assertEquals(2, chain.getSize(), "size after a bad batch");
+    assertEquals(100, chain.balance("A"), "A's balance after a bad batch");
+    assertEquals(0, chain.balance("B"), "B's balance after a bad batch");
+    assertArrayEquals(new String[] {"A"}, users(chain), "users after a bad batch");
+  } // testAppendAllBad()
+
+  /**
+   * Make sure that the streams see the same things as the iterators, in
+   * parallel as well as in order.
+   */
+  @Test
+  public void testStreams() {
+    HashValidator v = (hash) -> (hash.length() >= 1) && (hash.get(0) == 9);
+    BlockChain chain = new BlockChain(v);
+    chain.append(chain.mine(new Transaction("", "A", 1000)));
+    for (int i = 1; i <= 40; i++) {
+      chain.append(chain.mine(new Transaction("A", (i % 2 == 0) ? "B" : "C", i)));
+    } // for
+
+    assertEquals(42, chain.blockStream().count(), "number of blocks");
+    assertEquals(41, chain.blockStream().parallel().skip(1).count(),
+        "number of blocks after the first, in parallel");
+    assertEquals(1000 + 820, chain.transactionStream().parallel()
+        .mapToInt(Transaction::getAmount).sum(), "total amount, in parallel");
+    Map<String, Integer> received = chain.transactionStream().parallel()
+        .collect(Collectors.groupingByConcurrent(Transaction::getTarget,
+            Collectors.summingInt(Transaction::getAmount)));
+    assertEquals(420, received.get("B"), "amount received by B");
+    assertEquals(400, received.get("C"), "amount received by C");
+    assertArrayEquals(new String[] {"A", "B", "C"},
+        chain.userStream().sorted().toArray(String[]::new), "users");
+
+    Iterator<Block> blocks = chain.blocks();
+    List<Block> streamed = chain.blockStream().parallel().collect(Collectors.toList());
+    for (Block blk : streamed) {
+      assertEquals(blocks.next(), blk, "block " + blk.getNum());
+    } // for
+
+    Spliterator<Block> whole = chain.blockStream().spliterator();
+    Spliterator<Block> half = whole.trySplit();
+    assertEquals(21, half.estimateSize(), "size of the first half");
+    assertEquals(21, whole.estimateSize(), "size of the second half");
+  } // testStreams()
+
+  /**
+   * Transactions are found while they are in the chain, and unknown users
+   * have no balance.
+   */
+  @Test
+  public void testContainsTransaction() {
+    HashValidator v = (hash) -> (hash.length() >= 1) && (hash.get(0) == 9);
+    BlockChain chain = new BlockChain(v);
+    chain.append(chain.mine(new Transaction("", "A", 5000)));
+    for (int i = 1; i <= 30; i++) {
+      chain.append(chain.mine(new Transaction("A", "U" + i, i)));
+    } // for
+    assertTrue(chain.containsTransaction(new Transaction("A", "U7", 7)), "U7's transfer");
+    assertFalse(chain.containsTransaction(new Transaction("A", "U7", 8)), "wrong amount");
+    assertFalse(chain.containsTransaction(new Transaction("A", "Z", 7)), "unknown target");
+    assertEquals(0, chain.balance("nobody"), "unknown user's balance");
+    assertFalse(chain.validTransaction(new Transaction("nobody", "A", 0)), "unknown source");
+
+    chain.removeLast();
+    assertFalse(chain.containsTransaction(new Transaction("A", "U30", 30)), "removed transfer");
+    assertTrue(chain.containsTransaction(new Transaction("A", "U29", 29)), "kept transfer");
+    chain.append(chain.mine(new Transaction("U29", "U30", 2)));
+    assertTrue(chain.containsTransaction(new Transaction("U29", "U30", 2)), "new transfer");
+  } // testContainsTransaction()
+
+  /**
+   * With replay protection on, a transaction already in the chain is
+   * rejected, unless it has a new sequence number or was removed.
+   */
+  @Test
+  public void testReplayProtection() {
+    HashValidator v = (hash) -> (hash.length() >= 1) && (hash.get(0) == 9);
+    BlockChain chain = new BlockChain(v);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("A", "B", 5)));
+    chain.append(chain.mine(new Transaction("A", "B", 5)));
+    chain.setReplayProtection(true);
+    Transaction transfer = new Transaction("A", "B", 5);
+    assertTrue(chain.isReplay(transfer), "existing transfer is indexed");
+    assertFalse(chain.validTransaction(transfer), "replayed transfer");
+    assertThrows(IllegalArgumentException.class, () -> chain.append(chain.mine(transfer)));
+    Transaction again = new Transaction("A", "B", 5, 1);
+    assertTrue(chain.validTransaction(again), "new sequence number");
+    chain.append(chain.mine(again));
+    assertThrows(IllegalArgumentException.class, () -> chain.append(chain.mine(again)));
+
+    Block next = chain.mine(new Transaction("A", "C", 1));
+    Block replay = new Block(next.getNum() + 1, next.getTransaction(), next.getHash(), v,
+        DigestProviders.SHA256);
+    assertThrows(IllegalArgumentException.class, () -> chain.appendAll(List.of(next, replay)),
+        "replay within a batch");
+    assertEquals(5, chain.getSize(), "batch not appended");
+
+    assertTrue(chain.removeLast(), "remove the new transfer");
+    assertFalse(chain.isReplay(again), "removed transfer is forgotten");
+    assertTrue(chain.isReplay(transfer), "older copies are still indexed");
+    chain.setReplayProtection(false);
+    chain.append(chain.mine(transfer));
+    assertEquals(5, chain.getSize(), "replays allowed again");
+  } // testReplayProtection()
+
+  /**
+   * A block whose transaction would overflow a balance is not appended,
+   * and neither balance changes.
+   */
+  @Test
+  public void testOverflowLeavesChainAlone() throws Exception {
+    HashValidator v = (hash) -> (hash.length() >= 1) && (hash.get(0) == 0);
+    BlockChain chain = new BlockChain(v);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("", "B", 1)));
+    chain.balances.set("B", Long.MAX_VALUE);
+    Hash tip = chain.getHash();
+    Block overflow = chain.mine(new Transaction("A", "B", 5));
+    assertThrows(ArithmeticException.class, () -> chain.append(overflow), "overflow");
+    assertEquals(3, chain.getSize(), "block not appended");
+    assertEquals(tip, chain.getHash(), "same tip");
+    assertEquals(100, chain.balance("A"), "A not debited");
+    assertEquals(Long.MAX_VALUE, chain.balance("B"), "B not credited");
+    chain.append(chain.mine(new Transaction("B", "A", 5)));
+    assertEquals(105, chain.balance("A"), "chain still grows");
+  } // testOverflowLeavesChainAlone()
+
 } // class TestBlockChain
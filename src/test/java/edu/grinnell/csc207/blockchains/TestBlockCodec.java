@@ -0,0 +1,156 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BlockCodec class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBlockCodec {
+  /**
+   * Varints and zig-zag varints survive a round trip.
+   */
+  @Test
+  public void testVarInts() {
+    ByteBuffer buf = ByteBuffer.allocate(128);
+    long[] longs = {0, 1, 127, 128, 300, Integer.MAX_VALUE, Long.MAX_VALUE, -1};
+    int[] ints = {0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE};
+    for (long l : longs) {
+      BlockCodec.putVarLong(buf, l);
+    } // for
+    for (int i : ints) {
+      BlockCodec.putSignedVarInt(buf, i);
+    } // for
+    buf.flip();
+    for (long l : longs) {
+      assertEquals(l, BlockCodec.getVarLong(buf), "varint " + l);
+    } // for
+    for (int i : ints) {
+      assertEquals(i, BlockCodec.getSignedVarInt(buf), "zig-zag varint " + i);
+    } // for
+    assertEquals(0, buf.remaining(), "everything read");
+  } // testVarInts()
+
+  /**
+   * A chain survives a round trip and is much smaller than its text form.
+   */
+  @Test
+  public void testRoundTrip() {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    chain.append(chain.mine(new Transaction("", "Alice", 1000)));
+    chain.append(chain.mine(new Transaction("", "Bob", 50)));
+    for (int i = 0; i < 20; i++) {
+      chain.append(chain.mine(new Transaction("Alice", "Bob", 3)));
+      chain.append(chain.mine(new Transaction("Bob", "Alice", 2)));
+    } // for
+
+    ByteBuffer buf = new BlockCodec().encode(chain.blocks());
+    int textSize = 0;
+    Iterator<Block> blocks = chain.blocks();
+    while (blocks.hasNext()) {
+      textSize += blocks.next().toString().length();
+    } // while
+    assertTrue(buf.remaining() * 2 < textSize, "binary form is compact");
+
+    ArrayList<Block> decoded = new BlockCodec().decode(buf);
+    assertEquals(chain.getSize(), decoded.size(), "number of blocks");
+    blocks = chain.blocks();
+    for (Block copy : decoded) {
+      Block original = blocks.next();
+      assertEquals(original.getNum(), copy.getNum(), "block number");
+      assertEquals(original.getTransaction(), copy.getTransaction(), "transaction");
+      assertEquals(original.getNonce(), copy.getNonce(), "nonce");
+      assertEquals(original.getPrevHash(), copy.getPrevHash(), "previous hash");
+      assertEquals(original.getHash(), copy.getHash(), "hash");
+    } // for
+  } // testRoundTrip()
+
+  /**
+   * Bad headers are rejected.
+   */
+  @Test
+  public void testBadHeader() {
+    ByteBuffer buf = ByteBuffer.allocate(8);
+    buf.putInt(BlockCodec.MAGIC).put((byte) (BlockCodec.VERSION + 1)).flip();
+    assertThrows(IllegalArgumentException.class, () -> new BlockCodec().readHeader(buf),
+        "unknown version");
+    ByteBuffer junk = ByteBuffer.wrap(new byte[] {1, 2, 3, 4, 5});
+    assertThrows(IllegalArgumentException.class, () -> new BlockCodec().readHeader(junk),
+        "bad magic number");
+  } // testBadHeader()
+
+  /**
+   * Lengths that are negative or run past the end of the buffer, block
+   * numbers out of range, and blocks cut short are rejected.
+   */
+  @Test
+  public void testBadLengths() {
+    ByteBuffer hash = ByteBuffer.allocate(16);
+    BlockCodec.putVarLong(hash, 200);
+    hash.put(new byte[] {1, 2, 3}).flip();
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.readHash(hash),
+        "hash longer than the buffer");
+    ByteBuffer negative = ByteBuffer.allocate(16);
+    BlockCodec.putVarLong(negative, -1);
+    negative.flip();
+    assertThrows(IllegalArgumentException.class, () -> BlockCodec.readHash(negative),
+        "negative hash length");
+    ByteBuffer user = ByteBuffer.allocate(16);
+    BlockCodec.putVarLong(user, 0);
+    BlockCodec.putVarLong(user, Integer.MAX_VALUE);
+    user.put(new byte[] {'A'}).flip();
+    assertThrows(IllegalArgumentException.class, () -> new BlockCodec().readUser(user),
+        "name longer than the buffer");
+
+    ByteBuffer bigNum = ByteBuffer.allocate(16);
+    BlockCodec.putVarLong(bigNum, 1L << 32);
+    bigNum.flip();
+    assertThrows(IllegalArgumentException.class, () -> new BlockCodec().readBlock(bigNum),
+        "block number out of range");
+    BlockCodec codec = new BlockCodec();
+    ByteBuffer whole = ByteBuffer.allocate(256);
+    codec.writeBlock(whole, new Block(1, new Transaction("", "Alice", 5),
+        new Hash(new byte[] {}), 9));
+    ByteBuffer cut = ByteBuffer.wrap(Arrays.copyOf(whole.array(), whole.position() - 3));
+    BlockCodec reader = new BlockCodec();
+    assertThrows(IllegalArgumentException.class, () -> reader.readBlock(cut), "cut short");
+    assertEquals(0, reader.users.size(), "no users left from the cut block");
+  } // testBadLengths()
+
+  /**
+   * Sequence numbers survive a round trip, and version 1 streams, which
+   * have none, can still be read but cannot hold them.
+   */
+  @Test
+  public void testSeqAndVersion1() {
+    Block blk = new Block(1, new Transaction("", "Alice", 5, 300), new Hash(new byte[] {}), 9);
+    ByteBuffer buf = new BlockCodec().encode(List.of(blk).iterator());
+    Transaction copy = new BlockCodec().decode(buf).get(0).getTransaction();
+    assertEquals(300, copy.getSeq(), "sequence number");
+    assertEquals(blk.getTransaction(), copy, "transaction");
+
+    BlockCodec old = new BlockCodec();
+    old.version = 1;
+    ByteBuffer v1 = old.encode(List.of(
+        new Block(1, new Transaction("", "Alice", 5), new Hash(new byte[] {}), 9)).iterator());
+    assertEquals(1, v1.get(Integer.BYTES), "version written");
+    Block read = new BlockCodec().decode(v1).get(0);
+    assertEquals(new Transaction("", "Alice", 5), read.getTransaction(), "version 1 block");
+    assertThrows(IllegalArgumentException.class,
+        () -> old.writeTransaction(ByteBuffer.allocate(64), blk.getTransaction()),
+        "version 1 cannot hold sequence numbers");
+  } // testSeqAndVersion1()
+} // class TestBlockCodec
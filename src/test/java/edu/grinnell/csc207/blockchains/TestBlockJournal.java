@@ -0,0 +1,199 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBlocks;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of journaling blocks.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBlockJournal {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Where the journals go.
+   */
+  @TempDir
+  Path dir;
+
+  /**
+   * Append a few transfers to a chain, collecting the futures.
+   */
+  static ArrayList<CompletableFuture<Void>> transfers(BlockChain chain, int count) {
+    ArrayList<CompletableFuture<Void>> acks = new ArrayList<CompletableFuture<Void>>();
+    acks.add(chain.appendDurably(chain.mine(new Transaction("", "A", 1000))));
+    for (int i = 0; i < count; i++) {
+      acks.add(chain.appendDurably(chain.mine(new Transaction("A", "B" + (i % 3), i))));
+    } // for
+    return acks;
+  } // transfers(BlockChain, int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Batches are forced once and acknowledged together.
+   */
+  @Test
+  void groupCommitTest() throws Exception {
+    Path file = dir.resolve("batch.journal");
+    BlockChain chain = new BlockChain(VALIDATOR);
+    try (BlockJournal journal = new BlockJournal(file, Durability.BATCH, 8, 1_000_000_000L)) {
+      chain.setJournal(journal);
+      ArrayList<CompletableFuture<Void>> acks = transfers(chain, 39);
+      journal.flush().join();
+      for (CompletableFuture<Void> ack : acks) {
+        assertTrue(ack.isDone() && !ack.isCompletedExceptionally(), "acknowledged");
+      } // for
+      assertTrue(journal.forces() <= 6, "one force per batch, not per block");
+    } // try
+    assertEquals(40, BlockJournal.read(file).size(), "blocks in the journal");
+  } // groupCommitTest()
+
+  /**
+   * The time trigger flushes a batch that never fills.
+   */
+  @Test
+  void delayTest() throws Exception {
+    Path file = dir.resolve("delay.journal");
+    BlockChain chain = new BlockChain(VALIDATOR);
+    try (BlockJournal journal = new BlockJournal(file, Durability.BATCH, 1000, 1_000_000L)) {
+      chain.setJournal(journal);
+      ArrayList<CompletableFuture<Void>> acks = transfers(chain, 2);
+      CompletableFuture.allOf(acks.toArray(new CompletableFuture<?>[0])).join();
+      assertEquals(3, BlockJournal.read(file).size(), "blocks on the disk");
+    } // try
+  } // delayTest()
+
+  /**
+   * Per-block writes are durable when append returns, and fire-and-forget
+   * writes are acknowledged at once.
+   */
+  @Test
+  void modesTest() throws Exception {
+    Path file = dir.resolve("each.journal");
+    BlockChain chain = new BlockChain(VALIDATOR);
+    try (BlockJournal journal = new BlockJournal(file, Durability.PER_BLOCK)) {
+      chain.setJournal(journal);
+      for (CompletableFuture<Void> ack : transfers(chain, 4)) {
+        assertTrue(ack.isDone(), "per-block acknowledged");
+      } // for
+      assertEquals(5, journal.forces(), "one force per block");
+      assertEquals(5, BlockJournal.read(file).size(), "blocks on the disk");
+    } // try
+
+    Path other = dir.resolve("none.journal");
+    chain = new BlockChain(VALIDATOR);
+    try (BlockJournal journal = new BlockJournal(other, Durability.NONE, 1000, 1_000_000_000L)) {
+      chain.setJournal(journal);
+      for (CompletableFuture<Void> ack : transfers(chain, 4)) {
+        assertTrue(ack.isDone(), "fire-and-forget acknowledged");
+      } // for
+    } // try
+    assertEquals(5, BlockJournal.read(other).size(), "blocks written on close");
+  } // modesTest()
+
+  /**
+   * Removals are journaled, a torn frame is dropped, and a reopened
+   * journal picks up where it left off.
+   */
+  @Test
+  void replayTest() throws Exception {
+    Path file = dir.resolve("replay.journal");
+    BlockChain chain = new BlockChain(VALIDATOR);
+    try (BlockJournal journal = new BlockJournal(file, Durability.BATCH)) {
+      chain.setJournal(journal);
+      transfers(chain, 10);
+      chain.removeLast();
+      chain.removeLast();
+    } // try
+    Files.write(file, new byte[] {0, 0, 0, 40, 1, 2}, StandardOpenOption.APPEND);
+
+    BlockChain copy = new BlockChain(VALIDATOR);
+    assertEquals(9, BlockJournal.replay(file, copy), "blocks replayed");
+    assertSameBlocks(chain, copy);
+
+    try (BlockJournal journal = new BlockJournal(file, Durability.PER_BLOCK)) {
+      chain.setJournal(journal);
+      chain.append(chain.mine(new Transaction("B1", "C", 1)));
+      chain.append(chain.mine(new Transaction("", "B2", 5)));
+    } // try
+    BlockChain again = new BlockChain(VALIDATOR);
+    assertEquals(11, BlockJournal.replay(file, again), "blocks after reopening");
+    assertSameBlocks(chain, again);
+    assertEquals(chain.balance("C"), again.balance("C"), "C's balance");
+  } // replayTest()
+
+  /**
+   * Appends and removals are refused once the journal is closed, and the
+   * chain is left as it was.
+   */
+  @Test
+  void closedTest() throws Exception {
+    Path file = dir.resolve("closed.journal");
+    BlockChain chain = new BlockChain(VALIDATOR);
+    BlockJournal journal = new BlockJournal(file, Durability.BATCH);
+    chain.setJournal(journal);
+    transfers(chain, 3);
+    Block next = chain.mine(new Transaction("A", "B0", 7));
+    journal.close();
+    assertThrows(IllegalStateException.class, () -> chain.append(next));
+    assertThrows(IllegalStateException.class, () -> chain.appendAll(List.of(next)));
+    assertThrows(IllegalStateException.class, () -> chain.removeLast());
+    assertEquals(5, chain.getSize(), "blocks in the chain");
+    assertEquals(1000 - 3, chain.balance("A"), "A's balance");
+    assertTrue(chain.isCorrect(), "chain is correct");
+  } // closedTest()
+
+  /**
+   * A journal attached to a chain that already has blocks does not let the
+   * chain remove them, so the file can still be opened afterwards.
+   */
+  @Test
+  void attachTest() throws Exception {
+    Path file = dir.resolve("attach.journal");
+    BlockChain chain = new BlockChain(VALIDATOR);
+    transfers(chain, 3);
+    try (BlockJournal journal = new BlockJournal(file, Durability.BATCH)) {
+      chain.setJournal(journal);
+      assertTrue(!chain.removeLast(), "block from before the journal kept");
+      chain.append(chain.mine(new Transaction("A", "C", 1)));
+      assertTrue(chain.removeLast(), "journaled block removed");
+      assertTrue(!chain.removeLast(), "block from before the journal kept again");
+      chain.append(chain.mine(new Transaction("A", "C", 2)));
+    } // try
+    assertEquals(6, chain.getSize(), "blocks in the chain");
+    try (BlockJournal journal = new BlockJournal(file, Durability.BATCH)) {
+      assertEquals(1, journal.held(), "blocks held after reopening");
+    } // try
+    assertEquals(1, BlockJournal.read(file).size(), "blocks in the journal");
+  } // attachTest()
+
+  /**
+   * A file that is not a journal is refused.
+   */
+  @Test
+  void notJournalTest() throws Exception {
+    Path file = dir.resolve("junk");
+    Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+    assertThrows(IOException.class, () -> new BlockJournal(file, Durability.NONE).close());
+  } // notJournalTest()
+} // class TestBlockJournal
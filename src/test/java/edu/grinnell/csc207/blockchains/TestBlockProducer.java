@@ -0,0 +1,81 @@
+package edu.grinnell.csc207.blockchains;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBlocks;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BlockProducer class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBlockProducer {
+  /**
+   * The producer builds the same chain as mining one block at a time, and
+   * skips transactions that cannot go in the chain.
+   */
+  @Test
+  public void testSameAsSequential() throws Exception {
+    BlockChain expected = new BlockChain(VALIDATOR);
+    BlockChain actual = new BlockChain(VALIDATOR);
+    BlockProducer producer = new BlockProducer(actual, 4);
+    producer.start();
+    Transaction[] transactions = new Transaction[41];
+    transactions[0] = new Transaction("", "Alice", 100);
+    transactions[1] = new Transaction("", "Bob", 50);
+    for (int i = 2; i < transactions.length; i++) {
+      transactions[i] = (i % 2 == 0)
+          ? new Transaction("Alice", "Bob", 3) : new Transaction("Bob", "Alice", 2);
+    } // for
+    for (Transaction t : transactions) {
+      expected.append(expected.mine(t));
+      producer.submit(t);
+    } // for
+    producer.submit(new Transaction("Alice", "Bob", -5));
+    producer.submit(new Transaction("", "", 5));
+    producer.finish();
+
+    assertEquals(transactions.length, producer.produced(), "blocks produced");
+    assertEquals(2, producer.rejected(), "transactions rejected");
+    assertTrue(producer.blocksPerSecond() > 0, "rate reported");
+    assertEquals(expected.getSize(), actual.getSize(), "same size");
+    assertTrue(actual.isCorrect(), "produced chain is correct");
+    assertSameBlocks(expected, actual);
+    assertEquals(expected.balance("Alice"), actual.balance("Alice"), "Alice's balance");
+  } // testSameAsSequential()
+
+  /**
+   * A block the chain will not take (once) is counted as rejected, and the
+   * producer goes on with the transactions after it.
+   */
+  @Test
+  public void testFailedAppend() throws Exception {
+    boolean[] failed = new boolean[1];
+    BlockChain chain = new BlockChain(VALIDATOR) {
+      @Override
+      public void append(Block blk) {
+        if (blk.getNum() == 5 && !failed[0]) {
+          failed[0] = true;
+          throw new IllegalStateException("The chain is closed.");
+        } // if
+        super.append(blk);
+      } // append(Block)
+    };
+    BlockProducer producer = new BlockProducer(chain, 4);
+    producer.start();
+    for (int i = 0; i < 10; i++) {
+      producer.submit(new Transaction("", "Alice", i + 1));
+    } // for
+    producer.finish();
+
+    assertEquals(9, producer.produced(), "blocks produced");
+    assertEquals(1, producer.rejected(), "transactions rejected");
+    assertEquals(10, chain.getSize(), "blocks in the chain");
+    assertEquals(55 - 5, chain.balance("Alice"), "Alice's balance");
+    assertTrue(chain.isCorrect(), "produced chain is correct");
+  } // testFailedAppend()
+} // class TestBlockProducer
@@ -0,0 +1,95 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static edu.grinnell.csc207.blockchains.Fixtures.tail;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of block segments.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBlockSegment {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Get some consecutive blocks from a chain with a few busy users.
+   */
+  static List<Block> sampleBlocks() {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    chain.append(chain.mine(new Transaction("", "Alexandra", 100000)));
+    for (int i = 0; i < 200; i++) {
+      chain.append(chain.mine(new Transaction("Alexandra", "Bartholomew" + (i % 4), i % 10,
+          i / 10)));
+    } // for
+    return tail(chain);
+  } // sampleBlocks()
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Blocks come back as they went in, and take less room than the
+   * stream encoding.
+   */
+  @Test
+  void roundTripTest() {
+    List<Block> blocks = sampleBlocks();
+    byte[] segment = BlockSegment.encode(blocks);
+    List<Block> decoded = BlockSegment.decode(segment);
+    assertEquals(blocks.size(), decoded.size(), "blocks");
+    for (int i = 0; i < blocks.size(); i++) {
+      Block expected = blocks.get(i);
+      Block actual = decoded.get(i);
+      assertEquals(expected.getNum(), actual.getNum(), "num");
+      assertEquals(expected.getTransaction().getSource(), actual.getTransaction().getSource());
+      assertEquals(expected.getTransaction().getTarget(), actual.getTransaction().getTarget());
+      assertEquals(expected.getTransaction().getAmount(), actual.getTransaction().getAmount());
+      assertEquals(expected.getTransaction().getSeq(), actual.getTransaction().getSeq());
+      assertEquals(expected.getPrevHash(), actual.getPrevHash(), "prevHash");
+      assertEquals(expected.getNonce(), actual.getNonce(), "nonce");
+      assertArrayEquals(expected.getHash().getBytes(), actual.getHash().getBytes(), "hash");
+    } // for
+
+    int[] header = BlockSegment.readHeader(ByteBuffer.wrap(segment));
+    assertEquals(1, header[0], "first block");
+    assertEquals(200 + 1, header[1], "count");
+    int streamed = new BlockCodec().encode(blocks.iterator()).remaining();
+    assertTrue(segment.length < streamed * 3 / 5,
+        "segment " + segment.length + " vs stream " + streamed);
+  } // roundTripTest()
+
+  /**
+   * Damaged segments and runs that are not consecutive are refused.
+   */
+  @Test
+  void badSegmentTest() {
+    List<Block> blocks = sampleBlocks();
+    byte[] segment = BlockSegment.encode(blocks);
+    assertThrows(IllegalArgumentException.class,
+        () -> BlockSegment.decode(Arrays.copyOf(segment, segment.length - 10)));
+    byte[] damaged = segment.clone();
+    damaged[BlockSegment.HEADER_SIZE + 2] ^= 0x55;
+    assertThrows(IllegalArgumentException.class, () -> BlockSegment.decode(damaged));
+    ByteBuffer payload = ByteBuffer.allocate(16);
+    BlockCodec.putVarLong(payload, 1);
+    BlockCodec.putVarLong(payload, 1 << 20);
+    payload.put(new byte[] {'A', 'B'}).flip();
+    assertThrows(IllegalArgumentException.class,
+        () -> BlockSegment.parse(payload, 1, 1, BlockSegment.VERSION), "name length");
+    assertThrows(IllegalArgumentException.class,
+        () -> BlockSegment.encode(List.of(blocks.get(0), blocks.get(2))));
+  } // badSegmentTest()
+} // class TestBlockSegment
@@ -0,0 +1,123 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.Iterator;
+import java.util.function.Supplier;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Tests that chains behave the same whichever block store they use.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBlockStore {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Run the same operations against a chain backed by the given store and
+   * a chain backed by a list, and check that they agree.
+   */
+  static void assertBehavesLikeList(Supplier<BlockStore> stores) throws Exception {
+    BlockChain expected = new BlockChain(VALIDATOR);
+    BlockChain actual = new BlockChain(VALIDATOR, stores.get());
+    assertEquals(expected.getHash(), actual.getHash(), "initial hash");
+
+    for (BlockChain chain : new BlockChain[] {expected, actual}) {
+      chain.append(chain.mine(new Transaction("", "A", 100)));
+      chain.append(chain.mine(new Transaction("", "B", 50)));
+      for (int i = 0; i < 20; i++) {
+        chain.append(chain.mine(new Transaction("A", "B", i % 5)));
+      } // for
+      chain.append(chain.mine(new Transaction("B", "C", 7)));
+      assertTrue(chain.removeLast(), "remove from a long chain");
+      chain.append(chain.mine(new Transaction("B", "D", 9, 42)));
+    } // for
+
+    assertEquals(expected.getSize(), actual.getSize(), "size");
+    assertEquals(expected.getHash(), actual.getHash(), "hash of the last block");
+    assertEquals(expected.balance("A"), actual.balance("A"), "A's balance");
+    assertEquals(expected.balance("D"), actual.balance("D"), "D's balance");
+    assertTrue(actual.isCorrect(), "the chain is correct");
+    actual.check();
+    Iterator<Block> eit = expected.blocks();
+    Iterator<Block> ait = actual.blocks();
+    while (eit.hasNext()) {
+      Block e = eit.next();
+      Block a = ait.next();
+      assertEquals(e.getNum(), a.getNum(), "block number");
+      assertEquals(e.getTransaction(), a.getTransaction(), "transaction " + e.getNum());
+      assertEquals(e.getNonce(), a.getNonce(), "nonce " + e.getNum());
+      assertEquals(e.getPrevHash(), a.getPrevHash(), "previous hash " + e.getNum());
+      assertEquals(e.getHash(), a.getHash(), "hash " + e.getNum());
+    } // while
+    assertFalse(ait.hasNext(), "no extra blocks");
+  } // assertBehavesLikeList(Supplier<BlockStore>)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * The columnar store behaves like a list.
+   */
+  @Test
+  public void testColumnar() throws Exception {
+    assertBehavesLikeList(ColumnarBlockStore::new);
+  } // testColumnar()
+
+  /**
+   * The off-heap store behaves like a list, including when the blocks
+   * span several segments.
+   */
+  @Test
+  public void testOffHeap() throws Exception {
+    assertBehavesLikeList(OffHeapBlockStore::new);
+    assertBehavesLikeList(() -> new OffHeapBlockStore(ColumnarBlockStore.SHA256_LENGTH, 4));
+  } // testOffHeap()
+
+  /**
+   * The off-heap store gives back segments as it shrinks.
+   */
+  @Test
+  public void testOffHeapShrink() {
+    BlockChain chain = new BlockChain(VALIDATOR,
+        new OffHeapBlockStore(ColumnarBlockStore.SHA256_LENGTH, 2));
+    for (int i = 0; i < 9; i++) {
+      chain.append(chain.mine(new Transaction("", "A", i)));
+    } // for
+    OffHeapBlockStore store = (OffHeapBlockStore) chain.store;
+    assertEquals(5, store.segments.size(), "segments for 10 blocks");
+    while (chain.removeLast()) {
+      assertTrue(store.segments.size() <= (chain.getSize() + 1) / 2 + 1,
+          "at most one spare segment for " + chain.getSize() + " blocks");
+    } // while
+    assertEquals(1, chain.getSize(), "size after removing every block");
+    assertEquals(1, store.segments.size(), "segments for 1 block");
+  } // testOffHeapShrink()
+
+  /**
+   * The columnar and off-heap stores refuse blocks that do not follow the
+   * last one.
+   */
+  @Test
+  public void testColumnarLinks() {
+    BlockChain chain = new BlockChain(VALIDATOR, new ColumnarBlockStore());
+    Block unlinked = new Block(1, new Transaction("", "A", 1), new Hash(new byte[32]), VALIDATOR);
+    assertThrows(IllegalArgumentException.class, () -> chain.store.add(unlinked),
+        "block with the wrong previous hash");
+    assertEquals(1, chain.getSize(), "size after refused block");
+    BlockChain offHeap = new BlockChain(VALIDATOR, new OffHeapBlockStore());
+    assertThrows(IllegalArgumentException.class, () -> offHeap.store.add(unlinked),
+        "off-heap block with the wrong previous hash");
+    assertEquals(1, offHeap.getSize(), "off-heap size after refused block");
+  } // testColumnarLinks()
+} // class TestBlockStore
@@ -0,0 +1,122 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBlocks;
+import static edu.grinnell.csc207.blockchains.Fixtures.sampleChain;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of exporting and importing chains.
+ *
+ * @author Mitch Paiva
+ */
+public class TestChainIO {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Export a chain to an array of bytes.
+   */
+  static byte[] exportBytes(BlockChain chain) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ChainIO.export(chain, out, null);
+    return out.toByteArray();
+  } // exportBytes(BlockChain)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * A chain survives export and import, with and without verification.
+   */
+  @Test
+  public void testRoundTrip() throws Exception {
+    BlockChain chain = sampleChain(30);
+    byte[] bytes = exportBytes(chain);
+    long[] reported = new long[2];
+    BlockChain verified = ChainIO.importChain(new ByteArrayInputStream(bytes), VALIDATOR, true,
+        (blocks, size) -> {
+          reported[0] = blocks;
+          reported[1] = size;
+        });
+    assertSameBlocks(chain, verified);
+    assertEquals(chain.getSize(), reported[0], "blocks reported");
+    assertEquals(bytes.length, reported[1], "bytes reported");
+    assertEquals(chain.balance("A"), verified.balance("A"), "A's balance");
+    assertEquals(chain.balance("B"), verified.balance("B"), "B's balance");
+    assertTrue(verified.isCorrect(), "imported chain is correct");
+
+    BlockChain trusted = ChainIO.importChain(new ByteArrayInputStream(bytes), VALIDATOR, false,
+        null);
+    assertSameBlocks(chain, trusted);
+    assertEquals(chain.balance("B"), trusted.balance("B"), "B's balance");
+  } // testRoundTrip()
+
+  /**
+   * A chain can be imported straight into an off-heap store.
+   */
+  @Test
+  public void testImportOffHeap() throws Exception {
+    BlockChain chain = sampleChain(30);
+    OffHeapBlockStore store = new OffHeapBlockStore(ColumnarBlockStore.SHA256_LENGTH, 8);
+    BlockChain imported = ChainIO.importChain(new ByteArrayInputStream(exportBytes(chain)),
+        VALIDATOR, store, DigestProviders.SHA256, true, null);
+    assertTrue(imported.store == store, "blocks kept in the given store");
+    assertSameBlocks(chain, imported);
+    assertEquals(chain.balance("B"), imported.balance("B"), "B's balance");
+    assertTrue(imported.isCorrect(), "imported chain is correct");
+  } // testImportOffHeap()
+
+  /**
+   * Tampered and truncated streams are rejected.
+   */
+  @Test
+  public void testBadStreams() throws Exception {
+    BlockChain chain = sampleChain(30);
+    Iterator<Block> blocks = chain.blocks();
+    for (int i = 0; i < 10; i++) {
+      blocks.next();
+    } // for
+    blocks.next().transaction = new Transaction("A", "B", 1000);
+    byte[] tampered = exportBytes(chain);
+    assertThrows(IOException.class,
+        () -> ChainIO.importChain(new ByteArrayInputStream(tampered), VALIDATOR, true, null),
+        "tampered block");
+
+    byte[] bytes = exportBytes(sampleChain(30));
+    byte[] truncated = Arrays.copyOf(bytes, bytes.length / 2);
+    assertThrows(IOException.class,
+        () -> ChainIO.importChain(new ByteArrayInputStream(truncated), VALIDATOR, false, null),
+        "truncated stream");
+
+    HashValidator other = (hash) -> (hash.length() >= 1) && (hash.get(0) == 1);
+    assertThrows(IOException.class,
+        () -> ChainIO.importChain(new ByteArrayInputStream(bytes), other, true, null),
+        "different validator");
+
+    byte[] negative = Arrays.copyOf(bytes, Integer.BYTES + 1 + Integer.BYTES);
+    Arrays.fill(negative, Integer.BYTES + 1, negative.length, (byte) 0xff);
+    assertThrows(IOException.class,
+        () -> ChainIO.importChain(new ByteArrayInputStream(negative), VALIDATOR, false, null),
+        "negative frame length");
+
+    byte[] huge = Arrays.copyOf(bytes, Integer.BYTES + 1 + Integer.BYTES + 16);
+    huge[Integer.BYTES + 1] = 0x7f;
+    assertThrows(IOException.class,
+        () -> ChainIO.importChain(new ByteArrayInputStream(huge), VALIDATOR, false, null),
+        "frame length past the end of the stream");
+  } // testBadStreams()
+} // class TestChainIO
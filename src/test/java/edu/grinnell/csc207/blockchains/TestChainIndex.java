@@ -0,0 +1,127 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of the query indices.
+ *
+ * @author Mitch Paiva
+ */
+public class TestChainIndex {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Build a chain of random transfers among a few users.
+   */
+  static BlockChain sampleChain(int count) {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    chain.append(chain.mine(new Transaction("", "U0", 100000)));
+    Random random = new Random(47);
+    for (int i = 0; i < count; i++) {
+      String source = (i % 10 == 0) ? "" : "U" + random.nextInt(3);
+      chain.append(chain.mine(new Transaction(source, "U" + random.nextInt(6),
+          random.nextInt(50))));
+    } // for
+    return chain;
+  } // sampleChain(int)
+
+  /**
+   * Get the transactions in a range of blocks (after the first) by
+   * scanning them.
+   */
+  static List<Transaction> scan(BlockChain chain, int from, int to) {
+    return chain.blockStream()
+        .filter((blk) -> blk.getNum() >= Math.max(1, from) && blk.getNum() < to)
+        .map(Block::getTransaction)
+        .collect(Collectors.toList());
+  } // scan(BlockChain, int, int)
+
+  /**
+   * Assert that the index agrees with a scan over a range.
+   */
+  static void assertMatchesScan(BlockChain chain, int from, int to) {
+    ChainIndex index = chain.queries();
+    List<Transaction> range = scan(chain, from, to);
+    String where = " in [" + from + ", " + to + ")";
+    assertEquals(range.stream().mapToLong(Transaction::getAmount).sum(),
+        index.volume(from, to), "volume" + where);
+    assertEquals(range.size(), index.count(from, to), "count" + where);
+    HashMap<String, Long> received = new HashMap<String, Long>();
+    for (Transaction t : range) {
+      received.merge(t.getTarget(), (long) t.getAmount(), Long::sum);
+    } // for
+    assertEquals(received, index.receivedByUser(from, to), "received" + where);
+    assertEquals(range.stream().filter((t) -> t.getSource().equals("U1"))
+        .mapToLong(Transaction::getAmount).sum(), index.sent("U1", from, to), "sent" + where);
+    long net = 0;
+    for (Transaction t : range) {
+      if (t.getSource().equals("U1") && t.getTarget().equals("U2")) {
+        net += t.getAmount();
+      } else if (t.getSource().equals("U2") && t.getTarget().equals("U1")) {
+        net -= t.getAmount();
+      } // if
+    } // for
+    assertEquals(net, index.netFlow("U1", "U2", from, to), "net flow" + where);
+    List<String> top = index.topReceivers(3, from, to);
+    List<String> expected = received.keySet().stream()
+        .sorted((a, b) -> received.get(a).equals(received.get(b))
+            ? a.compareTo(b) : Long.compare(received.get(b), received.get(a)))
+        .limit(3)
+        .collect(Collectors.toList());
+    assertEquals(expected, top, "top receivers" + where);
+  } // assertMatchesScan(BlockChain, int, int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Queries over ranges agree with scans, as blocks are appended and
+   * removed.
+   */
+  @Test
+  void rangeTest() {
+    BlockChain chain = sampleChain(300);
+    Random random = new Random(48);
+    for (int i = 0; i < 50; i++) {
+      int from = random.nextInt(chain.getSize());
+      int to = from + random.nextInt(chain.getSize() - from + 5);
+      assertMatchesScan(chain, from, to);
+    } // for
+    assertMatchesScan(chain, 0, chain.getSize());
+    assertEquals(0, chain.queries().volume(50, 50), "empty range");
+    assertEquals(0, chain.queries().sent("nobody", 0, 1000), "unknown user");
+
+    for (int i = 0; i < 20; i++) {
+      chain.removeLast();
+    } // for
+    assertMatchesScan(chain, 0, chain.getSize() + 20);
+    chain.append(chain.mine(new Transaction("U1", "U2", 7)));
+    chain.append(chain.mine(new Transaction("U2", "U1", 3)));
+    assertMatchesScan(chain, 200, chain.getSize());
+    assertMatchesScan(chain, 0, chain.getSize());
+    assertEquals(4, chain.queries().netFlow("U1", "U2", chain.getSize() - 2, chain.getSize()),
+        "net flow of the new blocks");
+  } // rangeTest()
+
+  /**
+   * Blocks must be indexed in order.
+   */
+  @Test
+  void orderTest() {
+    BlockChain chain = sampleChain(5);
+    assertThrows(IllegalArgumentException.class,
+        () -> chain.queries().add(chain.getBlock(3)));
+  } // orderTest()
+} // class TestChainIndex
@@ -0,0 +1,168 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBalances;
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBlocks;
+import static edu.grinnell.csc207.blockchains.Fixtures.grow;
+import static edu.grinnell.csc207.blockchains.Fixtures.sampleChain;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of pruning chains.
+ *
+ * @author Mitch Paiva
+ */
+public class TestChainPruner {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Where the archives go.
+   */
+  @TempDir
+  Path dir;
+
+  /**
+   * Build a chain and a copy that is never pruned.
+   */
+  static BlockChain[] sampleChains(int count) {
+    return new BlockChain[] {sampleChain(count), sampleChain(count)};
+  } // sampleChains(int)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Discarded bodies are gone, but the chain still checks and grows.
+   */
+  @Test
+  void discardTest() throws Exception {
+    BlockChain[] chains = sampleChains(40);
+    BlockChain chain = chains[0];
+    ChainPruner pruner = new ChainPruner(chain, 10);
+    assertEquals(32, pruner.prune(), "blocks pruned");
+    assertSameBalances(chains[1], chain);
+    assertTrue(chain.isCorrect(), "pruned chain is correct");
+    chain.check();
+    assertThrows(IllegalStateException.class, () -> chain.getBlock(5));
+    assertEquals(chains[1].getBlock(35).getHash(), chain.getBlock(35).getHash(), "kept block");
+    ArrayList<Block> kept = new ArrayList<Block>();
+    chain.blocks().forEachRemaining(kept::add);
+    assertEquals(10, kept.size(), "blocks still held");
+
+    grow(chain, 15);
+    grow(chains[1], 15);
+    assertEquals(15, pruner.prune(), "blocks pruned the second time");
+    assertSameBalances(chains[1], chain);
+    assertTrue(chain.isCorrect(), "pruned twice and correct");
+    assertEquals(0, pruner.prune(), "nothing more to prune");
+
+    for (int i = 0; i < 9; i++) {
+      assertTrue(chain.removeLast(), "removing a kept block");
+      chains[1].removeLast();
+    } // for
+    assertFalse(chain.removeLast(), "removing a pruned block");
+    assertSameBalances(chains[1], chain);
+  } // discardTest()
+
+  /**
+   * Archived bodies can still be read, and the archive holds a checkpoint.
+   */
+  @Test
+  void archiveTest() throws Exception {
+    BlockChain[] chains = sampleChains(40);
+    BlockChain chain = chains[0];
+    BlockArchive archive = new BlockArchive(dir);
+    ChainPruner pruner = new ChainPruner(chain, 10, archive);
+    pruner.prune();
+    grow(chain, 20);
+    grow(chains[1], 20);
+    pruner.prune();
+    assertEquals(2, archive.segments(), "segments");
+    assertEquals(52, archive.readAll().size(), "archived blocks");
+    assertSameBlocks(chains[1], chain);
+    assertTrue(chain.isCorrect(), "archived chain is correct");
+    assertEquals(chains[1].transactionStream().count(), chain.transactionStream().count(),
+        "transactions");
+
+    Checkpoint checkpoint = Checkpoint.read(Checkpoint.list(dir).get(0));
+    assertEquals(52, checkpoint.height(), "checkpoint height");
+    assertEquals(chains[1].getBlock(51).getHash(), checkpoint.tipHash(), "checkpoint tip");
+    assertEquals(new BlockArchive(dir).get(20).getHash(), chains[1].getBlock(20).getHash(),
+        "reopened archive");
+  } // archiveTest()
+
+  /**
+   * A pruned off-heap chain keeps its window off the heap.
+   */
+  @Test
+  void offHeapTest() throws Exception {
+    BlockChain expected = sampleChain(0);
+    BlockChain chain =
+        sampleChain(new OffHeapBlockStore(ColumnarBlockStore.SHA256_LENGTH, 8), 0);
+    grow(chain, 40);
+    grow(expected, 40);
+    ChainPruner pruner = new ChainPruner(chain, 10, new BlockArchive(dir, 8));
+    pruner.prune();
+    grow(chain, 5);
+    grow(expected, 5);
+    pruner.prune();
+    PrunedBlockStore store = (PrunedBlockStore) chain.store;
+    assertTrue(store.window instanceof OffHeapBlockStore, "window still off the heap");
+    assertEquals(10, store.window.size(), "blocks in the window");
+    assertSameBlocks(expected, chain);
+    assertSameBalances(expected, chain);
+    assertTrue(chain.isCorrect(), "pruned off-heap chain is correct");
+  } // offHeapTest()
+
+  /**
+   * Long runs of pruned blocks are split into segments of bounded size,
+   * and any block can still be read back.
+   */
+  @Test
+  void segmentSizeTest() throws Exception {
+    BlockChain[] chains = sampleChains(40);
+    BlockChain chain = chains[0];
+    BlockArchive archive = new BlockArchive(dir, 8);
+    new ChainPruner(chain, 10, archive).prune();
+    assertEquals(4, archive.segments(), "segments of 8 blocks");
+    for (int i = 0; i < 32; i++) {
+      assertEquals(chains[1].getBlock(i).getHash(), archive.get(i).getHash(), "block " + i);
+    } // for
+    assertEquals(8, archive.cached.size(), "blocks decoded at once");
+    assertSameBlocks(chains[1], chain);
+  } // segmentSizeTest()
+
+  /**
+   * An archived block whose contents were changed is refused, even if the
+   * hash stored with it was left alone.
+   */
+  @Test
+  void tamperTest() throws Exception {
+    BlockChain[] chains = sampleChains(40);
+    BlockChain chain = chains[0];
+    BlockArchive archive = new BlockArchive(dir, 8);
+    new ChainPruner(chain, 10, archive).prune();
+    ArrayList<Block> segment = new ArrayList<Block>();
+    for (int i = 0; i < 8; i++) {
+      segment.add(archive.get(i));
+    } // for
+    Block real = segment.get(5);
+    segment.set(5, new Block(5, new Transaction("A", "B0", 999), real.getPrevHash(),
+        real.getNonce(), real.getHash()));
+    archive.writeSegment(segment);
+    assertEquals(real.getHash(), archive.get(5).getHash(), "hash left alone");
+    assertThrows(IllegalStateException.class, () -> chain.getBlock(5), "tampered block");
+    assertEquals(chains[1].getBlock(4).getHash(), chain.getBlock(4).getHash(), "untouched block");
+  } // tamperTest()
+} // class TestChainPruner
@@ -0,0 +1,128 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBalances;
+import static edu.grinnell.csc207.blockchains.Fixtures.assertSameBlocks;
+import static edu.grinnell.csc207.blockchains.Fixtures.grow;
+import static edu.grinnell.csc207.blockchains.Fixtures.tail;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Some simple tests of checkpoints.
+ *
+ * @author Mitch Paiva
+ */
+public class TestCheckpoint {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * Where the checkpoints go.
+   */
+  @TempDir
+  Path dir;
+
+  /**
+   * Build a chain, checkpointing as it grows.
+   */
+  static BlockChain sampleChain(Checkpointer checkpoints) {
+    BlockChain chain = Fixtures.sampleChain(0);
+    checkpoints.maybeCheckpoint(chain);
+    for (int i = 0; i < 30; i++) {
+      grow(chain, 1);
+      checkpoints.maybeCheckpoint(chain);
+    } // for
+    return chain;
+  } // sampleChain(Checkpointer)
+
+  /**
+   * Assert that a restored chain matches the original.
+   */
+  static void assertRestored(BlockChain expected, BlockChain actual) {
+    assertSameBlocks(expected, actual);
+    assertSameBalances(expected, actual);
+  } // assertRestored(BlockChain, BlockChain)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Checkpoints are taken every interval, old ones are dropped, and a
+   * chain restored from the newest has the same state.
+   */
+  @Test
+  void restoreTest() throws Exception {
+    BlockChain chain;
+    try (Checkpointer checkpoints = new Checkpointer(dir, 10, 2)) {
+      chain = sampleChain(checkpoints);
+      assertNull(checkpoints.maybeCheckpoint(chain), "no checkpoint between intervals");
+    } // try
+    List<Path> files = Checkpoint.list(dir);
+    assertEquals(2, files.size(), "checkpoints kept");
+    Checkpoint newest = Checkpoint.read(files.get(0));
+    assertEquals(30, newest.height(), "newest height");
+    assertEquals(chain.getBlock(29).getHash(), newest.tipHash(), "newest tip");
+
+    BlockChain restored =
+        Checkpoint.restore(dir, VALIDATOR, DigestProviders.SHA256, tail(chain));
+    assertRestored(chain, restored);
+    restored.append(restored.mine(new Transaction("B1", "C", 3)));
+    assertEquals(3, restored.balance("C"), "C's balance after restoring");
+  } // restoreTest()
+
+  /**
+   * A chain can be restored into a columnar store.
+   */
+  @Test
+  void restoreIntoStoreTest() throws Exception {
+    BlockChain chain;
+    try (Checkpointer checkpoints = new Checkpointer(dir, 10, 2)) {
+      chain = sampleChain(checkpoints);
+    } // try
+    ColumnarBlockStore store = new ColumnarBlockStore();
+    BlockChain restored =
+        Checkpoint.restore(dir, VALIDATOR, store, DigestProviders.SHA256, tail(chain));
+    assertTrue(restored.store == store, "blocks kept in the given store");
+    assertRestored(chain, restored);
+  } // restoreIntoStoreTest()
+
+  /**
+   * A damaged checkpoint is refused, and restoring falls back to an older
+   * one, or to replaying everything.
+   */
+  @Test
+  void damagedTest() throws Exception {
+    BlockChain chain;
+    try (Checkpointer checkpoints = new Checkpointer(dir, 10, 3)) {
+      chain = sampleChain(checkpoints);
+    } // try
+    List<Path> files = Checkpoint.list(dir);
+    byte[] contents = Files.readAllBytes(files.get(0));
+    contents[12] ^= 1;
+    Files.write(files.get(0), contents);
+    assertThrows(IOException.class, () -> Checkpoint.read(files.get(0)));
+    assertRestored(chain,
+        Checkpoint.restore(dir, VALIDATOR, DigestProviders.SHA256, tail(chain)));
+
+    // Blocks that do not match any checkpoint are replayed from the start.
+    BlockChain other = new BlockChain(VALIDATOR);
+    for (int i = 0; i < 25; i++) {
+      other.append(other.mine(new Transaction("", "D", i)));
+    } // for
+    assertRestored(other,
+        Checkpoint.restore(dir, VALIDATOR, DigestProviders.SHA256, tail(other)));
+  } // damagedTest()
+} // class TestCheckpoint
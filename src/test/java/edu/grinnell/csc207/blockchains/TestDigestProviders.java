@@ -0,0 +1,65 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.security.MessageDigest;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our digest providers.
+ *
+ * @author Mitch Paiva
+ */
+public class TestDigestProviders {
+  /**
+   * The providers hash as the underlying algorithms do.
+   */
+  @Test
+  public void testHashes() throws Exception {
+    byte[] input = "block".getBytes();
+    byte[] once = MessageDigest.getInstance("SHA-256").digest(input);
+    MessageDigest md = DigestProviders.SHA256.threadDigest();
+    md.update(input);
+    assertArrayEquals(once, DigestProviders.SHA256.finish(md), "SHA-256");
+    md = DigestProviders.DOUBLE_SHA256.newDigest();
+    md.update(input);
+    assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(once),
+        DigestProviders.DOUBLE_SHA256.finish(md), "double SHA-256");
+    md = DigestProviders.sha3().newDigest();
+    md.update(input);
+    assertArrayEquals(MessageDigest.getInstance("SHA3-256").digest(input),
+        DigestProviders.sha3().finish(md), "SHA3-256");
+    assertNotNull(DigestProviders.fastest("SHA-256", false), "some SHA-256 is fastest");
+    assertThrows(Exception.class, () -> DigestProviders.forName("md-1"), "unknown digest");
+  } // testHashes()
+
+  /**
+   * A chain can use another hash throughout, and it really is used.
+   */
+  @Test
+  public void testChain() throws Exception {
+    DigestProvider hashing = DigestProviders.forName("sha-512/256");
+    BlockChain chain = new BlockChain(VALIDATOR, new ColumnarBlockStore(), hashing);
+    chain.append(chain.mine(new Transaction("", "A", 100)));
+    chain.append(chain.mine(new Transaction("A", "B", 30)));
+    assertTrue(chain.isCorrect(), "chain is correct");
+    chain.check();
+
+    Block blk = chain.mine(new Transaction("B", "A", 10));
+    Block sha256 = new Block(blk.getNum(), blk.getTransaction(), blk.getPrevHash(),
+        blk.getNonce());
+    assertNotEquals(blk.getHash(), sha256.getHash(), "different hashes");
+    assertThrows(IllegalArgumentException.class, () -> chain.append(sha256),
+        "SHA-256 block in a SHA-512/256 chain");
+    chain.append(blk);
+    assertEquals(80, chain.balance("A"), "A's balance");
+  } // testChain()
+} // class TestDigestProviders
@@ -1,6 +1,8 @@
 package edu.grinnell.csc207.blockchains;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import org.junit.jupiter.api.Test;
 
@@ -38,4 +40,54 @@ public class TestTransaction {
         trans.toString(),
         "String representation of deposit");
   } // depositTest()
+
+  /**
+   * Test that transactions built from a dictionary share its names and
+   * hash like transactions built from strings.
+   */
+  @Test
+  public void dictionaryTest() {
+    UserDictionary users = new UserDictionary();
+    int here = users.intern("Here");
+    int there = users.intern("Th\u00e9re");
+    assertEquals(here, users.intern("Here"), "Interning twice gives the same id");
+    assertEquals(-1, users.idOf("Elsewhere"), "Unknown names have no id");
+    Transaction trans = new Transaction(users, here, there, 10);
+    assertSame(users.name(here), trans.getSource(), "Source is shared");
+    assertSame(users.encoding(there), trans.targetBytes(), "Encoding is shared");
+    Block fromDict = new Block(1, trans, new Hash(new byte[] {}), 7);
+    Block fromStrings = new Block(1, new Transaction("Here", "Th\u00e9re", 10),
+        new Hash(new byte[] {}), 7);
+    assertEquals(fromStrings.getHash(), fromDict.getHash(), "Same hash either way");
+    users.truncate(1);
+    assertEquals(1, users.size(), "Truncated dictionary");
+    assertEquals(-1, users.idOf("Th\u00e9re"), "Truncated name is gone");
+  } // dictionaryTest()
+
+  /**
+   * Test that sequence numbers tell otherwise equal transactions apart,
+   * and leave the hashes of blocks without them alone.
+   */
+  @Test
+  public void seqTest() {
+    Transaction plain = new Transaction("Here", "There", 10);
+    Transaction first = new Transaction("Here", "There", 10, 1);
+    Transaction again = new Transaction("Here", "There", 10, 1);
+    assertEquals(0, plain.getSeq(), "Default sequence number");
+    assertEquals(first, again, "Same sequence number");
+    assertEquals(first.hashCode(), again.hashCode(), "Same hash code");
+    assertEquals(first.id(), again.id(), "Same id");
+    assertSame(first.id(), first.id(), "Id is computed once");
+    assertNotEquals(plain, first, "Different sequence numbers");
+    assertNotEquals(plain.id(), first.id(), "Different ids");
+    assertNotEquals(new Transaction("Her", "eThere", 10).id(), plain.id(),
+        "Names are not run together");
+
+    Hash empty = new Hash(new byte[] {});
+    assertEquals(new Block(1, plain, empty, 7).getHash(),
+        new Block(1, new Transaction("Here", "There", 10, 0), empty, 7).getHash(),
+        "A zero sequence number is not hashed");
+    assertNotEquals(new Block(1, plain, empty, 7).getHash(),
+        new Block(1, first, empty, 7).getHash(), "Other sequence numbers are");
+  } // seqTest()
 } // class TestTransaction
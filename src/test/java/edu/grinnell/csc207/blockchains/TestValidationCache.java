@@ -0,0 +1,61 @@
+package edu.grinnell.csc207.blockchains;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our ValidationCache class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestValidationCache {
+  /**
+   * Blocks checked by append are not hashed again by isCorrect, but
+   * changed blocks are.
+   */
+  @Test
+  public void testChain() {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    chain.append(chain.mine(new Transaction("", "Alice", 100)));
+    Block blk = chain.mine(new Transaction("Alice", "Bob", 10));
+    chain.append(blk);
+    assertEquals(2, chain.verified.size(), "appended blocks remembered");
+    long misses = chain.verified.misses();
+    long hits = chain.verified.hits();
+    assertTrue(chain.isCorrect(), "chain is correct");
+    assertEquals(misses, chain.verified.misses(), "no block hashed again");
+    assertEquals(hits + 2, chain.verified.hits(), "both blocks found");
+
+    blk.transaction = new Transaction("Alice", "Bob", 90);
+    assertFalse(chain.isCorrect(), "changed block is caught");
+    blk.transaction = new Transaction("Alice", "Bob", 10);
+    assertTrue(chain.isCorrect(), "restored block is fine");
+
+    chain.removeLast();
+    assertEquals(1, chain.verified.size(), "removed block forgotten");
+  } // testChain()
+
+  /**
+   * The least recently used block is forgotten when the cache is full.
+   */
+  @Test
+  public void testEviction() {
+    ValidationCache cache = new ValidationCache(2);
+    Hash prev = new Hash(new byte[] {});
+    Block a = new Block(1, new Transaction("", "A", 1), prev, 1);
+    Block b = new Block(1, new Transaction("", "B", 1), prev, 1);
+    Block c = new Block(1, new Transaction("", "C", 1), prev, 1);
+    cache.add(a);
+    cache.add(b);
+    assertTrue(cache.contains(a), "a remembered");
+    cache.add(c);
+    assertTrue(cache.contains(a), "recently used a kept");
+    assertFalse(cache.contains(b), "least recently used b evicted");
+    assertTrue(cache.contains(c), "c remembered");
+  } // testEviction()
+} // class TestValidationCache
@@ -0,0 +1,131 @@
+package edu.grinnell.csc207.blockchains;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static edu.grinnell.csc207.blockchains.Fixtures.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Some simple tests of the validation pipeline.
+ *
+ * @author Mitch Paiva
+ */
+public class TestValidationPipeline {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Blocks go through in order and build the same chain as appending
+   * them one at a time.
+   */
+  @Test
+  void sameAsAppendTest() throws Exception {
+    BlockChain source = new BlockChain(VALIDATOR);
+    source.append(source.mine(new Transaction("", "Alice", 1000)));
+    for (int i = 0; i < 200; i++) {
+      source.append(source.mine((i % 2 == 0)
+          ? new Transaction("Alice", "Bob", 3) : new Transaction("Bob", "Alice", 1)));
+    } // for
+
+    BlockChain chain = new BlockChain(VALIDATOR);
+    ValidationPipeline pipeline = new ValidationPipeline(chain, 4);
+    ArrayList<CompletableFuture<Void>> done = new ArrayList<CompletableFuture<Void>>();
+    for (int i = 1; i < source.getSize(); i++) {
+      done.add(pipeline.submit(source.getBlock(i)));
+    } // for
+    pipeline.finish();
+    CompletableFuture.allOf(done.toArray(new CompletableFuture<?>[0])).join();
+    assertEquals(200 + 1, pipeline.committed(), "blocks committed");
+    assertEquals(0, pipeline.rejected(), "blocks rejected");
+    assertEquals(source.getHash(), chain.getHash(), "tip");
+    assertEquals(source.balance("Alice"), chain.balance("Alice"), "Alice's balance");
+    assertEquals(source.balance("Bob"), chain.balance("Bob"), "Bob's balance");
+    assertTrue(chain.isCorrect(), "chain is correct");
+  } // sameAsAppendTest()
+
+  /**
+   * Blocks with bad hashes, unaffordable transactions, or links to refused
+   * blocks are refused, and the chain carries on without them.
+   */
+  @Test
+  void refusalTest() throws Exception {
+    BlockChain source = new BlockChain(VALIDATOR);
+    source.append(source.mine(new Transaction("", "Alice", 10)));
+    Block good = source.getBlock(1);
+    source.append(source.mine(new Transaction("Alice", "Bob", 500)));
+    Block unaffordable = source.getBlock(2);
+    source.append(source.mine(new Transaction("Bob", "Alice", 1)));
+    Block afterRefused = source.getBlock(3);
+
+    BlockChain chain = new BlockChain(VALIDATOR);
+    ValidationPipeline pipeline = new ValidationPipeline(chain, 2);
+    CompletableFuture<Void> first = pipeline.submit(good);
+    CompletableFuture<Void> second = pipeline.submit(unaffordable);
+    CompletableFuture<Void> third = pipeline.submit(afterRefused);
+    Block affordable = new Block(2, new Transaction("Alice", "Bob", 5), good.getHash(), VALIDATOR,
+        DigestProviders.SHA256);
+    Block forged = new Block(2, new Transaction("Alice", "Bob", 6), good.getHash(),
+        affordable.getNonce(), affordable.getHash());
+    CompletableFuture<Void> fourth = pipeline.submit(forged);
+    CompletableFuture<Void> fifth = pipeline.submit(affordable);
+    pipeline.finish();
+
+    first.join();
+    CompletionException refused = assertThrows(CompletionException.class, second::join);
+    assertTrue(refused.getCause() instanceof IllegalArgumentException, "refusal");
+    assertThrows(CompletionException.class, third::join);
+    assertThrows(CompletionException.class, fourth::join);
+    fifth.join();
+    assertEquals(3, chain.getSize(), "blocks in the chain");
+    assertEquals(5, chain.balance("Bob"), "Bob's balance");
+    assertEquals(2, pipeline.committed(), "blocks committed");
+  } // refusalTest()
+
+  /**
+   * An append that throws fails that block's future, and the committer
+   * carries on with the blocks after it.
+   */
+  @Test
+  void failedAppendTest() throws Exception {
+    BlockChain source = new BlockChain(VALIDATOR);
+    source.append(source.mine(new Transaction("", "Alice", 10)));
+    source.append(source.mine(new Transaction("", "Bob", 20)));
+
+    BlockChain chain = new BlockChain(VALIDATOR) {
+      boolean failed = false;
+
+      @Override
+      CompletableFuture<Void> appendUnchecked(Block blk) {
+        if (!failed) {
+          failed = true;
+          throw new IllegalStateException("The journal is closed.");
+        } // if
+        return super.appendUnchecked(blk);
+      } // appendUnchecked(Block)
+    };
+    ValidationPipeline pipeline = new ValidationPipeline(chain, 2);
+    CompletableFuture<Void> first = pipeline.submit(source.getBlock(1));
+    CompletableFuture<Void> retry = pipeline.submit(source.getBlock(1));
+    CompletableFuture<Void> second = pipeline.submit(source.getBlock(2));
+    pipeline.finish();
+
+    CompletionException failure = assertThrows(CompletionException.class, first::join);
+    assertTrue(failure.getCause() instanceof IllegalStateException, "append failure");
+    retry.join();
+    second.join();
+    assertEquals(2, pipeline.committed(), "blocks committed");
+    assertEquals(1, pipeline.rejected(), "blocks rejected");
+    assertEquals(source.getHash(), chain.getHash(), "tip");
+  } // failedAppendTest()
+} // class TestValidationPipeline
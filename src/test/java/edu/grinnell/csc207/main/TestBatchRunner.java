@@ -0,0 +1,112 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.HashValidator;
+
+import java.io.BufferedReader;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BatchRunner class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBatchRunner {
+  // +-----------+---------------------------------------------------
+  // | Utilities |
+  // +-----------+
+
+  /**
+   * A simple validator.
+   */
+  static final HashValidator VALIDATOR = (hash) -> (hash.length() >= 1) && (hash.get(0) == 0);
+
+  /**
+   * Run a script against a chain.
+   *
+   * @param chain the chain.
+   * @param script the commands, one per line.
+   * @param commands the number of commands we expect to be run.
+   * @return the lines printed.
+   */
+  static String[] run(BlockChain chain, String script, long commands) throws Exception {
+    StringWriter out = new StringWriter();
+    long count = BatchRunner.run(new BufferedReader(new StringReader(script)),
+        new PrintWriter(out), chain);
+    assertEquals(commands, count, "commands run");
+    return out.toString().lines().toArray(String[]::new);
+  } // run(BlockChain, String, long)
+
+  // +-------+-------------------------------------------------------
+  // | Tests |
+  // +-------+
+
+  /**
+   * Commit mines and appends in one step, skipping blank lines and
+   * comments.
+   */
+  @Test
+  public void testCommit() throws Exception {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    String[] out = run(chain, "# A deposit\n\ncommit - A 100\n   \ncommit A B 30\nbalance B\n", 3);
+    assertEquals(3, out.length, "lines printed");
+    assertTrue(out[0].startsWith("Appended block 1 with nonce "), "deposit");
+    assertTrue(out[1].startsWith("Appended block 2 with nonce "), "transfer");
+    assertEquals("B 30", out[2], "B's balance");
+    assertEquals(3, chain.getSize(), "blocks in the chain");
+  } // testCommit()
+
+  /**
+   * The nonce printed by mine can be given to append.
+   */
+  @Test
+  public void testMineThenAppend() throws Exception {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    String[] mined = run(chain, "mine - A 100\n", 1);
+    assertEquals(1, mined.length, "lines printed");
+    assertTrue(mined[0].startsWith("nonce "), "nonce printed");
+    assertEquals(1, chain.getSize(), "mine does not append");
+    String nonce = mined[0].substring("nonce ".length());
+    String[] appended = run(chain, "append - A 100 " + nonce + "\nsize\n", 2);
+    assertEquals("Appended block 1", appended[0], "append");
+    assertEquals("2", appended[1], "size");
+    assertEquals(100, chain.balance("A"), "A's balance");
+  } // testMineThenAppend()
+
+  /**
+   * Bad commands are reported with their line numbers, and the lines after
+   * them still run.
+   */
+  @Test
+  public void testErrors() throws Exception {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    String[] out = run(chain,
+        "commit - A lots\n# comment\nappend - A 100 soon\nfrobnicate\ncommit - A 5\n", 4);
+    assertEquals(4, out.length, "lines printed");
+    assertEquals("line 1: invalid amount 'lots'", out[0], "bad amount");
+    assertEquals("line 3: invalid nonce 'soon'", out[1], "bad nonce");
+    assertEquals("line 4: invalid command 'frobnicate'", out[2], "unknown command");
+    assertTrue(out[3].startsWith("Appended block 1 "), "later command");
+    assertEquals(5, chain.balance("A"), "A's balance");
+  } // testErrors()
+
+  /**
+   * Quit stops before the remaining lines.
+   */
+  @Test
+  public void testQuit() throws Exception {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    String[] out = run(chain, "size\nquit\ncommit - A 100\nsize\n", 2);
+    assertEquals(1, out.length, "lines printed");
+    assertEquals("1", out[0], "size");
+    assertEquals(1, chain.getSize(), "nothing appended after quit");
+  } // testQuit()
+} // class TestBatchRunner
@@ -0,0 +1,70 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.BlockChain;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+
+import static edu.grinnell.csc207.main.TestBatchRunner.VALIDATOR;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our ChainServer class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestChainServer {
+  /**
+   * One client can query and append.
+   */
+  @Test
+  public void testProtocol() throws Exception {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    try (ChainServer server = new ChainServer(chain)) {
+      int port = server.start(0);
+      try (Socket socket = new Socket("localhost", port);
+          BufferedReader eyes = new BufferedReader(
+              new InputStreamReader(socket.getInputStream()));
+          PrintWriter pen = new PrintWriter(socket.getOutputStream(), true)) {
+        pen.println("append - A 100");
+        assertEquals("OK 1", eyes.readLine(), "deposit");
+        pen.println("append A B 30");
+        assertEquals("OK 2", eyes.readLine(), "transfer");
+        pen.println("append B A 500");
+        assertTrue(eyes.readLine().startsWith("ERR"), "overdraft");
+        pen.println("balance A");
+        assertEquals("OK 70", eyes.readLine(), "A's balance");
+        pen.println("history B");
+        assertEquals("OK 1", eyes.readLine(), "B's history");
+        assertEquals("[Source: A, Target: B, Amount: 30]", eyes.readLine(), "B's transfer");
+        pen.println("size");
+        assertEquals("OK 3", eyes.readLine(), "size");
+        pen.println("frobnicate");
+        assertTrue(eyes.readLine().startsWith("ERR"), "unknown command");
+      } // try
+    } // try
+  } // testProtocol()
+
+  /**
+   * Many clients at once get answers, and their deposits all land.
+   */
+  @Test
+  public void testLoad() throws Exception {
+    BlockChain chain = new BlockChain(VALIDATOR);
+    try (ChainServer server = new ChainServer(chain)) {
+      int port = server.start(0);
+      LoadClient load = new LoadClient();
+      load.run("localhost", port, 50, 40, 5);
+      assertEquals(0, load.errors(), "no errors");
+      assertEquals(50 * 40, load.latency().count(), "every request answered");
+      assertTrue(chain.getSize() > 1, "some deposits");
+      assertTrue(chain.isCorrect(), "chain is correct");
+    } // try
+  } // testLoad()
+} // class TestChainServer
@@ -0,0 +1,103 @@
+package edu.grinnell.csc207.main;
+
+import edu.grinnell.csc207.blockchains.Block;
+import edu.grinnell.csc207.blockchains.BlockChain;
+import edu.grinnell.csc207.blockchains.Transaction;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of mining with a coordinator and workers. The workers
+ * run in threads of this JVM, but talk to the coordinator over sockets
+ * just as they would from other processes.
+ *
+ * @author Mitch Paiva
+ */
+public class TestMiningCoordinator {
+  /**
+   * Start some workers in threads.
+   */
+  static ArrayList<MiningWorker> startWorkers(int port, int count) throws Exception {
+    ArrayList<MiningWorker> workers = new ArrayList<MiningWorker>();
+    for (int i = 0; i < count; i++) {
+      MiningWorker worker = new MiningWorker(port);
+      Thread thread = new Thread(worker::run, "worker-" + i);
+      thread.setDaemon(true);
+      thread.start();
+      workers.add(worker);
+    } // for
+    return workers;
+  } // startWorkers(int, int)
+
+  /**
+   * Workers mine blocks that the chain accepts, with the ranges shared
+   * among them.
+   */
+  @Test
+  public void testMining() throws Exception {
+    try (MiningCoordinator coordinator = new MiningCoordinator(512, 60000)) {
+      int port = coordinator.start(0);
+      ArrayList<MiningWorker> workers = startWorkers(port, 3);
+      BlockChain chain = new BlockChain(MiningWorker.leadingZeros(1));
+      Block first = coordinator.mine(chain, new Transaction("", "A", 100), 1);
+      chain.append(first);
+      for (int i = 0; i < 5; i++) {
+        chain.append(coordinator.mine(chain, new Transaction("A", "B", i, i), 2));
+      } // for
+      assertEquals(7, chain.getSize(), "blocks appended");
+      assertTrue(chain.isCorrect(), "the chain is correct");
+      assertEquals(3, coordinator.workers(), "workers connected");
+      assertTrue(coordinator.handedOut() > 3, "more than one range each");
+      long ranges = 0;
+      for (MiningWorker worker : workers) {
+        ranges += worker.ranges();
+      } // for
+      assertTrue(ranges > 0, "workers finished ranges");
+      assertThrows(IllegalArgumentException.class,
+          () -> coordinator.mine(chain, new Transaction("A", "B C", 1), 1));
+    } // try
+  } // testMining()
+
+  /**
+   * A worker that never answers has its range handed to another, and a
+   * worker that leaves has its range handed out again.
+   */
+  @Test
+  public void testStalledWorker() throws Exception {
+    try (MiningCoordinator coordinator = new MiningCoordinator(64, 0)) {
+      int port = coordinator.start(0);
+      try (Socket stalled = new Socket(InetAddress.getLoopbackAddress(), port)) {
+        while (coordinator.workers() < 1) {
+          Thread.sleep(1);
+        } // while
+        startWorkers(port, 1);
+        while (coordinator.workers() < 2) {
+          Thread.sleep(1);
+        } // while
+        BlockChain chain = new BlockChain(MiningWorker.leadingZeros(2));
+        chain.append(coordinator.mine(chain, new Transaction("", "A", 100), 2));
+        BufferedReader eyes = new BufferedReader(new InputStreamReader(stalled.getInputStream()));
+        assertTrue(eyes.readLine().startsWith("work 1 1 - A 100 0 "), "stalled worker's range");
+        assertTrue(coordinator.reissued() >= 1, "stalled range handed to another worker");
+        assertTrue(chain.isCorrect(), "the chain is correct");
+      } // try
+      while (coordinator.workers() > 1) {
+        Thread.sleep(1);
+      } // while
+      BlockChain chain = new BlockChain(MiningWorker.leadingZeros(1));
+      chain.append(coordinator.mine(chain, new Transaction("", "B", 5), 1));
+      assertEquals(2, chain.getSize(), "mined after the stalled worker left");
+    } // try
+  } // testStalledWorker()
+} // class TestMiningCoordinator
@@ -0,0 +1,52 @@
+package edu.grinnell.csc207.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our Histogram class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestHistogram {
+  /**
+   * Every value lands in a bucket that holds it.
+   */
+  @Test
+  public void testBuckets() {
+    long[] vals = {0, 1, 7, 8, 9, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE};
+    for (long val : vals) {
+      int bucket = Histogram.bucket(val);
+      assertTrue(bucket < Histogram.NUM_BUCKETS, "bucket of " + val + " is in range");
+      assertTrue(Histogram.highestInBucket(bucket) >= val, "bucket of " + val + " holds it");
+      if (bucket > 0) {
+        assertTrue(Histogram.highestInBucket(bucket - 1) < val,
+            "previous bucket of " + val + " does not hold it");
+      } // if
+    } // for
+  } // testBuckets()
+
+  /**
+   * Percentiles are close to the real ones.
+   */
+  @Test
+  public void testPercentiles() {
+    Histogram hist = new Histogram();
+    for (long i = 1; i <= 1000; i++) {
+      hist.record(i * 1000);
+    } // for
+    assertEquals(1000, hist.count(), "count");
+    assertEquals(1000000, hist.max(), "max");
+    assertEquals(500500.0, hist.mean(), 0.001, "mean");
+    long p50 = hist.percentile(50);
+    assertTrue(p50 >= 500000 && p50 <= 500000 * 1.125, "median is close: " + p50);
+    long p99 = hist.percentile(99);
+    assertTrue(p99 >= 990000 && p99 <= 1000000, "99th percentile is close: " + p99);
+    hist.reset();
+    assertEquals(0, hist.count(), "count after reset");
+    assertEquals(0, hist.percentile(50), "median after reset");
+  } // testPercentiles()
+} // class TestHistogram
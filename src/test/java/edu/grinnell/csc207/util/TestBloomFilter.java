@@ -0,0 +1,49 @@
+package edu.grinnell.csc207.util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+
+/**
+ * Some simple tests of our BloomFilter class.
+ *
+ * @author Mitch Paiva
+ */
+public class TestBloomFilter {
+  /**
+   * Everything added is found, and few things that were not are.
+   */
+  @Test
+  public void testMembership() {
+    BloomFilter filter = new BloomFilter(10000, 0.01);
+    for (int i = 0; i < 10000; i++) {
+      filter.add("user" + i);
+    } // for
+    for (int i = 0; i < 10000; i++) {
+      assertTrue(filter.mightContain("user" + i), "user" + i + " is found");
+    } // for
+    int falsePositives = 0;
+    for (int i = 0; i < 10000; i++) {
+      if (filter.mightContain("stranger" + i)) {
+        falsePositives++;
+      } // if
+    } // for
+    assertTrue(falsePositives < 300, falsePositives + " false positives");
+    assertTrue(filter.isFull(), "full at capacity");
+  } // testMembership()
+
+  /**
+   * Clearing forgets everything.
+   */
+  @Test
+  public void testClear() {
+    BloomFilter filter = new BloomFilter(10, 0.01);
+    filter.add(12345L);
+    assertTrue(filter.mightContain(12345L), "added");
+    filter.clear();
+    assertFalse(filter.mightContain(12345L), "cleared");
+    assertFalse(filter.isFull(), "empty after clearing");
+  } // testClear()
+} // class TestBloomFilter